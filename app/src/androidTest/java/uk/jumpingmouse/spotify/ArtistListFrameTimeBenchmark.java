@@ -0,0 +1,218 @@
+package uk.jumpingmouse.spotify;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.squareup.picasso.Picasso;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import uk.jumpingmouse.spotify.data.AppArtist;
+import uk.jumpingmouse.spotify.data.ArtistDetails;
+
+/**
+ * Scrolls a list of a few thousand synthetic artists, and counts the frames dropped while
+ * it is bound by {@link ArtistAdapter}, and while it is bound by an adapter which finds
+ * the child views and rebinds the row on every bind, as the artist list used to.
+ * @author Edmund Johnson
+ */
+public class ArtistListFrameTimeBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = ArtistListFrameTimeBenchmark.class.getSimpleName();
+
+    private static final int ARTIST_COUNT = 3000;
+    /** The number of frames for which the list is scrolled. */
+    private static final int FRAME_COUNT = 300;
+    private static final long TIMEOUT_SECONDS = 60;
+    /** The number of frames by which ArtistAdapter may drop more frames than the baseline, to allow for noise. */
+    private static final int DROPPED_FRAME_TOLERANCE = 3;
+
+    private List<AppArtist> mArtistList;
+
+    public ArtistListFrameTimeBenchmark() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mArtistList = createArtistList();
+    }
+
+    public void testScrollFrameTime() throws InterruptedException {
+        final MainActivity activity = getActivity();
+
+        // Warm up, so that neither timed pass pays for the first inflation of the rows,
+        // the start-up of Picasso, or the compilation of the binding code
+        scroll(activity, new RebindingArtistAdapter(activity, mArtistList));
+        scroll(activity, createArtistAdapter(activity));
+
+        int rebindingDroppedFrames = scroll(activity, new RebindingArtistAdapter(activity, mArtistList));
+        int artistAdapterDroppedFrames = scroll(activity, createArtistAdapter(activity));
+
+        Log.i(LOG_TAG, "Dropped frames over " + FRAME_COUNT + " frames of " + ARTIST_COUNT + " artists: "
+                + rebindingDroppedFrames + " rebinding every row, "
+                + artistAdapterDroppedFrames + " with ArtistAdapter");
+        assertTrue("ArtistAdapter dropped " + artistAdapterDroppedFrames + " frames, the baseline "
+                        + rebindingDroppedFrames,
+                artistAdapterDroppedFrames <= rebindingDroppedFrames + DROPPED_FRAME_TOLERANCE);
+    }
+
+    /**
+     * Returns a new ArtistAdapter holding the artists.
+     * @param activity the activity in which the list is displayed
+     * @return the adapter
+     */
+    private ArtistAdapter createArtistAdapter(MainActivity activity) {
+        final ArtistAdapter artistAdapter = new ArtistAdapter(activity, false, null);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                artistAdapter.restoreArtistList(mArtistList);
+            }
+        });
+        return artistAdapter;
+    }
+
+    /**
+     * Displays the artists in a new list bound by an adapter, and scrolls it by half its
+     * height every frame, so that every frame binds half a screenful of rows.
+     * @param activity the activity in which the list is displayed
+     * @param adapter the adapter
+     * @return the number of frames dropped while scrolling
+     * @throws InterruptedException if interrupted while waiting for the scrolling to end
+     */
+    private int scroll(final MainActivity activity, final RecyclerView.Adapter<?> adapter)
+            throws InterruptedException {
+        final FrameCounter frameCounter = new FrameCounter(activity);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView recyclerView = new RecyclerView(activity);
+                recyclerView.setLayoutManager(new LinearLayoutManager(activity));
+                recyclerView.setHasFixedSize(true);
+                recyclerView.setAdapter(adapter);
+                activity.setContentView(recyclerView);
+                frameCounter.start(recyclerView);
+            }
+        });
+        assertTrue("Scrolling did not finish", frameCounter.await());
+        getInstrumentation().waitForIdleSync();
+        return frameCounter.getDroppedFrameCount();
+    }
+
+    private static List<AppArtist> createArtistList() {
+        List<AppArtist> artistList = new ArrayList<>(ARTIST_COUNT);
+        for (int i = 0; i < ARTIST_COUNT; i++) {
+            String artistId = String.format("%022d", i);
+            artistList.add(new AppArtist(artistId, "Artist " + i, null).withDetails(new ArtistDetails(
+                    artistId, Arrays.asList("indie", "rock", "genre " + i % 50), 1000 * i, i % 100)));
+        }
+        return artistList;
+    }
+
+    //-------------------------------------------------------------------------------
+    // FrameCounter
+
+    /**
+     * Scrolls a list on every frame for a fixed number of frames, counting the frames
+     * which were dropped, i.e. the refresh intervals in which no frame was drawn.
+     */
+    private static class FrameCounter implements Choreographer.FrameCallback {
+        private final long mFrameIntervalNanos;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private RecyclerView mRecyclerView;
+        private long mLastFrameTimeNanos = 0;
+        private int mFrameCount = 0;
+        private int mDroppedFrameCount = 0;
+
+        FrameCounter(MainActivity activity) {
+            float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+            mFrameIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate);
+        }
+
+        void start(RecyclerView recyclerView) {
+            mRecyclerView = recyclerView;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mLastFrameTimeNanos != 0) {
+                long intervals = Math.round((double) (frameTimeNanos - mLastFrameTimeNanos) / mFrameIntervalNanos);
+                mDroppedFrameCount += Math.max(0, intervals - 1);
+                mFrameCount++;
+            }
+            mLastFrameTimeNanos = frameTimeNanos;
+            if (mFrameCount < FRAME_COUNT) {
+                mRecyclerView.scrollBy(0, mRecyclerView.getHeight() / 2);
+                Choreographer.getInstance().postFrameCallback(this);
+            } else {
+                mDone.countDown();
+            }
+        }
+
+        boolean await() throws InterruptedException {
+            return mDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        int getDroppedFrameCount() {
+            return mDroppedFrameCount;
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // RebindingArtistAdapter
+
+    /**
+     * An adapter which finds the child views of a row and rebinds all of them on every bind.
+     */
+    private static class RebindingArtistAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        private final MainActivity mActivity;
+        private final List<AppArtist> mArtistList;
+
+        RebindingArtistAdapter(MainActivity activity, List<AppArtist> artistList) {
+            mActivity = activity;
+            mArtistList = artistList;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View itemView = LayoutInflater.from(mActivity).inflate(R.layout.artist_list_item, parent, false);
+            return new RecyclerView.ViewHolder(itemView) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int position) {
+            AppArtist artist = mArtistList.get(position);
+            View itemView = viewHolder.itemView;
+            Picasso.with(mActivity).load(artist.getImageUrlSmall())
+                    .into((ImageView) itemView.findViewById(R.id.imgArtist));
+            ((TextView) itemView.findViewById(R.id.txtArtist)).setText(artist.getName());
+            ArtistDetails details = artist.getDetails();
+            TextView txtArtistDetails = (TextView) itemView.findViewById(R.id.txtArtistDetails);
+            txtArtistDetails.setText(mActivity.getString(R.string.artist_followers,
+                    String.valueOf(details.getFollowers())) + " " + details.getGenres());
+            txtArtistDetails.setVisibility(View.VISIBLE);
+        }
+
+        @Override
+        public int getItemCount() {
+            return mArtistList.size();
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.os.Parcel;
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link AppTrackList}: that a track list survives a round trip through a
+ * parcel, and that its parcel is smaller than that of the same tracks parcelled one by one.
+ * @author Edmund Johnson
+ */
+public class AppTrackListTest extends TestCase {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = AppTrackListTest.class.getSimpleName();
+
+    /** The number of tracks in an artist's top tracks. */
+    private static final int TOP_TRACK_COUNT = 10;
+
+    public void testRoundTripPreservesTracks() {
+        List<AppTrack> trackList = createTrackList(TOP_TRACK_COUNT);
+        // A track may lack its images and preview
+        trackList.add(new AppTrack("noImagesOrPreview", "Untitled", "Unreleased", null, null, null,
+                180000, 0, "The Artist"));
+
+        AppTrackList restored = roundTrip(new AppTrackList(trackList));
+
+        assertEquals(trackList, restored.getTrackList());
+    }
+
+    public void testRoundTripPreservesEmptyList() {
+        AppTrackList restored = roundTrip(new AppTrackList(new ArrayList<AppTrack>()));
+
+        assertTrue(restored.getTrackList().isEmpty());
+    }
+
+    public void testRestoredTracksShareStrings() {
+        AppTrackList restored = roundTrip(new AppTrackList(createTrackList(TOP_TRACK_COUNT)));
+
+        List<AppTrack> trackList = restored.getTrackList();
+        assertSame(trackList.get(0).getArtistName(), trackList.get(1).getArtistName());
+        assertSame(trackList.get(0).getAlbumName(), trackList.get(1).getAlbumName());
+    }
+
+    public void testParcelIsSmallerThanListOfParcelableTracks() {
+        for (int trackCount : new int[] {TOP_TRACK_COUNT, 200}) {
+            List<AppTrack> trackList = createTrackList(trackCount);
+
+            Parcel trackListParcel = Parcel.obtain();
+            Parcel typedListParcel = Parcel.obtain();
+            int trackListSize;
+            int typedListSize;
+            try {
+                new AppTrackList(trackList).writeToParcel(trackListParcel, 0);
+                trackListSize = trackListParcel.dataSize();
+                typedListParcel.writeTypedList(trackList);
+                typedListSize = typedListParcel.dataSize();
+            } finally {
+                trackListParcel.recycle();
+                typedListParcel.recycle();
+            }
+
+            Log.i(LOG_TAG, trackCount + " tracks: " + trackListSize + " bytes as a track list, "
+                    + typedListSize + " bytes as a list of parcelable tracks");
+            assertTrue(trackCount + " tracks took " + trackListSize + " bytes, not less than "
+                    + typedListSize, trackListSize < typedListSize);
+        }
+    }
+
+    public void testRoundTripTime() {
+        AppTrackList trackList = new AppTrackList(createTrackList(200));
+        int iterations = 100;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            roundTrip(trackList);
+        }
+        long elapsedMicros = (System.nanoTime() - start) / 1000;
+
+        Log.i(LOG_TAG, "Round trip of 200 tracks: " + elapsedMicros / iterations + " microseconds");
+    }
+
+    /**
+     * Writes a track list to a parcel and reads it back.
+     * @param trackList the track list
+     * @return the track list read from the parcel
+     */
+    private static AppTrackList roundTrip(AppTrackList trackList) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            trackList.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return AppTrackList.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Returns a list of tracks by one artist, with ten tracks from each album, as in the
+     * top tracks of an artist or its discography.
+     * @param trackCount the number of tracks
+     * @return the tracks
+     */
+    private static List<AppTrack> createTrackList(int trackCount) {
+        List<AppTrack> trackList = new ArrayList<>(trackCount);
+        for (int i = 0; i < trackCount; i++) {
+            int album = i / 10;
+            trackList.add(new AppTrack(String.format("%022d", i), "Track " + i, "Album " + album,
+                    "https://i.scdn.co/image/" + String.format("%040x", album * 2),
+                    "https://i.scdn.co/image/" + String.format("%040x", album * 2 + 1),
+                    "https://p.scdn.co/mp3-preview/" + String.format("%040x", i),
+                    200000 + i, 30000, "The Artist"));
+        }
+        return trackList;
+    }
+
+}
@@ -0,0 +1,266 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.net.Uri;
+
+import com.squareup.okhttp.OkHttpClient;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.jumpingmouse.spotify.net.PreviewProxy;
+
+/**
+ * Tests the preview cache and the preview proxy, which serves previews from it to the
+ * media player, against a local stand-in for the preview server.
+ * @author Edmund Johnson
+ */
+public class PreviewCacheTest extends TestCase {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final int PREVIEW_LENGTH = 100 * 1024;
+    private static final int RANGE_START = 40000;
+    private static final long MAX_BYTES = 10 * 1024 * 1024;
+    private static final int TIMEOUT_MS = 10000;
+
+    private byte[] mPreview;
+    private PreviewServer mServer;
+    private File mCacheDir;
+    private ExecutorService mDownloadExecutor;
+    private PreviewCache mPreviewCache;
+
+    @Override
+    protected void setUp() throws IOException {
+        mPreview = new byte[PREVIEW_LENGTH];
+        for (int i = 0; i < mPreview.length; i++) {
+            mPreview[i] = (byte) (i * 31);
+        }
+        mServer = new PreviewServer(mPreview);
+        mServer.start();
+
+        mCacheDir = File.createTempFile("previews", "");
+        assertTrue(mCacheDir.delete());
+        mDownloadExecutor = Executors.newSingleThreadExecutor();
+        mPreviewCache = new PreviewCache(mCacheDir, new OkHttpClient(), mDownloadExecutor, MAX_BYTES);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDownloadExecutor.shutdown();
+        mDownloadExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        mServer.shutdown();
+        File[] files = mCacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mCacheDir.delete();
+    }
+
+    public void testDownloadedPreviewIsCached() throws Exception {
+        String previewUrl = mServer.getUrl("/preview1");
+        assertNull(mPreviewCache.getCachedFile(previewUrl));
+
+        PreviewCache.Download download = mPreviewCache.openDownload(previewUrl);
+        assertEquals(PREVIEW_LENGTH, download.awaitContentLength());
+        // Waiting for the byte beyond the end waits for the download to finish
+        assertEquals(PREVIEW_LENGTH, download.awaitBytes(PREVIEW_LENGTH));
+
+        File cachedFile = mPreviewCache.getCachedFile(previewUrl);
+        assertNotNull(cachedFile);
+        assertTrue(Arrays.equals(mPreview, readFully(new FileInputStream(cachedFile))));
+
+        // The preview is not fetched again
+        PreviewCache.Download cachedDownload = mPreviewCache.openDownload(previewUrl);
+        assertEquals(PREVIEW_LENGTH, cachedDownload.awaitBytes(PREVIEW_LENGTH));
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    public void testProxyServesPreviewAndRange() throws Exception {
+        PreviewProxy proxy = new PreviewProxy(mPreviewCache);
+        String previewUrl = mServer.getUrl("/preview2");
+        Uri playbackUri = proxy.getPlaybackUri(previewUrl);
+        assertEquals("http", playbackUri.getScheme());
+        assertEquals("127.0.0.1", playbackUri.getHost());
+
+        // The whole preview, served while it is being downloaded into the cache
+        HttpURLConnection connection = open(playbackUri, null);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(PREVIEW_LENGTH, connection.getContentLength());
+        assertTrue(Arrays.equals(mPreview, readFully(connection.getInputStream())));
+
+        // The rest of the preview from a position, as requested by the media player when seeking
+        connection = open(playbackUri, "bytes=" + RANGE_START + "-");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes " + RANGE_START + "-" + (PREVIEW_LENGTH - 1) + "/" + PREVIEW_LENGTH,
+                connection.getHeaderField("Content-Range"));
+        assertEquals(PREVIEW_LENGTH - RANGE_START, connection.getContentLength());
+        assertTrue(Arrays.equals(Arrays.copyOfRange(mPreview, RANGE_START, PREVIEW_LENGTH),
+                readFully(connection.getInputStream())));
+
+        // Once cached, the preview is played from its file, and was only fetched once
+        assertEquals(PREVIEW_LENGTH, mPreviewCache.openDownload(previewUrl).awaitBytes(PREVIEW_LENGTH));
+        assertEquals("file", proxy.getPlaybackUri(previewUrl).getScheme());
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    public void testProxyRefusesUrlItHasNotIssued() throws Exception {
+        PreviewProxy proxy = new PreviewProxy(mPreviewCache);
+        Uri playbackUri = proxy.getPlaybackUri(mServer.getUrl("/preview3"));
+        Uri otherUri = playbackUri.buildUpon()
+                .clearQuery()
+                .appendQueryParameter("url", mServer.getUrl("/other"))
+                .build();
+
+        HttpURLConnection connection = open(otherUri, null);
+        assertEquals(403, connection.getResponseCode());
+        connection.disconnect();
+        assertEquals(0, mServer.getRequestCount());
+    }
+
+    /**
+     * Opens a connection to the proxy, as the media player would.
+     * @param uri the URI to request
+     * @param range the value of the Range header, or null to request the whole preview
+     * @return the connection
+     * @throws IOException if the connection could not be opened
+     */
+    private static HttpURLConnection open(Uri uri, String range) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(uri.toString()).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        if (range != null) {
+            connection.setRequestProperty("Range", range);
+        }
+        return connection;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // PreviewServer
+
+    /**
+     * A local HTTP server which answers every request with the same preview, in chunks,
+     * so that the preview can be read from the cache while it is being downloaded,
+     * and counts the requests made to it.
+     */
+    private static class PreviewServer implements Runnable {
+        private static final int CHUNK_SIZE = 8 * 1024;
+
+        private final byte[] mBody;
+        private final AtomicInteger mRequestCount = new AtomicInteger();
+        private ServerSocket mServerSocket;
+
+        /**
+         * Constructor.
+         * @param body the body of every response
+         */
+        PreviewServer(byte[] body) {
+            mBody = body;
+        }
+
+        void start() throws IOException {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            Thread thread = new Thread(this, "PreviewServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void shutdown() throws IOException {
+            mServerSocket.close();
+        }
+
+        String getUrl(String path) {
+            return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+        }
+
+        int getRequestCount() {
+            return mRequestCount.get();
+        }
+
+        @Override
+        public void run() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    final Socket socket = mServerSocket.accept();
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    }, "PreviewServerConnection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException e) {
+                    // The server socket was closed
+                }
+            }
+        }
+
+        /**
+         * Answers a single request, then closes the connection.
+         * @param socket the connection
+         */
+        private void serve(Socket socket) {
+            try {
+                socket.setTcpNoDelay(true);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), ISO_8859_1));
+                String line;
+                do {
+                    line = in.readLine();
+                } while (line != null && !line.isEmpty());
+                mRequestCount.incrementAndGet();
+
+                OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: audio/mpeg\r\n"
+                        + "Content-Length: " + mBody.length + "\r\nConnection: close\r\n\r\n").getBytes(ISO_8859_1));
+                for (int offset = 0; offset < mBody.length; offset += CHUNK_SIZE) {
+                    out.write(mBody, offset, Math.min(CHUNK_SIZE, mBody.length - offset));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // The connection was closed
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Nothing more can be done
+                }
+            }
+        }
+    }
+
+}
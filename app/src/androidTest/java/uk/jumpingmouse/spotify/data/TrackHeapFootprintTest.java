@@ -0,0 +1,98 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap retained by a list of tracks, to check that tracks decoded with their
+ * own copies of the strings they share, as they are from a response, retain no more heap
+ * than tracks which already share single instances of those strings.
+ * @author Edmund Johnson
+ */
+public class TrackHeapFootprintTest extends TestCase {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = TrackHeapFootprintTest.class.getSimpleName();
+
+    private static final int TRACK_COUNT = 2000;
+    /** The number of tracks on each album. */
+    private static final int TRACKS_PER_ALBUM = 10;
+    /** The proportion by which the heap of the copied strings may exceed that of the shared ones. */
+    private static final double TOLERANCE = 0.15;
+
+    public void testCopiedSharedStringsRetainNoExtraHeap() {
+        long sharedBytes = measureTrackList(false);
+        long copiedBytes = measureTrackList(true);
+
+        Log.i(LOG_TAG, TRACK_COUNT + " tracks: " + sharedBytes / TRACK_COUNT + " bytes per track sharing strings, "
+                + copiedBytes / TRACK_COUNT + " bytes per track with copied strings");
+        assertTrue("Tracks with copied strings retained " + copiedBytes + " bytes, tracks sharing strings "
+                + sharedBytes, copiedBytes <= sharedBytes * (1 + TOLERANCE));
+    }
+
+    /**
+     * Returns the heap retained by a list of tracks.
+     * @param copyStrings whether each track is given its own copies of the artist, album
+     *                    and image strings, rather than instances shared by the tracks
+     * @return the heap retained in bytes
+     */
+    private static long measureTrackList(boolean copyStrings) {
+        long before = getUsedHeap();
+        List<AppTrack> trackList = createTrackList(copyStrings);
+        long after = getUsedHeap();
+        // Keep the list reachable until it has been measured
+        assertEquals(TRACK_COUNT, trackList.size());
+        return after - before;
+    }
+
+    private static List<AppTrack> createTrackList(boolean copyStrings) {
+        String artistName = "The Artist Whose Tracks These Are";
+        List<AppTrack> trackList = new ArrayList<>(TRACK_COUNT);
+        String albumName = null;
+        String imageUrlSmall = null;
+        String imageUrlLarge = null;
+        for (int i = 0; i < TRACK_COUNT; i++) {
+            if (i % TRACKS_PER_ALBUM == 0) {
+                int album = i / TRACKS_PER_ALBUM;
+                albumName = "The Album Numbered " + album;
+                imageUrlSmall = "https://i.scdn.co/image/" + String.format("%040x", album * 2);
+                imageUrlLarge = "https://i.scdn.co/image/" + String.format("%040x", album * 2 + 1);
+            }
+            trackList.add(new AppTrack(String.format("%022d", i), "Track " + i,
+                    copyStrings ? copy(albumName) : albumName,
+                    copyStrings ? copy(imageUrlSmall) : imageUrlSmall,
+                    copyStrings ? copy(imageUrlLarge) : imageUrlLarge,
+                    "https://p.scdn.co/mp3-preview/" + String.format("%040x", i),
+                    200000, 30000,
+                    copyStrings ? copy(artistName) : artistName));
+        }
+        return trackList;
+    }
+
+    /**
+     * Returns a copy of a string with its own characters, as if it had been decoded from
+     * a response; new String(String) may share the characters of the original.
+     * @param string the string
+     * @return a copy of the string
+     */
+    private static String copy(String string) {
+        return new StringBuilder(string).toString();
+    }
+
+    /**
+     * Returns the heap in use, after collecting garbage.
+     * @return the heap in use in bytes
+     */
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
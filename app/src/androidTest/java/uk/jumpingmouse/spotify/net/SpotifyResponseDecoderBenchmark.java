@@ -0,0 +1,149 @@
+package uk.jumpingmouse.spotify.net;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.Track;
+import kaaes.spotify.webapi.android.models.Tracks;
+import retrofit.client.Header;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+import uk.jumpingmouse.spotify.data.AppTrack;
+import uk.jumpingmouse.spotify.util.SpotifyUtil;
+
+/**
+ * Compares the time taken to decode a top tracks response with {@link SpotifyResponseDecoder}
+ * with that taken to decode it into the Spotify model objects with Gson, as Retrofit did,
+ * and then copy the fields used by the app.
+ * @author Edmund Johnson
+ */
+public class SpotifyResponseDecoderBenchmark extends TestCase {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = SpotifyResponseDecoderBenchmark.class.getSimpleName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int IMAGE_SIZE_SMALL_PX = 64;
+    private static final int IMAGE_SIZE_LARGE_PX = 300;
+    private static final long PREVIEW_DURATION = 30000;
+    /** The number of markets in which each track is available. */
+    private static final int MARKET_COUNT = 80;
+    private static final int WARM_UP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+
+    public void testDecodeTopTracks() throws IOException {
+        compareDecodeTimes(10);
+    }
+
+    public void testDecodeLargeResponse() throws IOException {
+        compareDecodeTimes(500);
+    }
+
+    /**
+     * Decodes a response with both decoders, checks that they agree, and logs the time
+     * taken by each.
+     * @param trackCount the number of tracks in the response
+     * @throws IOException if the response could not be decoded
+     */
+    private static void compareDecodeTimes(int trackCount) throws IOException {
+        byte[] body = createTopTracksBody(trackCount);
+        Gson gson = new Gson();
+
+        assertEquals(decodeWithGson(gson, body), decodeStreaming(body));
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            decodeWithGson(gson, body);
+            decodeStreaming(body);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decodeWithGson(gson, body);
+        }
+        long gsonMicros = (System.nanoTime() - start) / 1000 / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decodeStreaming(body);
+        }
+        long streamingMicros = (System.nanoTime() - start) / 1000 / ITERATIONS;
+
+        Log.i(LOG_TAG, trackCount + " tracks, " + body.length + " bytes: " + gsonMicros
+                + " microseconds with Gson, " + streamingMicros + " microseconds streaming");
+    }
+
+    private static List<AppTrack> decodeStreaming(byte[] body) throws IOException {
+        Response response = new Response("https://api.spotify.com/v1", 200, "OK",
+                Collections.<Header>emptyList(), new TypedByteArray("application/json", body));
+        return SpotifyResponseDecoder.readTracks(response, IMAGE_SIZE_SMALL_PX, IMAGE_SIZE_LARGE_PX,
+                false, null, null, PREVIEW_DURATION);
+    }
+
+    private static List<AppTrack> decodeWithGson(Gson gson, byte[] body) {
+        Tracks tracks = gson.fromJson(new String(body, UTF_8), Tracks.class);
+        List<AppTrack> trackList = new ArrayList<>(tracks.tracks.size());
+        for (Track track : tracks.tracks) {
+            trackList.add(new AppTrack(track.id, track.name, track.album.name,
+                    SpotifyUtil.getImageUrl(track.album.images, IMAGE_SIZE_SMALL_PX, false),
+                    SpotifyUtil.getImageUrl(track.album.images, IMAGE_SIZE_LARGE_PX, false),
+                    track.preview_url, track.duration_ms, PREVIEW_DURATION, track.artists.get(0).name));
+        }
+        return trackList;
+    }
+
+    /**
+     * Returns the body of a top tracks response, with the fields returned by the Spotify
+     * Web API, most of which are not used by the app.
+     * @param trackCount the number of tracks
+     * @return the body of the response
+     */
+    private static byte[] createTopTracksBody(int trackCount) {
+        StringBuilder markets = new StringBuilder();
+        for (int i = 0; i < MARKET_COUNT; i++) {
+            markets.append(i == 0 ? "" : ",").append('"').append((char) ('A' + i / 26))
+                    .append((char) ('A' + i % 26)).append('"');
+        }
+
+        StringBuilder json = new StringBuilder("{\"tracks\":[");
+        for (int i = 0; i < trackCount; i++) {
+            String trackId = String.format("%022d", i);
+            String albumId = String.format("%022d", i / 10);
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"album\":{\"album_type\":\"album\",\"available_markets\":[").append(markets)
+                    .append("],\"external_urls\":{\"spotify\":\"https://open.spotify.com/album/")
+                    .append(albumId).append("\"},\"href\":\"https://api.spotify.com/v1/albums/")
+                    .append(albumId).append("\",\"id\":\"").append(albumId).append("\",\"images\":[");
+            int[] sizes = {640, 300, 64};
+            for (int j = 0; j < sizes.length; j++) {
+                json.append(j == 0 ? "" : ",").append("{\"height\":").append(sizes[j])
+                        .append(",\"url\":\"https://i.scdn.co/image/").append(albumId).append(sizes[j])
+                        .append("\",\"width\":").append(sizes[j]).append('}');
+            }
+            json.append("],\"name\":\"Album ").append(i / 10).append("\",\"type\":\"album\",")
+                    .append("\"uri\":\"spotify:album:").append(albumId).append("\"},")
+                    .append("\"artists\":[{\"external_urls\":{\"spotify\":\"https://open.spotify.com/artist/a\"},")
+                    .append("\"href\":\"https://api.spotify.com/v1/artists/a\",\"id\":\"a\",")
+                    .append("\"name\":\"The Artist\",\"type\":\"artist\",\"uri\":\"spotify:artist:a\"}],")
+                    .append("\"available_markets\":[").append(markets).append("],")
+                    .append("\"disc_number\":1,\"duration_ms\":").append(200000 + i)
+                    .append(",\"explicit\":false,\"external_ids\":{\"isrc\":\"GBAAA").append(trackId, 15, 22)
+                    .append("\"},\"external_urls\":{\"spotify\":\"https://open.spotify.com/track/")
+                    .append(trackId).append("\"},\"href\":\"https://api.spotify.com/v1/tracks/")
+                    .append(trackId).append("\",\"id\":\"").append(trackId).append("\",\"name\":\"Track ")
+                    .append(i).append("\",\"popularity\":50,\"preview_url\":\"https://p.scdn.co/mp3-preview/")
+                    .append(trackId).append("\",\"track_number\":").append(i % 10 + 1)
+                    .append(",\"type\":\"track\",\"uri\":\"spotify:track:").append(trackId).append("\"}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(UTF_8);
+    }
+
+}
@@ -0,0 +1,223 @@
+package uk.jumpingmouse.spotify.net;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kaaes.spotify.webapi.android.SpotifyApi;
+import kaaes.spotify.webapi.android.SpotifyService;
+import kaaes.spotify.webapi.android.models.ArtistsPager;
+import retrofit.RestAdapter;
+import retrofit.client.OkClient;
+import retrofit.converter.GsonConverter;
+
+/**
+ * Compares the latency of a cold artist search, made through a service built for that
+ * search with its own connection pool, with that of a warm search, made through the shared
+ * service of {@link SpotifyServiceProvider} over its pooled connection, against a local
+ * mock server.
+ * The mock server does not use TLS, so the difference excludes the TLS handshake which a
+ * cold connection to the Spotify Web API also pays for.
+ * @author Edmund Johnson
+ */
+public class SpotifyServiceLatencyBenchmark extends TestCase {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = SpotifyServiceLatencyBenchmark.class.getSimpleName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The number of searches timed, which is within the shared client's rate limit burst. */
+    private static final int ITERATIONS = 8;
+    private static final long KEEP_ALIVE_DURATION_MS = 10000;
+
+    private static final String SEARCH_RESPONSE = "{\"artists\":{\"href\":\"http://localhost/search\","
+            + "\"items\":[{\"id\":\"4Z8W4fKeB5YxbusRsdQVPb\",\"images\":[],\"name\":\"Radiohead\","
+            + "\"popularity\":80,\"type\":\"artist\"}],\"limit\":20,\"next\":null,\"offset\":0,"
+            + "\"previous\":null,\"total\":1}}";
+
+    private MockServer mServer;
+
+    @Override
+    protected void setUp() throws IOException {
+        mServer = new MockServer(SEARCH_RESPONSE.getBytes(UTF_8));
+        mServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        SpotifyServiceProvider.setEndpoint(SpotifyApi.SPOTIFY_WEB_API_ENDPOINT);
+        mServer.shutdown();
+    }
+
+    public void testWarmSearchIsFasterThanColdSearch() {
+        long[] coldMicros = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            SpotifyService service = createService(mServer.getUrl());
+            search(service);
+            coldMicros[i] = (System.nanoTime() - start) / 1000;
+        }
+        // Each service has its own connection pool, so no connection was reused
+        assertEquals(ITERATIONS, mServer.getConnectionCount());
+
+        SpotifyServiceProvider.setEndpoint(mServer.getUrl());
+        search(SpotifyServiceProvider.getService());
+        int connectionCount = mServer.getConnectionCount();
+        long[] warmMicros = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            search(SpotifyServiceProvider.getService());
+            warmMicros[i] = (System.nanoTime() - start) / 1000;
+        }
+        // The shared client kept its connection alive
+        assertEquals(connectionCount, mServer.getConnectionCount());
+
+        long coldMedianMicros = median(coldMicros);
+        long warmMedianMicros = median(warmMicros);
+        Log.i(LOG_TAG, "Median search latency: " + coldMedianMicros + " microseconds cold, "
+                + warmMedianMicros + " microseconds warm");
+        assertTrue(warmMedianMicros < coldMedianMicros);
+    }
+
+    /**
+     * Returns a new service with its own HTTP client, connection pool and Gson instance,
+     * so that a search made through it is as cold as the first search of the process.
+     * @param endpoint the base URL of the service
+     * @return the service
+     */
+    private static SpotifyService createService(String endpoint) {
+        OkHttpClient httpClient = new OkHttpClient();
+        // A new client would otherwise share the default connection pool
+        httpClient.setConnectionPool(new ConnectionPool(1, KEEP_ALIVE_DURATION_MS));
+        return new RestAdapter.Builder()
+                .setEndpoint(endpoint)
+                .setClient(new OkClient(httpClient))
+                .setConverter(new GsonConverter(new Gson()))
+                .build()
+                .create(SpotifyService.class);
+    }
+
+    private static void search(SpotifyService service) {
+        ArtistsPager pager = service.searchArtists("radiohead");
+        assertEquals("Radiohead", pager.artists.items.get(0).name);
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    //-------------------------------------------------------------------------------
+    // MockServer
+
+    /**
+     * A local HTTP/1.1 server which answers every request with the same JSON response,
+     * keeping connections alive, and counts the connections made to it.
+     */
+    private static class MockServer implements Runnable {
+        private final byte[] mBody;
+        private final AtomicInteger mConnectionCount = new AtomicInteger();
+        private ServerSocket mServerSocket;
+
+        /**
+         * Constructor.
+         * @param body the body of every response
+         */
+        MockServer(byte[] body) {
+            mBody = body;
+        }
+
+        void start() throws IOException {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            Thread thread = new Thread(this, "MockServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void shutdown() throws IOException {
+            mServerSocket.close();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + mServerSocket.getLocalPort();
+        }
+
+        int getConnectionCount() {
+            return mConnectionCount.get();
+        }
+
+        @Override
+        public void run() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    final Socket socket = mServerSocket.accept();
+                    mConnectionCount.incrementAndGet();
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    }, "MockServerConnection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException e) {
+                    // The server socket was closed
+                }
+            }
+        }
+
+        /**
+         * Answers the requests made on a connection until the client closes it.
+         * @param socket the connection
+         */
+        private void serve(Socket socket) {
+            try {
+                // Each response is written at once, so that it is not held back waiting for an ACK
+                socket.setTcpNoDelay(true);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+                OutputStream out = socket.getOutputStream();
+                String requestLine;
+                while ((requestLine = in.readLine()) != null) {
+                    String line;
+                    do {
+                        line = in.readLine();
+                    } while (line != null && !line.isEmpty());
+                    boolean head = requestLine.startsWith("HEAD");
+                    byte[] headers = ("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n"
+                            + "Content-Length: " + (head ? 0 : mBody.length) + "\r\n\r\n").getBytes(UTF_8);
+                    byte[] response = Arrays.copyOf(headers, headers.length + (head ? 0 : mBody.length));
+                    if (!head) {
+                        System.arraycopy(mBody, 0, response, headers.length, mBody.length);
+                    }
+                    out.write(response);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // The connection was closed
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Nothing more can be done
+                }
+            }
+        }
+    }
+
+}
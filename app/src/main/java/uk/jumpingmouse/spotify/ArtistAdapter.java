@@ -1,86 +1,228 @@
 package uk.jumpingmouse.spotify;
 
 import android.app.Activity;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.squareup.picasso.Picasso;
 
+import java.text.NumberFormat;
 import java.util.List;
 
 import uk.jumpingmouse.spotify.data.AppArtist;
+import uk.jumpingmouse.spotify.data.ArtistDetails;
+import uk.jumpingmouse.spotify.util.ImagePrefetcher;
+import uk.jumpingmouse.spotify.util.ListDiffer;
 
 
 /**
  * An adapter for the list items in the artist list.
  * @author Edmund Johnson
  */
-public class ArtistAdapter extends ArrayAdapter<AppArtist> {
+public class ArtistAdapter extends RecyclerView.Adapter<ArtistAdapter.ViewHolder>
+        implements ImagePrefetcher.ImageUrlSource {
+
+    /** The maximum number of an artist's genres which are displayed. */
+    private static final int MAX_GENRES_DISPLAYED = 3;
 
     private final Activity context;
-    private final List<AppArtist> artistList;
+    private final OnArtistClickListener clickListener;
+    private final ListDiffer<AppArtist> listDiffer;
+
+    /** Whether the selected artist is highlighted, e.g. in two-pane mode. */
+    private final boolean highlightSelection;
+    /** The id of the selected artist, or null if no artist is selected. */
+    private String selectedArtistId;
 
     /**
-     * Constructor which does not require a resource.
+     * Constructor.
      * @param context the current context, used to inflate the layout file
-     * @param artistList the list of artists to be displayed
+     * @param highlightSelection whether the selected artist is to be highlighted
+     * @param clickListener the listener for clicks on artists
      */
-    public ArtistAdapter(Activity context, List<AppArtist> artistList) {
-        // The second argument is used when the ArrayAdapter is populating a single TextView.
-        // This adapter does not use the second argument, so it is set to 0.
-        super(context, 0, artistList);
+    public ArtistAdapter(Activity context, boolean highlightSelection, OnArtistClickListener clickListener) {
         this.context = context;
-        this.artistList = artistList;
+        this.highlightSelection = highlightSelection;
+        this.clickListener = clickListener;
+        this.listDiffer = new ListDiffer<>(this, new ListDiffer.ItemComparator<AppArtist>() {
+            @Override
+            public boolean areItemsTheSame(AppArtist oldArtist, AppArtist newArtist) {
+                if (oldArtist.isPlaceholder() || newArtist.isPlaceholder()) {
+                    // Placeholders are interchangeable, so they are not rebound as the list changes
+                    return oldArtist.isPlaceholder() && newArtist.isPlaceholder();
+                }
+                return oldArtist.getId() != null && oldArtist.getId().equals(newArtist.getId());
+            }
+
+            @Override
+            public boolean areContentsTheSame(AppArtist oldArtist, AppArtist newArtist) {
+                return oldArtist.equals(newArtist);
+            }
+        });
     }
 
     /**
-     * Get the view for a list item at a specified position.
-     * @param position the position in the list
-     * @param itemView the recycled view
+     * Create a view holder for a list item, inflating the list item layout.
      * @param parent the parent ViewGroup that is used for inflation
-     * @return the View for the list item at the specified position
+     * @param viewType the view type, unused as all list items are the same type
+     * @return the view holder for the list item
+     */
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(context).inflate(R.layout.artist_list_item, parent, false);
+        return new ViewHolder(itemView);
+    }
+
+    /**
+     * Bind the artist at a specified position to a list item view.
+     * @param viewHolder the view holder for the list item
+     * @param position the position in the list
      */
     @Override
-    public View getView(final int position, View itemView, ViewGroup parent) {
+    public void onBindViewHolder(ViewHolder viewHolder, int position) {
         // Get the artist object from the list of artists
-        final AppArtist artist = getItem(position);
+        AppArtist artist = getArtistList().get(position);
+
+        viewHolder.itemView.setActivated(highlightSelection
+                && artist.getId() != null && artist.getId().equals(selectedArtistId));
 
-        // If the recycled view is null, inflate the list item layout and assign it
-        if (itemView == null) {
-            itemView = LayoutInflater.from(getContext()).inflate(R.layout.artist_list_item, parent, false);
+        // If the view is already displaying this artist, there is nothing else to do
+        if (viewHolder.artist == artist) {
+            return;
         }
+        viewHolder.artist = artist;
 
         // Populate the image view with the artist image
-        ImageView imgArtist = (ImageView) itemView.findViewById(R.id.imgArtist);
-        Picasso.with(context).load(artist.getImageUrlSmall()).into(imgArtist);
+        Picasso.with(context).load(artist.getImageUrlSmall()).into(viewHolder.imgArtist);
         // Populate the text view with the artist name
-        TextView txtArtist = (TextView) itemView.findViewById(R.id.txtArtist);
-        txtArtist.setText(artist.getName());
+        viewHolder.txtArtist.setText(artist.getName());
+        // Populate the details text view, if the artist's details have been fetched
+        ArtistDetails details = artist.getDetails();
+        if (details == null) {
+            viewHolder.txtArtistDetails.setVisibility(View.GONE);
+        } else {
+            viewHolder.txtArtistDetails.setText(formatDetails(details));
+            viewHolder.txtArtistDetails.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * Returns the text displaying an artist's details, i.e. its followers and main genres.
+     * @param details the artist's details
+     * @return the text displaying the details
+     */
+    private String formatDetails(ArtistDetails details) {
+        String followers = context.getString(R.string.artist_followers,
+                NumberFormat.getIntegerInstance().format(details.getFollowers()));
+        List<String> genres = details.getGenres();
+        if (genres.isEmpty()) {
+            return followers;
+        }
+        return followers + context.getString(R.string.artist_details_separator)
+                + TextUtils.join(context.getString(R.string.artist_genres_separator),
+                        genres.subList(0, Math.min(genres.size(), MAX_GENRES_DISPLAYED)));
+    }
 
-        return itemView;
+    @Override
+    public int getItemCount() {
+        return getArtistList().size();
+    }
+
+    @Override
+    public String getImageUrl(int position) {
+        return getArtistList().get(position).getImageUrlSmall();
     }
 
+    /**
+     * Returns the list of artists being displayed.
+     * @return the list of artists being displayed
+     */
     public List<AppArtist> getArtistList() {
-        return artistList;
+        return listDiffer.getList();
     }
 
     /**
-     * Cache of the child item views.
-     * Useful for newView/bindView approach, but not for getView approach.
+     * Display a new list of artists, updating only the rows which have changed.
+     * The update is applied asynchronously.
+     * @param artistList the new list of artists
      */
-    /*
-    public static class ViewHolder {
-        public final ImageView imgArtist;
-        public final TextView txtArtist;
+    public void setArtistList(List<AppArtist> artistList) {
+        listDiffer.submitList(artistList);
+    }
+
+    /**
+     * Display a new list of artists immediately, e.g. when restoring state.
+     * @param artistList the new list of artists
+     */
+    public void restoreArtistList(List<AppArtist> artistList) {
+        listDiffer.setList(artistList);
+    }
+
+    /**
+     * Set the selected artist, which is highlighted if selection highlighting is on.
+     * @param artistId the id of the selected artist, or null to clear the selection
+     */
+    public void setSelectedArtistId(String artistId) {
+        if (artistId == null ? selectedArtistId == null : artistId.equals(selectedArtistId)) {
+            return;
+        }
+        selectedArtistId = artistId;
+        if (highlightSelection) {
+            notifyDataSetChanged();
+        }
+    }
 
-        public ViewHolder(View view) {
+    /**
+     * Listener for clicks and long clicks on artists in the list.
+     */
+    public interface OnArtistClickListener {
+        void onArtistClick(AppArtist artist);
+
+        void onArtistLongClick(AppArtist artist);
+    }
+
+    /**
+     * Cache of the child item views, and of the artist which they are displaying.
+     */
+    public class ViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, View.OnLongClickListener {
+        private final ImageView imgArtist;
+        private final TextView txtArtist;
+        private final TextView txtArtistDetails;
+        private AppArtist artist;
+
+        ViewHolder(View view) {
+            super(view);
             imgArtist = (ImageView) view.findViewById(R.id.imgArtist);
             txtArtist = (TextView) view.findViewById(R.id.txtArtist);
+            txtArtistDetails = (TextView) view.findViewById(R.id.txtArtistDetails);
+            view.setOnClickListener(this);
+            view.setOnLongClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && !getArtistList().get(position).isPlaceholder()) {
+                AppArtist clickedArtist = getArtistList().get(position);
+                setSelectedArtistId(clickedArtist.getId());
+                clickListener.onArtistClick(clickedArtist);
+            }
+        }
+
+        @Override
+        public boolean onLongClick(View view) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || getArtistList().get(position).isPlaceholder()) {
+                return false;
+            }
+            clickListener.onArtistLongClick(getArtistList().get(position));
+            return true;
         }
     }
-    */
 }
@@ -1,10 +1,18 @@
 package uk.jumpingmouse.spotify;
 
+import android.content.Context;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
@@ -13,23 +21,31 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
 import android.widget.EditText;
-import android.widget.ListView;
 
+import java.io.IOException;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
-import kaaes.spotify.webapi.android.SpotifyApi;
-import kaaes.spotify.webapi.android.SpotifyService;
-import kaaes.spotify.webapi.android.models.Artist;
-import kaaes.spotify.webapi.android.models.ArtistsPager;
-import kaaes.spotify.webapi.android.models.Pager;
 import retrofit.RetrofitError;
+import retrofit.client.Response;
 import uk.jumpingmouse.spotify.data.AppArtist;
+import uk.jumpingmouse.spotify.data.ArtistDetails;
+import uk.jumpingmouse.spotify.data.ArtistSearchCache;
+import uk.jumpingmouse.spotify.net.RelatedArtistCrawler;
+import uk.jumpingmouse.spotify.net.SingleFlight;
+import uk.jumpingmouse.spotify.net.SpotifyResponseDecoder;
+import uk.jumpingmouse.spotify.net.SpotifyServiceProvider;
+import uk.jumpingmouse.spotify.util.ImagePrefetcher;
 import uk.jumpingmouse.spotify.util.NetUtil;
-import uk.jumpingmouse.spotify.util.SpotifyUtil;
+import uk.jumpingmouse.spotify.util.TaskScheduler;
 import uk.jumpingmouse.spotify.util.UiUtil;
 
 
@@ -40,13 +56,97 @@ public class ArtistListFragment extends Fragment {
     /** The log tag for this class. */
     private static final String LOG_TAG = ArtistListFragment.class.getSimpleName();
 
+    private static final String QUERY_OFFSET_KEY = "offset";
+    private static final String QUERY_LIMIT_KEY = "limit";
+
     private static final String KEY_SEARCH_STRING = "SEARCH_STRING";
     private static final String KEY_ARTIST_LIST = "ARTIST_LIST";
+    private static final String KEY_NEXT_OFFSET = "NEXT_OFFSET";
+    private static final String KEY_HAS_MORE_PAGES = "HAS_MORE_PAGES";
+
+    /** The number of artists requested in each page of search results. */
+    private static final int PAGE_SIZE = 20;
+    /** The number of rows from the end of the list within which the next page is fetched. */
+    private static final int PREFETCH_DISTANCE = 5;
+    /**
+     * The maximum number of pages of search results which are held in memory; the rows
+     * of the pages furthest from view are replaced by placeholders.
+     */
+    private static final int MAX_LOADED_PAGES = 10;
+    /** The number of results of a search beyond which Spotify returns no more. */
+    private static final int MAX_SEARCH_RESULTS = 1000;
+    /** The number of rows beyond the visible rows whose images are prefetched. */
+    private static final int IMAGE_PREFETCH_ROWS = 5;
+    /** The maximum number of artist ids in a request for several artists. */
+    private static final int MAX_ARTISTS_PER_REQUEST = 50;
+    /** The delay before the details of the visible artists are requested again after a failure. */
+    private static final long MIN_DETAILS_RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(5);
+    /** The longest delay before the details are requested again, after repeated failures. */
+    private static final long MAX_DETAILS_RETRY_DELAY_MS = TimeUnit.SECONDS.toMillis(60);
+    /** The maximum number of related artists found by exploring from an artist. */
+    private static final int MAX_RELATED_ARTISTS = 200;
+    /** The maximum number of requests for related artists which are in flight at a time. */
+    private static final int MAX_RELATED_REQUESTS_IN_FLIGHT = 2;
+
+    /** The artist searches in flight, shared by all instances, e.g. before and after rotation. */
+    private static final SingleFlight<String, List<AppArtist>> sArtistSearchFlights =
+            new SingleFlight<>("artist search");
+
+    /** The related artist crawler, whose adjacency cache is shared by all instances. */
+    private static RelatedArtistCrawler sRelatedArtistCrawler;
 
     private EditText mEditArtistName;
 
+    /** Handler used to delay searching until the user has stopped typing. */
+    private final Handler mHandler = new Handler();
+    /** The pending search, which runs once the debounce window has elapsed. */
+    private final Runnable mPendingSearch = new Runnable() {
+        @Override
+        public void run() {
+            Editable editable = mEditArtistName.getText();
+            if (editable != null) {
+                artistNameEntered(editable.toString());
+            }
+        }
+    };
+    /** The time in milliseconds to wait after the last keystroke before searching. */
+    private int mSearchDebounceMs;
+    /** The search string for which the artist list was last requested. */
+    private String mLastSearchString;
+    /** The sequence number of the latest search; only its results are displayed. */
+    private int mSearchSequence = 0;
+    /** The task fetching a page of artists for the latest search, if it is still running. */
+    private FetchArtistsTask mFetchArtistsTask;
+    /** The task exploring the related artists of an artist, if it is still running. */
+    private ExploreRelatedArtistsTask mExploreTask;
+
+    /** The artists loaded so far for the latest search. */
     private ArrayList<AppArtist> mArtistList;
+    /**
+     * The offset of the next page of results for the latest search, i.e. the number of
+     * rows listed, including the placeholders of pages which have been evicted.
+     */
+    private int mNextOffset = 0;
+    /** Whether there may be more results for the latest search than have been loaded. */
+    private boolean mHasMorePages = false;
+    /** The ids of the listed artists whose details have been requested. */
+    private final Set<String> mDetailsRequestedIds = new HashSet<>();
+    /** The delay before the details are requested again after the next failure. */
+    private long mDetailsRetryDelayMs = MIN_DETAILS_RETRY_DELAY_MS;
+    /** The retry of the details of the visible artists, after a request for them failed. */
+    private final Runnable mDetailsRetry = new Runnable() {
+        @Override
+        public void run() {
+            if (mLayoutManager != null) {
+                fetchArtistDetails(mLayoutManager.findFirstVisibleItemPosition(),
+                        mLayoutManager.findLastVisibleItemPosition());
+            }
+        }
+    };
+
     private ArtistAdapter mArtistAdapter;
+    private LinearLayoutManager mLayoutManager;
+    private ImagePrefetcher mImagePrefetcher;
 
     private View mRootView;
 
@@ -61,15 +161,30 @@ public class ArtistListFragment extends Fragment {
     public final View onCreateView(final LayoutInflater inflater, final ViewGroup container,
                                     final Bundle savedInstanceState) {
 
-        // Initialise the artist list and adapter
+        // Initialise the artist list and the adapter, with a listener for clicking on an artist
         mArtistList = new ArrayList<>();
-        mArtistAdapter = new ArtistAdapter(getActivity(), mArtistList);
+        boolean highlightSelection = getResources().getBoolean(R.bool.highlight_selected_artist);
+        mArtistAdapter = new ArtistAdapter(getActivity(), highlightSelection,
+                new ArtistAdapter.OnArtistClickListener() {
+                    @Override
+                    public void onArtistClick(AppArtist artist) {
+                        // Call the item click handler in the activity in which the list is being displayed
+                        ArtistListFragment.Callback callbackActivity = (ArtistListFragment.Callback) getActivity();
+                        callbackActivity.onArtistSelected(artist);
+                    }
+
+                    @Override
+                    public void onArtistLongClick(AppArtist artist) {
+                        exploreRelatedArtists(artist);
+                    }
+                });
 
         // Inflate the fragment
         mRootView = inflater.inflate(R.layout.artist_list, container, false);
 
         // Get a reference to the artist name edit text box
         mEditArtistName = (EditText) mRootView.findViewById(R.id.editArtistName);
+        mSearchDebounceMs = getResources().getInteger(R.integer.search_debounce_ms);
 
         mEditArtistName.setOnKeyListener(new View.OnKeyListener() {
             @Override
@@ -78,32 +193,70 @@ public class ArtistListFragment extends Fragment {
                     return false;
                 }
                 if (keyCode == KeyEvent.KEYCODE_ENTER) {
-                    Editable editable = ((EditText) view).getText();
-                    if (editable != null) {
-                        artistNameEntered(editable.toString());
-                    }
+                    // Search immediately, without waiting for the debounce window
+                    mHandler.removeCallbacks(mPendingSearch);
+                    mPendingSearch.run();
                     return true;
                 }
                 return false;
             }
         });
 
-        // Get a reference to the ListView
-        ListView listviewArtist = (ListView) mRootView.findViewById(R.id.listview_artist);
-        // Attach the adapter to the ListView
-        listviewArtist.setAdapter(mArtistAdapter);
+        // Search as the user types, once they have paused for the debounce window
+        mEditArtistName.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable editable) {
+                mHandler.removeCallbacks(mPendingSearch);
+                if (!editable.toString().trim().equals(mLastSearchString)) {
+                    mHandler.postDelayed(mPendingSearch, mSearchDebounceMs);
+                }
+            }
+        });
+
+        // Get a reference to the RecyclerView and attach the adapter to it
+        RecyclerView recyclerviewArtist = (RecyclerView) mRootView.findViewById(R.id.recyclerview_artist);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        mLayoutManager = layoutManager;
+        recyclerviewArtist.setLayoutManager(layoutManager);
+        recyclerviewArtist.addItemDecoration(
+                new DividerItemDecoration(getActivity(), layoutManager.getOrientation()));
+        recyclerviewArtist.setAdapter(mArtistAdapter);
+
+        // Fetch the next page of results when the user scrolls to near the end of the list,
+        // and reload an evicted page when the user scrolls back to near its rows.
+        // This is also called after a layout which changes the visible rows, so a page which
+        // does not fill the screen is followed by the next page.
+        recyclerviewArtist.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                fetchPages(layoutManager.findFirstVisibleItemPosition(),
+                        layoutManager.findLastVisibleItemPosition());
+            }
+        });
 
-        // Create a listener for clicking on the list item.
-        listviewArtist.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Fetch the details of the visible artists, in batches.
+        // This is also called after a layout which changes the visible rows.
+        recyclerviewArtist.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView adapterView, View view, int position, long l) {
-                // Call the item click handler in the activity in which the list is being displayed
-                AppArtist artist = mArtistAdapter.getArtistList().get(position);
-                ArtistListFragment.Callback callbackActivity = (ArtistListFragment.Callback) getActivity();
-                callbackActivity.onArtistSelected(artist);
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                fetchArtistDetails(layoutManager.findFirstVisibleItemPosition(),
+                        layoutManager.findLastVisibleItemPosition());
             }
         });
 
+        // Prefetch the images of the rows which are about to be scrolled into view
+        mImagePrefetcher = new ImagePrefetcher(getActivity());
+        recyclerviewArtist.addOnScrollListener(
+                mImagePrefetcher.createScrollListener(layoutManager, mArtistAdapter, IMAGE_PREFETCH_ROWS));
+
         // Restore any saved state
         if (savedInstanceState != null) {
             restoreState(savedInstanceState);
@@ -112,6 +265,25 @@ public class ArtistListFragment extends Fragment {
         return mRootView;
     }
 
+    @Override
+    public void onDestroyView() {
+        // Discard any pending or in-flight search, as there is no longer a list to update
+        mHandler.removeCallbacks(mPendingSearch);
+        mHandler.removeCallbacks(mDetailsRetry);
+        mLayoutManager = null;
+        mFetchArtistsTask = null;
+        // A crawl is not resumed by the recreated fragment, so it is always stopped
+        cancelExploreTask();
+        if (getActivity() != null && getActivity().isChangingConfigurations()) {
+            // The recreated fragment will share the fetches in flight, so let them finish
+            TaskScheduler.getInstance().detachTasks(this);
+        } else {
+            TaskScheduler.getInstance().cancelTasks(this);
+        }
+        mImagePrefetcher.cancel();
+        super.onDestroyView();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         if (mEditArtistName != null && mEditArtistName.getText() != null) {
@@ -120,6 +292,8 @@ public class ArtistListFragment extends Fragment {
             outState.putString(KEY_SEARCH_STRING, "");
         }
         outState.putParcelableArrayList(KEY_ARTIST_LIST, mArtistList);
+        outState.putInt(KEY_NEXT_OFFSET, mNextOffset);
+        outState.putBoolean(KEY_HAS_MORE_PAGES, mHasMorePages);
 
         super.onSaveInstanceState(outState);
     }
@@ -140,16 +314,20 @@ public class ArtistListFragment extends Fragment {
         if (savedInstanceState != null) {
             // restore the search string
             String searchString = savedInstanceState.getString(KEY_SEARCH_STRING);
+            // The restored list matches the search string, so there is no need to search again
+            mLastSearchString = (searchString == null) ? null : searchString.trim();
             mEditArtistName.setText(searchString);
             // restore the artist list
             List<AppArtist> updatedAppArtistList = savedInstanceState.getParcelableArrayList(KEY_ARTIST_LIST);
             mArtistList.clear();
+            mDetailsRequestedIds.clear();
             if (updatedAppArtistList != null) {
-                for (AppArtist appArtist : updatedAppArtistList) {
-                    mArtistList.add(appArtist);
-                }
+                mArtistList.addAll(updatedAppArtistList);
             }
-            mArtistAdapter.notifyDataSetChanged();
+            mArtistAdapter.restoreArtistList(mArtistList);
+            // restore the paging position, so that scrolling continues from the next page
+            mNextOffset = savedInstanceState.getInt(KEY_NEXT_OFFSET);
+            mHasMorePages = savedInstanceState.getBoolean(KEY_HAS_MORE_PAGES);
         }
     }
 
@@ -180,50 +358,372 @@ public class ArtistListFragment extends Fragment {
     /**
      * Perform actions on entry of an artist name, i.e. inform the calling activity and
      * invoke an async task to refresh the list of artists.
-     * @param artistName the string against which to match artist names.
+     * Any search still in progress is superseded, and its results will not be displayed.
+     * @param enteredName the string against which to match artist names.
      */
-    private void artistNameEntered(final String artistName) {
+    private void artistNameEntered(final String enteredName) {
+        final String artistName = (enteredName == null) ? null : enteredName.trim();
+        mLastSearchString = artistName;
+        // Any search which is still in progress is now out of date,
+        // and no further pages of its results are wanted
+        cancelFetchArtistsTask();
+        cancelExploreTask();
+        mHasMorePages = false;
         if (artistName != null && !artistName.isEmpty()) {
-            if (NetUtil.isConnected(getActivity())) {
-                // Deactivate any list item view which is activated
-                ListView artistListView = (ListView) mRootView.findViewById(R.id.listview_artist);
-                int checkedItem = artistListView.getCheckedItemPosition();
-                artistListView.setItemChecked(checkedItem, false);
-                // Tell the calling activity that a new artist has been selected
-                // e.g. so it can clear any displayed tracks
-                ArtistListFragment.Callback callbackActivity = (ArtistListFragment.Callback) getActivity();
-                callbackActivity.onArtistNameEntered();
-                // Get the artists which match the entered name
-                FetchArtistsTask fetchArtistsTask = new FetchArtistsTask(new ArtistListFragmentCallback() {
-                    @Override
-                    public void displayNoArtistsMessage() {
-                        if (isAdded()) {
-                            String message = String.format(getString(R.string.no_matching_artists), artistName);
-                            UiUtil.displayMessage(getActivity(), message);
-                        }
+            // Deactivate any list item view which is activated
+            mArtistAdapter.setSelectedArtistId(null);
+            // Tell the calling activity that a new artist has been selected
+            // e.g. so it can clear any displayed tracks
+            ArtistListFragment.Callback callbackActivity = (ArtistListFragment.Callback) getActivity();
+            callbackActivity.onArtistNameEntered();
+            // Get the artists which match the entered name, from the cache if possible,
+            // so no internet connection is needed for a repeated search
+            mFetchArtistsTask = new FetchArtistsTask(++mSearchSequence, 0, new ArtistListFragmentCallback() {
+                @Override
+                public void displayNoArtistsMessage() {
+                    if (isAdded()) {
+                        String message = String.format(getString(R.string.no_matching_artists), artistName);
+                        UiUtil.displayMessage(getActivity(), message);
                     }
-                });
-                fetchArtistsTask.execute(artistName);
+                }
+
+                @Override
+                public void displayNotConnectedMessage() {
+                    if (isAdded()) {
+                        UiUtil.displayMessage(getActivity(), getString(R.string.error_not_connected));
+                    }
+                }
+
+                @Override
+                public void displayFetchFailedMessage() {
+                    if (isAdded()) {
+                        UiUtil.displayMessage(getActivity(), getString(R.string.error_spotify_unavailable));
+                    }
+                }
+            });
+            TaskScheduler.getInstance().executeNetworkTask(this, mFetchArtistsTask,
+                    TaskScheduler.Priority.VISIBLE, artistName);
+        }
+    }
+
+    /**
+     * Invoke an async task to fetch a page of results for the latest search, unless a page
+     * is already being fetched. An evicted page near the visible rows is reloaded first,
+     * at visible priority; otherwise, if the visible rows are near the end of the list,
+     * the next page is fetched ahead of display, so it is run at less than visible priority.
+     * @param firstVisiblePosition the position of the first visible row
+     * @param lastVisiblePosition the position of the last visible row
+     */
+    private void fetchPages(int firstVisiblePosition, int lastVisiblePosition) {
+        if (mFetchArtistsTask != null || mLastSearchString == null || mLastSearchString.isEmpty()
+                || firstVisiblePosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+        List<AppArtist> artistList = mArtistAdapter.getArtistList();
+        int lastPosition = Math.min(lastVisiblePosition + PREFETCH_DISTANCE, artistList.size() - 1);
+        for (int position = Math.max(0, firstVisiblePosition - PREFETCH_DISTANCE);
+                position <= lastPosition; position++) {
+            if (artistList.get(position).isPlaceholder()) {
+                fetchPage(position - position % PAGE_SIZE, TaskScheduler.Priority.VISIBLE);
+                return;
+            }
+        }
+        if (mHasMorePages && lastVisiblePosition >= artistList.size() - PREFETCH_DISTANCE) {
+            fetchPage(mNextOffset, TaskScheduler.Priority.NORMAL);
+        }
+    }
+
+    /**
+     * Invoke an async task to fetch a page of results for the latest search.
+     * @param offset the offset of the page within the results
+     * @param priority the priority of the task
+     */
+    private void fetchPage(int offset, TaskScheduler.Priority priority) {
+        mFetchArtistsTask = new FetchArtistsTask(mSearchSequence, offset, null);
+        TaskScheduler.getInstance().executeNetworkTask(this, mFetchArtistsTask, priority, mLastSearchString);
+    }
+
+    /**
+     * Add a page of results for the latest search to the artist list, and display it.
+     * Each result is listed at its offset within the results, so that a page which has
+     * been evicted can be reloaded into its own rows. Results can shift between pages
+     * while they are being fetched, so an artist may occasionally be listed twice.
+     * If too many pages are held in memory, those furthest from this page are evicted.
+     * @param offset the offset of the page within the results
+     * @param artistPage the page of artists
+     * @param newSearch whether this is the first page of a new search, which replaces the list
+     */
+    private void addArtistPage(int offset, List<AppArtist> artistPage, boolean newSearch) {
+        if (newSearch) {
+            // The images being prefetched are for the rows of the previous search
+            mImagePrefetcher.cancel();
+            mArtistList.clear();
+            mDetailsRequestedIds.clear();
+        }
+        for (int i = 0; i < artistPage.size(); i++) {
+            int position = offset + i;
+            if (position < mArtistList.size()) {
+                mArtistList.set(position, artistPage.get(i));
             } else {
-                UiUtil.displayMessage(getActivity(), getString(R.string.error_not_connected));
+                mArtistList.add(artistPage.get(i));
+            }
+        }
+        int end = offset + artistPage.size();
+        if (artistPage.size() < PAGE_SIZE) {
+            // A page which is not full is the last page, so any rows after it are out of date
+            mArtistList.subList(end, mArtistList.size()).clear();
+            mHasMorePages = false;
+        } else if (end == mArtistList.size()) {
+            mHasMorePages = end < MAX_SEARCH_RESULTS;
+            if (!mHasMorePages) {
+                UiUtil.displayMessage(getActivity(), getString(R.string.artist_list_truncated, MAX_SEARCH_RESULTS));
+            }
+        }
+        mNextOffset = mArtistList.size();
+        evictPages(offset / PAGE_SIZE);
+
+        // update the adapter, which rebinds only the rows which have changed
+        mArtistAdapter.setArtistList(mArtistList);
+    }
+
+    /**
+     * Evict the pages of results furthest from a page, replacing their rows with
+     * placeholders, until at most {@link #MAX_LOADED_PAGES} pages are held in memory.
+     * @param currentPage the index of the page which the user is viewing
+     */
+    private void evictPages(int currentPage) {
+        List<Integer> loadedPages = new ArrayList<>();
+        for (int start = 0; start < mArtistList.size(); start += PAGE_SIZE) {
+            if (!mArtistList.get(start).isPlaceholder()) {
+                loadedPages.add(start / PAGE_SIZE);
+            }
+        }
+        while (loadedPages.size() > MAX_LOADED_PAGES) {
+            int firstPage = loadedPages.get(0);
+            int lastPage = loadedPages.get(loadedPages.size() - 1);
+            int evictedPage = (currentPage - firstPage >= lastPage - currentPage)
+                    ? loadedPages.remove(0) : loadedPages.remove(loadedPages.size() - 1);
+            int end = Math.min((evictedPage + 1) * PAGE_SIZE, mArtistList.size());
+            for (int position = evictedPage * PAGE_SIZE; position < end; position++) {
+                // The reloaded artists will need their details again
+                mDetailsRequestedIds.remove(mArtistList.get(position).getId());
+                mArtistList.set(position, AppArtist.createPlaceholder());
+            }
+        }
+    }
+
+    /**
+     * Invoke async tasks to fetch the details of the visible artists, if any of them
+     * have not been requested. So that scrolling does not cost a request per row, each
+     * batch of ids runs on from the first visible row to the request limit, taking in
+     * the artists about to be scrolled into view.
+     * @param firstVisiblePosition the position of the first visible row
+     * @param lastVisiblePosition the position of the last visible row
+     */
+    private void fetchArtistDetails(int firstVisiblePosition, int lastVisiblePosition) {
+        if (firstVisiblePosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+        List<AppArtist> artistList = mArtistAdapter.getArtistList();
+        lastVisiblePosition = Math.min(lastVisiblePosition, artistList.size() - 1);
+        boolean visibleDetailsNeeded = false;
+        for (int position = firstVisiblePosition; position <= lastVisiblePosition; position++) {
+            if (needsDetails(artistList.get(position))) {
+                visibleDetailsNeeded = true;
+                break;
+            }
+        }
+        if (!visibleDetailsNeeded) {
+            return;
+        }
+        List<String> artistIds = new ArrayList<>();
+        for (int position = firstVisiblePosition;
+                position < artistList.size() && artistIds.size() < MAX_ARTISTS_PER_REQUEST; position++) {
+            AppArtist artist = artistList.get(position);
+            if (needsDetails(artist)) {
+                mDetailsRequestedIds.add(artist.getId());
+                artistIds.add(artist.getId());
+            }
+        }
+        TaskScheduler.getInstance().executeNetworkTask(this, new FetchArtistDetailsTask(),
+                TaskScheduler.Priority.NORMAL, artistIds.toArray(new String[artistIds.size()]));
+    }
+
+    /**
+     * Record that the details of a batch of artists could not be fetched, so that they
+     * are requested again, both when their rows are next scrolled and after a delay which
+     * doubles with each consecutive failure, in case the list is not scrolled.
+     * @param artistIds the ids of the artists in the batch
+     */
+    private void onArtistDetailsFailed(String[] artistIds) {
+        mDetailsRequestedIds.removeAll(Arrays.asList(artistIds));
+        mHandler.removeCallbacks(mDetailsRetry);
+        mHandler.postDelayed(mDetailsRetry, mDetailsRetryDelayMs);
+        mDetailsRetryDelayMs = Math.min(MAX_DETAILS_RETRY_DELAY_MS, mDetailsRetryDelayMs * 2);
+    }
+
+    /**
+     * Returns whether the details of an artist are yet to be requested.
+     * @param artist the artist
+     * @return whether the artist's details are yet to be requested
+     */
+    private boolean needsDetails(AppArtist artist) {
+        return artist.getDetails() == null && artist.getId() != null
+                && !mDetailsRequestedIds.contains(artist.getId());
+    }
+
+    /**
+     * Add the fetched details of artists to the artists in the artist list, and display them.
+     * @param detailsList the details of the artists
+     */
+    private void addArtistDetails(List<ArtistDetails> detailsList) {
+        mDetailsRetryDelayMs = MIN_DETAILS_RETRY_DELAY_MS;
+        Map<String, ArtistDetails> detailsById = new HashMap<>();
+        for (ArtistDetails details : detailsList) {
+            detailsById.put(details.getId(), details);
+        }
+        boolean changed = false;
+        for (int i = 0; i < mArtistList.size(); i++) {
+            AppArtist artist = mArtistList.get(i);
+            ArtistDetails details = detailsById.get(artist.getId());
+            if (details != null && !details.equals(artist.getDetails())) {
+                mArtistList.set(i, artist.withDetails(details));
+                changed = true;
             }
         }
+        if (changed) {
+            // update the adapter, which rebinds only the rows which have changed
+            mArtistAdapter.setArtistList(mArtistList);
+        }
+    }
+
+    /**
+     * Cancel the task fetching artists for the latest search, if it is still running,
+     * together with its HTTP request.
+     */
+    private void cancelFetchArtistsTask() {
+        if (mFetchArtistsTask != null) {
+            mFetchArtistsTask.cancel(true);
+            SpotifyServiceProvider.cancelRequests(mFetchArtistsTask);
+            mFetchArtistsTask = null;
+        }
+    }
+
+    /**
+     * Replace the artist list with the artists related to an artist, found by exploring
+     * the graph of related artists breadth-first from it, to the depth chosen by the user.
+     * The artists at each depth are displayed as they are found.
+     * Any search still in progress is superseded.
+     * @param artist the artist from which to explore
+     */
+    private void exploreRelatedArtists(AppArtist artist) {
+        if (artist.getId() == null) {
+            return;
+        }
+        mHandler.removeCallbacks(mPendingSearch);
+        cancelFetchArtistsTask();
+        cancelExploreTask();
+        mHasMorePages = false;
+        // The images being prefetched and the details requested are for the previous list
+        mImagePrefetcher.cancel();
+        mDetailsRequestedIds.clear();
+        UiUtil.displayMessage(getActivity(), String.format(getString(R.string.exploring_related_artists), artist.getName()));
+        mExploreTask = new ExploreRelatedArtistsTask(artist);
+        TaskScheduler.getInstance().executeCoordinatingTask(this, mExploreTask);
+    }
+
+    /**
+     * Display an artist and the artists found so far which are related to it.
+     * @param root the artist from which the related artists were explored
+     * @param relatedArtists the related artists, in the order in which they were found
+     */
+    private void displayRelatedArtists(AppArtist root, List<AppArtist> relatedArtists) {
+        mArtistList.clear();
+        mArtistList.add(root);
+        mArtistList.addAll(relatedArtists);
+        // update the adapter, which rebinds only the rows which have changed
+        mArtistAdapter.setArtistList(mArtistList);
+    }
+
+    /**
+     * Cancel the task exploring related artists, if it is still running.
+     */
+    private void cancelExploreTask() {
+        if (mExploreTask != null) {
+            mExploreTask.cancel(true);
+            mExploreTask = null;
+        }
+    }
+
+    /**
+     * Returns the process-wide related artist crawler, creating it if necessary.
+     * Related artists are fetched in the network pool, below the priority of searches and
+     * with at most half the pool in flight, so that a crawl cannot starve other fetches;
+     * the task exploring them waits in a pool of its own.
+     * @param context the context
+     * @return the related artist crawler
+     */
+    private static synchronized RelatedArtistCrawler getRelatedArtistCrawler(Context context) {
+        if (sRelatedArtistCrawler == null) {
+            final Context appContext = context.getApplicationContext();
+            sRelatedArtistCrawler = new RelatedArtistCrawler(new RelatedArtistCrawler.RelatedArtistSource() {
+                @Override
+                public List<AppArtist> getRelatedArtists(String artistId) throws IOException {
+                    int imageSizePx = appContext.getResources()
+                            .getDimensionPixelSize(R.dimen.list_image_size);
+                    Response response = SpotifyServiceProvider.getStreamingService().getRelatedArtists(artistId);
+                    return SpotifyResponseDecoder.readRelatedArtists(response, imageSizePx,
+                            NetUtil.isSavingData(appContext));
+                }
+            }, TaskScheduler.getInstance().getNetworkExecutor(TaskScheduler.Priority.NORMAL),
+                    MAX_RELATED_REQUESTS_IN_FLIGHT);
+        }
+        return sRelatedArtistCrawler;
     }
 
     private interface ArtistListFragmentCallback {
         void displayNoArtistsMessage();
+        void displayNotConnectedMessage();
+        void displayFetchFailedMessage();
     }
 
     /**
-     * Background task for getting the list of matching artists from Spotify.
+     * Background task for getting a page of the list of matching artists from Spotify.
      */
     public class FetchArtistsTask extends AsyncTask<String, Void, List<AppArtist>> {
         private String searchString = null;
-
+        private boolean mNotConnected = false;
+        /** Whether the artists could not be fetched, e.g. because Spotify was busy. */
+        private boolean mFetchFailed = false;
+
+        /** The sequence number of the search performed by this task. */
+        private final int mSequence;
+        /** The offset within the search results of the page fetched by this task. */
+        private final int mOffset;
         private final ArtistListFragmentCallback mCallback;
 
-        public FetchArtistsTask(ArtistListFragmentCallback callback) {
+        private final ArtistSearchCache mArtistSearchCache;
+
+        /** The size in pixels at which artist images are displayed in the list. */
+        private final int mImageSizePx;
+        /** Whether to save data by choosing smaller artist images. */
+        private final boolean mSaveData;
+
+        /**
+         * Constructor.
+         * @param sequence the sequence number of the search
+         * @param offset the offset within the search results of the page to fetch
+         * @param callback the callback for reporting that there are no results for the
+         *                 first page of a new search, or null for later or evicted pages,
+         *                 whose failure is not reported
+         */
+        public FetchArtistsTask(int sequence, int offset, ArtistListFragmentCallback callback) {
+            mSequence = sequence;
+            mOffset = offset;
             mCallback = callback;
+            mArtistSearchCache = ArtistSearchCache.getInstance(getActivity());
+            mImageSizePx = getResources().getDimensionPixelSize(R.dimen.list_image_size);
+            mSaveData = NetUtil.isSavingData(getActivity());
         }
 
         /**
@@ -238,49 +738,60 @@ public class ArtistListFragment extends Fragment {
             }
             searchString = params[0];
 
-            if (NetUtil.isConnected(getActivity())) {
-                // Fetch the list of artists and return it
-                return getAppArtists(searchString);
+            // Return the cached list of artists if the search has been run recently
+            List<AppArtist> cachedArtistList = mArtistSearchCache.get(searchString, mOffset, mImageSizePx, mSaveData);
+            if (cachedArtistList != null) {
+                return cachedArtistList;
             }
-            // Return an empty list if there is no internet connection
-            return new ArrayList<>();
-        }
 
-        /**
-         * Returns a list of the artists whose names match a supplied string.
-         * @param strSearch the string to match against
-         * @return a list of the artists whose names match the search string
-         */
-        private List<AppArtist> getAppArtists(String strSearch) {
-            List<AppArtist> appArtistList = new ArrayList<>();
-
-            List<Artist> artistList = getSpotifyArtists(strSearch);
-            if (artistList != null) {
-                for (Artist artist : artistList) {
-                    AppArtist appArtist = new AppArtist(artist.id, artist.name,
-                            SpotifyUtil.getImageUrlSmall(artist.images));
-                    appArtistList.add(appArtist);
+            if (isCancelled()) {
+                return null;
+            }
+            if (NetUtil.isConnected(getActivity())) {
+                // Fetch the list of artists and return it, tagging the request so that
+                // it can be cancelled if the search is superseded
+                SpotifyServiceProvider.setRequestTag(this);
+                try {
+                    List<AppArtist> appArtistList = getAppArtists(searchString, mOffset);
+                    mArtistSearchCache.put(searchString, mOffset, mImageSizePx, mSaveData, appArtistList);
+                    return appArtistList;
+                } finally {
+                    SpotifyServiceProvider.setRequestTag(null);
                 }
             }
-            return appArtistList;
+            // Return an empty list if there is no internet connection
+            mNotConnected = true;
+            return new ArrayList<>();
         }
 
         /**
-         * Returns a list of the Spotify artists whose names match a supplied string.
+         * Returns a page of the list of the artists whose names match a supplied string.
          * @param strSearch the string to match against
-         * @return a list of the Spotify artists whose names match the search string
+         * @param offset the offset of the page within the list
+         * @return a page of the artists whose names match the search string,
+         *         or null if the artists could not be fetched
          */
-        private List<Artist> getSpotifyArtists(String strSearch) {
+        private List<AppArtist> getAppArtists(final String strSearch, final int offset) {
+            // An identical search may already be in flight, e.g. from before a rotation
+            String key = strSearch + "/" + offset + "/" + mImageSizePx + "/" + mSaveData;
             try {
-                ArtistsPager artistsPager = getSpotifyService().searchArtists(strSearch);
-                if (artistsPager != null) {
-                    Pager<Artist> artistPager = artistsPager.artists;
-                    if (artistPager != null) {
-                        return artistPager.items;
+                return sArtistSearchFlights.execute(key, new SingleFlight.Fetch<List<AppArtist>>() {
+                    @Override
+                    public List<AppArtist> fetch() throws IOException {
+                        Map<String, Object> options = new HashMap<>();
+                        options.put(QUERY_OFFSET_KEY, offset);
+                        options.put(QUERY_LIMIT_KEY, PAGE_SIZE);
+                        Response response = SpotifyServiceProvider.getStreamingService()
+                                .searchArtists(strSearch, options);
+                        return SpotifyResponseDecoder.readArtists(response, mImageSizePx, mSaveData);
                     }
+                });
+            } catch (RetrofitError | IOException e) {
+                // A cancelled search fails with an error which does not need to be reported
+                if (!isCancelled()) {
+                    Log.e(LOG_TAG, "Error while fetching artist list: " + e);
+                    mFetchFailed = true;
                 }
-            } catch (RetrofitError e) {
-                Log.e(LOG_TAG, "RetrofitError while fetching artist list: " + e);
             }
             return null;
         }
@@ -293,32 +804,176 @@ public class ArtistListFragment extends Fragment {
          */
         @Override
         protected void onPostExecute(List<AppArtist> updatedArtistList) {
+            if (mSequence != mSearchSequence) {
+                // A newer search has been started, so these results are out of date
+                return;
+            }
+            mFetchArtistsTask = null;
+            if (mCallback == null) {
+                // A later or evicted page which could not be fetched is retried when the user next scrolls
+                if (updatedArtistList != null && !mNotConnected) {
+                    addArtistPage(mOffset, updatedArtistList, false);
+                }
+                return;
+            }
             if (updatedArtistList == null || updatedArtistList.size() == 0) {
-                mCallback.displayNoArtistsMessage();
+                if (mNotConnected) {
+                    mCallback.displayNotConnectedMessage();
+                } else if (mFetchFailed) {
+                    mCallback.displayFetchFailedMessage();
+                } else {
+                    mCallback.displayNoArtistsMessage();
+                }
                 return;
             }
 
-            // update the adapter's data object
-            mArtistList.clear();
-            for (AppArtist appArtist : updatedArtistList) {
-                mArtistList.add(appArtist);
+            addArtistPage(mOffset, updatedArtistList, true);
+        }
+    }
+
+    /**
+     * Background task for getting the details of a batch of artists from Spotify.
+     */
+    public class FetchArtistDetailsTask extends AsyncTask<String, Void, List<ArtistDetails>> {
+        /** The ids of the artists whose details are being fetched. */
+        private String[] mArtistIds = new String[0];
+
+        /**
+         * Fetches the details of a batch of artists in a single request.
+         * @param artistIds the ids of the artists, at most {@link #MAX_ARTISTS_PER_REQUEST}
+         * @return the details of the artists, or null if they could not be fetched
+         */
+        @Override
+        protected List<ArtistDetails> doInBackground(String... artistIds) {
+            mArtistIds = artistIds;
+            if (artistIds.length == 0 || isCancelled() || !NetUtil.isConnected(getActivity())) {
+                return null;
+            }
+            SpotifyServiceProvider.setRequestTag(this);
+            try {
+                Response response = SpotifyServiceProvider.getStreamingService()
+                        .getArtists(TextUtils.join(",", artistIds));
+                return SpotifyResponseDecoder.readArtistDetails(response);
+            } catch (RetrofitError | IOException e) {
+                if (!isCancelled()) {
+                    Log.e(LOG_TAG, "Error while fetching artist details: " + e);
+                }
+            } finally {
+                SpotifyServiceProvider.setRequestTag(null);
             }
-            // notify the adapter that its data object has changed
-            mArtistAdapter.notifyDataSetChanged();
+            return null;
         }
 
         /**
-         * Return a SpotifyService object.
-         * @return a SpotifyService object
+         * Add the fetched details to the artist list, or if they could not be fetched,
+         * arrange for them to be requested again.
+         * Runs on the UI thread after {@link #doInBackground}.
+         * This method won't be invoked if the task was cancelled.
+         * @param detailsList the details of the artists, as returned by {@link #doInBackground}.
          */
-        private SpotifyService getSpotifyService() {
-            SpotifyApi spotifyApi = new SpotifyApi();
+        @Override
+        protected void onPostExecute(List<ArtistDetails> detailsList) {
+            if (detailsList != null) {
+                addArtistDetails(detailsList);
+            } else {
+                onArtistDetailsFailed(mArtistIds);
+            }
+        }
+    }
 
-            // Most (but not all) of the Spotify Web API endpoints require authorisation.
-            // The ones that require authorisation need the following step:
-            //spotifyApi.setAccessToken("myAccessToken");
+    /**
+     * Background task for exploring the related artists of an artist.
+     * The artists found at each depth are published as progress.
+     */
+    public class ExploreRelatedArtistsTask extends AsyncTask<Void, List<AppArtist>, List<AppArtist>> {
+        /** The artist from which to explore. */
+        private final AppArtist mRoot;
+        /** The depth to which to explore. */
+        private final int mDepth;
+        private final RelatedArtistCrawler mCrawler;
+        private boolean mNotConnected = false;
 
-            return spotifyApi.getService();
+        /**
+         * Constructor.
+         * @param root the artist from which to explore
+         */
+        public ExploreRelatedArtistsTask(AppArtist root) {
+            mRoot = root;
+            mDepth = getDepthPreference();
+            mCrawler = getRelatedArtistCrawler(getActivity());
+        }
+
+        /**
+         * Returns the depth to which the user has chosen to explore related artists.
+         * @return the depth to which to explore
+         */
+        private int getDepthPreference() {
+            String depth = PreferenceManager.getDefaultSharedPreferences(getActivity()).getString(
+                    getString(R.string.pref_related_artists_depth_key),
+                    getString(R.string.pref_related_artists_depth_default));
+            try {
+                return Integer.parseInt(depth);
+            } catch (NumberFormatException e) {
+                return Integer.parseInt(getString(R.string.pref_related_artists_depth_default));
+            }
+        }
+
+        /**
+         * Explores the related artists of the root artist.
+         * @param params no parameters
+         * @return the related artists, or null if they could not be explored
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        protected List<AppArtist> doInBackground(Void... params) {
+            if (!NetUtil.isConnected(getActivity())) {
+                mNotConnected = true;
+                return null;
+            }
+            final List<AppArtist> found = new ArrayList<>();
+            try {
+                return mCrawler.crawl(mRoot, mDepth, MAX_RELATED_ARTISTS, new RelatedArtistCrawler.Listener() {
+                    @Override
+                    public void onLevelExplored(int depth, List<AppArtist> artists) {
+                        found.addAll(artists);
+                        publishProgress(new ArrayList<>(found));
+                    }
+                });
+            } catch (InterruptedException e) {
+                // The task was cancelled
+                return null;
+            }
+        }
+
+        /**
+         * Display the related artists found so far.
+         * Runs on the UI thread.
+         * @param foundArtistLists the related artists, as published by {@link #doInBackground}.
+         */
+        @Override
+        protected void onProgressUpdate(List<AppArtist>... foundArtistLists) {
+            displayRelatedArtists(mRoot, foundArtistLists[0]);
+        }
+
+        /**
+         * Display all the related artists found.
+         * Runs on the UI thread after {@link #doInBackground}.
+         * This method won't be invoked if the task was cancelled.
+         * @param relatedArtists the related artists, as returned by {@link #doInBackground}.
+         */
+        @Override
+        protected void onPostExecute(List<AppArtist> relatedArtists) {
+            mExploreTask = null;
+            if (relatedArtists == null || relatedArtists.isEmpty()) {
+                if (mNotConnected) {
+                    UiUtil.displayMessage(getActivity(), getString(R.string.error_not_connected));
+                } else {
+                    UiUtil.displayMessage(getActivity(),
+                            String.format(getString(R.string.no_related_artists), mRoot.getName()));
+                }
+                return;
+            }
+            displayRelatedArtists(mRoot, relatedArtists);
         }
     }
 
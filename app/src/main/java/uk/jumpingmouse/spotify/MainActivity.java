@@ -7,10 +7,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.Menu;
 import android.view.MenuItem;
 
-import java.util.List;
-
 import uk.jumpingmouse.spotify.data.AppArtist;
-import uk.jumpingmouse.spotify.data.AppTrack;
 
 
 /**
@@ -130,15 +127,15 @@ public class MainActivity extends AppCompatActivity
 
     /**
      * List fragment callback for when a track has been selected from the track list.
-     * @param appTrackList the list of all top tracks for the artist whose track was selected
-     * @param position the position in appTrackList of the selected track
+     * @param queueId the queue id of the list of all top tracks for the artist whose track was selected
+     * @param position the position in the list of the selected track
      */
     @Override
-    public void onTrackSelected(List<AppTrack> appTrackList, int position) {
+    public void onTrackSelected(String queueId, int position) {
 //        if (mMultiPane) {
         // In multi-pane mode, show the player view in this activity by displaying
         // the player fragment in a dialog using a fragment transaction.
-        PlayerFragment fragment = PlayerFragment.newInstance(appTrackList, position);
+        PlayerFragment fragment = PlayerFragment.newInstance(queueId, position);
         FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
         fragment.show(getSupportFragmentManager(), "dialog");
         transaction.commit();
@@ -0,0 +1,835 @@
+package uk.jumpingmouse.spotify;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.net.wifi.WifiManager;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.jumpingmouse.spotify.data.AppTrack;
+import uk.jumpingmouse.spotify.net.PreviewProxy;
+import uk.jumpingmouse.spotify.util.HoldTimer;
+import uk.jumpingmouse.spotify.util.TaskScheduler;
+
+
+/**
+ * The service which plays the previews of a queue of tracks.
+ * The service owns the media players, the wifi lock and the queue, so that playback is
+ * not interrupted, and the current track is not prepared again, when the player fragment
+ * is recreated, e.g. on rotation, or when the app goes into the background.
+ * The player fragment starts the service and binds to it while it is visible, and stops
+ * the service when the player is closed. While a track is playing, the service runs in
+ * the foreground, with a notification showing the track.
+ * All methods must be called on the UI thread.
+ */
+public class PlaybackService extends Service {
+    /**
+     * The log tag for this class.
+     */
+    private static final String LOG_TAG = PlaybackService.class.getSimpleName();
+
+    private static final String WIFI_LOCK_TAG = "WIFI_LOCK_TAG";
+    private static final String WAKE_LOCK_TAG = "WAKE_LOCK_TAG";
+
+    private static final int NOTIFICATION_ID = 1;
+    private static final String NOTIFICATION_CHANNEL_ID = "playback";
+
+    /**
+     * The media player states, see:
+     * http://developer.android.com/reference/android/media/MediaPlayer.html.
+     */
+    public enum PlayerState {
+        IDLE,
+        INITIALISED,
+        PREPARING,
+        PREPARED,
+        STARTED,
+        PAUSED,
+        STOPPED,
+        PLAYBACK_COMPLETED,
+//        ERROR,
+        END
+    }
+
+    /**
+     * Listener for changes to the playback, e.g. so that they can be displayed.
+     * The listener is called on the UI thread.
+     */
+    public interface PlaybackListener {
+        /**
+         * Called when the current track changes.
+         * @param trackPosition the position in the queue of the new current track
+         */
+        void onTrackChanged(int trackPosition);
+
+        /**
+         * Called when the current track starts or stops playing.
+         * @param playing whether the current track is playing
+         */
+        void onPlayingChanged(boolean playing);
+    }
+
+    /**
+     * The binder returned to clients, which gives them direct access to the service,
+     * as they run in the same process.
+     */
+    public class PlaybackBinder extends Binder {
+        public PlaybackService getService() {
+            return PlaybackService.this;
+        }
+    }
+
+    /**
+     * Callback for the URI from which to play a preview, which is resolved in a
+     * background thread.
+     */
+    private interface PreviewUriCallback {
+        /**
+         * Called on the UI thread once the URI has been resolved.
+         * @param previewUri the URI from which to play the preview, or null if there is none
+         */
+        void onPreviewUriResolved(Uri previewUri);
+    }
+
+    private final IBinder mBinder = new PlaybackBinder();
+    private final Handler mHandler = new Handler();
+    private PlaybackListener mListener;
+
+    /**
+     * The queue of tracks being played.
+     */
+    private List<AppTrack> mTrackList;
+    /**
+     * The position in the queue of the current track.
+     */
+    private int mTrackPosition = -1;
+
+    /** The media player object. */
+    private MediaPlayer mMediaPlayer;
+
+    /**
+     * A second media player, which prepares the next track while the current track is
+     * playing, so that skipping or advancing to the next track does not have to wait for
+     * the track to be fetched and buffered.
+     */
+    private MediaPlayer mNextMediaPlayer;
+    /** Whether the next media player has been prepared. */
+    private boolean mNextMediaPlayerPrepared;
+
+    /** Incremented for each preview URI resolved for the current media player, so that out-of-date URIs can be discarded. */
+    private int mPreviewUriGeneration = 0;
+    /** Incremented for each preview URI resolved for the next media player, so that out-of-date URIs can be discarded. */
+    private int mNextPreviewUriGeneration = 0;
+
+    /** The time at which the track was last changed, or 0 once audio for the track has started. */
+    private long mTrackChangeTime = 0;
+    /** Whether the track last changed to was prepared in advance by the next media player. */
+    private boolean mTrackChangePrepared;
+
+    /** The wifi lock, held while a preview is being read from the network. */
+    private WifiManager.WifiLock mWifiLock;
+    /** The wake lock, held while a preview is being read from the network or prepared. */
+    private PowerManager.WakeLock mWakeLock;
+    /** The time for which the wifi lock has been held, since the service was created. */
+    private final HoldTimer mWifiLockTimer = new HoldTimer();
+    /** The time for which the wake lock has been held, since the service was created. */
+    private final HoldTimer mWakeLockTimer = new HoldTimer();
+
+    /** Whether the current media player has buffered the whole preview, e.g. because it is cached. */
+    private boolean mBuffered;
+    /** Whether the next media player has buffered the whole preview. */
+    private boolean mNextBuffered;
+
+    private int mSongPosition = 0;
+    private boolean mStartWhenPrepared;
+
+    /** The current state of the media player. */
+    private PlayerState mPlayerState = PlayerState.END;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        WifiManager wifiManager = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        mWifiLock = wifiManager.createWifiLock(WifiManager.WIFI_MODE_FULL, WIFI_LOCK_TAG);
+        mWifiLock.setReferenceCounted(false);
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKE_LOCK_TAG);
+        mWakeLock.setReferenceCounted(false);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // The queue is lost if the process is killed, so there is nothing to restart
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        releaseNextMediaPlayer();
+        changeStateEnd();
+        mHandler.removeCallbacksAndMessages(null);
+        stopForeground(true);
+        Log.d(LOG_TAG, String.format("Wifi lock held for %d ms (%d times), wake lock held for %d ms (%d times)",
+                getWifiLockHeldMs(), mWifiLockTimer.getHoldCount(),
+                getWakeLockHeldMs(), mWakeLockTimer.getHoldCount()));
+        super.onDestroy();
+    }
+
+    //-------------------------------------------------------------------------------
+    // Client methods
+
+    /**
+     * Sets the listener for changes to the playback.
+     * @param listener the listener, or null to remove the current listener
+     */
+    public void setPlaybackListener(PlaybackListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Returns whether a list of tracks is the queue being played.
+     * @param trackList the list of tracks
+     * @return whether the list of tracks is the queue being played
+     */
+    public boolean hasQueue(List<AppTrack> trackList) {
+        return mTrackList != null && mTrackList.equals(trackList);
+    }
+
+    /**
+     * Replaces the queue being played, and prepares a track in it.
+     * @param trackList the new queue
+     * @param trackPosition the position in the queue of the track to prepare
+     * @param songPosition the time into the track at which to start, in milliseconds
+     * @param start whether to start playing the track once it has been prepared
+     */
+    public void setQueue(List<AppTrack> trackList, int trackPosition, int songPosition, boolean start) {
+        releaseNextMediaPlayer();
+        changeStateEnd();
+        mTrackList = new ArrayList<>(trackList);
+        mTrackPosition = -1;
+        changeTrackPlaying(trackPosition, start);
+        mSongPosition = songPosition;
+    }
+
+    /**
+     * Returns the queue being played.
+     * @return the queue being played, or null if there is none
+     */
+    public List<AppTrack> getTrackList() {
+        return mTrackList;
+    }
+
+    /**
+     * Returns the position in the queue of the current track.
+     * @return the position of the current track, or -1 if there is none
+     */
+    public int getTrackPosition() {
+        return mTrackPosition;
+    }
+
+    /**
+     * Returns whether the current track is playing.
+     * @return whether the current track is playing
+     */
+    public boolean isPlaying() {
+        return mPlayerState == PlayerState.STARTED;
+    }
+
+    /**
+     * Returns the time into the current track.
+     * @return the time into the current track in milliseconds
+     */
+    public int getSongPosition() {
+        if (mMediaPlayer != null && mPlayerState == PlayerState.STARTED) {
+            return mMediaPlayer.getCurrentPosition();
+        }
+        return mSongPosition;
+    }
+
+    /**
+     * Toggle the play/pause status of the current track.
+     */
+    public void playPause() {
+        if (mPlayerState == PlayerState.STARTED) {
+            changeStatePaused();
+        } else if (mPlayerState == PlayerState.IDLE || mPlayerState == PlayerState.PREPARING) {
+            // The preview URI is being resolved, or the track is being prepared
+            mStartWhenPrepared = true;
+        } else if (mPlayerState == PlayerState.END) {
+            // e.g. the track could not be played; try again
+            prepareTrack(true);
+        } else {
+            changeStateStarted();
+        }
+    }
+
+    /**
+     * Move to the previous track.
+     */
+    public void prevTrack() {
+        if (mTrackPosition > 0) {
+            changeTrackPlaying(mTrackPosition - 1, true);
+        }
+    }
+
+    /**
+     * Move to the next track.
+     */
+    public void nextTrack() {
+        if (mTrackList != null && mTrackPosition < mTrackList.size() - 1) {
+            changeTrackPlaying(mTrackPosition + 1, true);
+        }
+    }
+
+    /**
+     * Move to a time in the current track.
+     * @param songPosition the time into the track in milliseconds
+     */
+    public void seekTo(int songPosition) {
+        mSongPosition = songPosition;
+        if (mMediaPlayer != null
+                && (mPlayerState == PlayerState.PREPARED
+                || mPlayerState == PlayerState.STARTED
+                || mPlayerState == PlayerState.PAUSED
+                || mPlayerState == PlayerState.PLAYBACK_COMPLETED)) {
+            mMediaPlayer.seekTo(mSongPosition);
+        }
+    }
+
+    /**
+     * Returns the total time for which the wifi lock has been held since the service was created.
+     * @return the time for which the wifi lock has been held, in milliseconds
+     */
+    public long getWifiLockHeldMs() {
+        return mWifiLockTimer.getTotalMs();
+    }
+
+    /**
+     * Returns the total time for which the wake lock has been held since the service was created.
+     * @return the time for which the wake lock has been held, in milliseconds
+     */
+    public long getWakeLockHeldMs() {
+        return mWakeLockTimer.getTotalMs();
+    }
+
+    //-------------------------------------------------------------------------------
+    // Media player states
+
+    private MediaPlayer createMediaPlayer() {
+        MediaPlayer mediaPlayer = new MediaPlayer();
+        mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+
+        //--------------------------------------------------------
+        // Callbacks for media player events
+
+        // The listeners are shared by the current and next media players,
+        // so they check which one the event is for.
+
+        mediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+            @Override
+            public void onPrepared(MediaPlayer mediaPlayer) {
+                if (mediaPlayer == mNextMediaPlayer) {
+                    onNextMediaPlayerPrepared();
+                    return;
+                }
+                changeStatePrepared();
+                if (mStartWhenPrepared) {
+                    changeStateStarted();
+                }
+                // Now that the current track is ready, get the next track ready
+                prepareNextMediaPlayer();
+            }
+        });
+
+        mediaPlayer.setOnBufferingUpdateListener(new MediaPlayer.OnBufferingUpdateListener() {
+            @Override
+            public void onBufferingUpdate(MediaPlayer mediaPlayer, int percent) {
+                if (percent < 100) {
+                    return;
+                }
+                // The whole preview has been read, so the network is no longer needed
+                if (mediaPlayer == mMediaPlayer) {
+                    mBuffered = true;
+                } else if (mediaPlayer == mNextMediaPlayer) {
+                    mNextBuffered = true;
+                }
+                updateLocks();
+            }
+        });
+
+        mediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(MediaPlayer mediaPlayer) {
+                if (mediaPlayer != mMediaPlayer) {
+                    return;
+                }
+                if (mNextMediaPlayerPrepared) {
+                    // The next media player was chained to this one, so has already started
+                    mTrackChangeTime = SystemClock.elapsedRealtime();
+                    mTrackChangePrepared = true;
+                    switchToNextMediaPlayer(true);
+                } else {
+                    changeStatePlaybackCompleted();
+                }
+            }
+        });
+
+        mediaPlayer.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+                Log.e(LOG_TAG, String.format("MediaPlayer error: What: %d. Extra: %d", what, extra));
+                if (mediaPlayer == mNextMediaPlayer) {
+                    // The next track will be prepared from cold when it is played
+                    releaseNextMediaPlayer();
+                    return true;
+                }
+                changeStateEnd();
+                return false;
+            }
+        });
+
+        return mediaPlayer;
+    }
+
+    /** Change state to IDLE. */
+    private void changeStateIdle() {
+        if (mMediaPlayer == null) {
+            mMediaPlayer = createMediaPlayer();
+            mPlayerState = PlayerState.IDLE;
+        }
+    }
+
+    /**
+     * Change state to INITIALISED.
+     * @param previewUri the URI from which to play the current track's preview
+     */
+    private void changeStateInitialised(Uri previewUri) {
+        if (mMediaPlayer != null
+                && mPlayerState == PlayerState.IDLE) {
+            mBuffered = isLocal(previewUri);
+            try {
+                mMediaPlayer.setDataSource(this, previewUri);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, String.format("Exception while setting media player data source to %s: %s",
+                        previewUri, e));
+                changeStateEnd();
+                return;
+            }
+            mPlayerState = PlayerState.INITIALISED;
+        }
+    }
+
+    /** Change state to PREPARING. */
+    private void changeStatePreparing(boolean startWhenPrepared) {
+        if (mMediaPlayer != null
+                && (mPlayerState == PlayerState.INITIALISED
+                || mPlayerState == PlayerState.STOPPED)) {
+            mStartWhenPrepared = startWhenPrepared;
+            mMediaPlayer.prepareAsync();
+            mPlayerState = PlayerState.PREPARING;
+            updateLocks();
+        }
+    }
+
+    /** Change state to PREPARED. */
+    private void changeStatePrepared() {
+        mPlayerState = PlayerState.PREPARED;
+        updateLocks();
+    }
+
+    /** Change state to STARTED. */
+    private void changeStateStarted() {
+        if (mMediaPlayer != null
+                && (mPlayerState == PlayerState.PREPARED
+                || mPlayerState == PlayerState.PAUSED
+                || mPlayerState == PlayerState.PLAYBACK_COMPLETED)) {
+
+            mMediaPlayer.seekTo(mSongPosition);
+            mMediaPlayer.start();
+            mPlayerState = PlayerState.STARTED;
+            logTrackChangeLatency();
+            onPlayingChanged();
+        }
+    }
+
+    /** Change state to PAUSED. */
+    private void changeStatePaused() {
+        if (mMediaPlayer != null
+                && mPlayerState == PlayerState.STARTED) {
+            mMediaPlayer.pause();
+            mSongPosition = mMediaPlayer.getCurrentPosition();
+            mPlayerState = PlayerState.PAUSED;
+            onPlayingChanged();
+        }
+    }
+
+    /** Change state to PLAYBACK_COMPLETED. */
+    private void changeStatePlaybackCompleted() {
+        mSongPosition = 0;
+        mPlayerState = PlayerState.PLAYBACK_COMPLETED;
+        onPlayingChanged();
+    }
+
+    /** Change state to END. */
+    private void changeStateEnd() {
+        boolean wasPlaying = isPlaying();
+        if (mMediaPlayer != null) {
+            mMediaPlayer.reset();
+            mMediaPlayer.release();
+            mMediaPlayer = null;
+        }
+        // A preview URI being resolved for the released media player is no longer needed
+        mPreviewUriGeneration++;
+        mPlayerState = PlayerState.END;
+        updateLocks();
+        if (wasPlaying) {
+            onPlayingChanged();
+        }
+    }
+
+    /**
+     * Change the track which is playing.
+     * @param newPosition the position of the track to play in the queue
+     * @param start whether to start playing the track once it has been prepared
+     */
+    private void changeTrackPlaying(int newPosition, boolean start) {
+        if (newPosition >= 0 && newPosition < mTrackList.size() && newPosition != mTrackPosition) {
+            mTrackChangeTime = SystemClock.elapsedRealtime();
+
+            if (newPosition == mTrackPosition + 1 && mNextMediaPlayerPrepared) {
+                // The next track is ready to play, so switch to it straight away
+                mTrackChangePrepared = true;
+                switchToNextMediaPlayer(false);
+                return;
+            }
+            // The next media player, if any, is preparing the wrong track
+            mTrackChangePrepared = false;
+            releaseNextMediaPlayer();
+
+            // End the previously selected track and free up resources
+            changeStateEnd();
+
+            changeTrackPosition(newPosition);
+            prepareTrack(start);
+        }
+    }
+
+    /**
+     * Prepare the current track in a new media player.
+     * The URI of the track's preview is resolved in a background thread, as doing so
+     * may touch the disk and start the preview proxy.
+     * @param start whether to start playing the track once it has been prepared
+     */
+    private void prepareTrack(boolean start) {
+        // Create a new instance of the media player
+        changeStateIdle();
+        mStartWhenPrepared = start;
+        updateLocks();
+        final int generation = ++mPreviewUriGeneration;
+        resolvePreviewUri(getTrack(), new PreviewUriCallback() {
+            @Override
+            public void onPreviewUriResolved(Uri previewUri) {
+                if (generation != mPreviewUriGeneration) {
+                    return;
+                }
+                // Initialise the media player by loading the current track
+                changeStateInitialised(previewUri);
+                // Prepare the current track, and start it if required
+                changeStatePreparing(mStartWhenPrepared);
+            }
+        });
+    }
+
+    /**
+     * Change the current position in the queue, to the start of the track at the position.
+     * @param newPosition the new position in the queue
+     */
+    private void changeTrackPosition(int newPosition) {
+        mTrackPosition = newPosition;
+        mSongPosition = 0;
+        if (mListener != null) {
+            mListener.onTrackChanged(mTrackPosition);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Next media player
+
+    /**
+     * Start preparing the next track in the next media player, if there is a next track,
+     * and it is not already being prepared.
+     */
+    private void prepareNextMediaPlayer() {
+        if (mNextMediaPlayer != null || mTrackList == null || mTrackPosition >= mTrackList.size() - 1) {
+            return;
+        }
+        // The media player is created straight away, so that the track is not prepared twice
+        mNextMediaPlayer = createMediaPlayer();
+        mNextMediaPlayerPrepared = false;
+        mNextBuffered = false;
+        updateLocks();
+        final int generation = ++mNextPreviewUriGeneration;
+        resolvePreviewUri(mTrackList.get(mTrackPosition + 1), new PreviewUriCallback() {
+            @Override
+            public void onPreviewUriResolved(Uri previewUri) {
+                if (generation == mNextPreviewUriGeneration) {
+                    onNextPreviewUriResolved(previewUri);
+                }
+            }
+        });
+    }
+
+    /**
+     * Start preparing the next track in the next media player, once the URI of its
+     * preview has been resolved.
+     * @param previewUri the URI from which to play the next track's preview
+     */
+    private void onNextPreviewUriResolved(Uri previewUri) {
+        if (previewUri == null) {
+            releaseNextMediaPlayer();
+            return;
+        }
+        mNextBuffered = isLocal(previewUri);
+        try {
+            mNextMediaPlayer.setDataSource(this, previewUri);
+        } catch (Exception e) {
+            Log.e(LOG_TAG, String.format("Exception while setting next media player data source to %s: %s",
+                    previewUri, e));
+            releaseNextMediaPlayer();
+            return;
+        }
+        mNextMediaPlayer.prepareAsync();
+        updateLocks();
+    }
+
+    /**
+     * Handle the next media player having been prepared, by chaining it to the current
+     * media player, so that it starts as soon as the current track completes.
+     */
+    private void onNextMediaPlayerPrepared() {
+        mNextMediaPlayerPrepared = true;
+        if (mMediaPlayer != null
+                && (mPlayerState == PlayerState.PREPARED
+                || mPlayerState == PlayerState.STARTED
+                || mPlayerState == PlayerState.PAUSED)) {
+            mMediaPlayer.setNextMediaPlayer(mNextMediaPlayer);
+        }
+    }
+
+    /**
+     * Make the next media player, which has been prepared, the current media player,
+     * and start preparing the track after it.
+     * @param started whether the next media player has already been started, because it
+     *                was chained to the current media player, which has completed
+     */
+    private void switchToNextMediaPlayer(boolean started) {
+        MediaPlayer nextMediaPlayer = mNextMediaPlayer;
+        boolean nextBuffered = mNextBuffered;
+        mNextMediaPlayer = null;
+        mNextMediaPlayerPrepared = false;
+
+        // End the previous track and free up resources
+        changeStateEnd();
+
+        mMediaPlayer = nextMediaPlayer;
+        mBuffered = nextBuffered;
+        mPlayerState = PlayerState.PREPARED;
+        updateLocks();
+        changeTrackPosition(mTrackPosition + 1);
+
+        if (started) {
+            mPlayerState = PlayerState.STARTED;
+            logTrackChangeLatency();
+            onPlayingChanged();
+        } else {
+            changeStateStarted();
+        }
+        prepareNextMediaPlayer();
+    }
+
+    /** Release the next media player, if there is one. */
+    private void releaseNextMediaPlayer() {
+        if (mNextMediaPlayer != null) {
+            if (mMediaPlayer != null && mNextMediaPlayerPrepared) {
+                mMediaPlayer.setNextMediaPlayer(null);
+            }
+            mNextMediaPlayer.release();
+            mNextMediaPlayer = null;
+        }
+        // A preview URI being resolved for the released media player is no longer needed
+        mNextPreviewUriGeneration++;
+        mNextMediaPlayerPrepared = false;
+        updateLocks();
+    }
+
+    /**
+     * Log the time between the track being changed and audio for the new track starting,
+     * so that changes to tracks which were prepared in advance can be compared with those
+     * which were not.
+     */
+    private void logTrackChangeLatency() {
+        if (mTrackChangeTime != 0) {
+            long latency = SystemClock.elapsedRealtime() - mTrackChangeTime;
+            Log.d(LOG_TAG, String.format("Track change to audio latency: %d ms (prepared in advance: %b)",
+                    latency, mTrackChangePrepared));
+            mTrackChangeTime = 0;
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Foreground notification
+
+    /**
+     * Handle the current track starting or stopping, by running the service in the
+     * foreground while the track is playing, and informing the listener.
+     */
+    private void onPlayingChanged() {
+        if (isPlaying()) {
+            startForeground(NOTIFICATION_ID, buildNotification(getTrack()));
+        } else {
+            stopForeground(true);
+        }
+        if (mListener != null) {
+            mListener.onPlayingChanged(isPlaying());
+        }
+    }
+
+    /**
+     * Build the notification shown while a track is playing.
+     * @param track the track which is playing
+     * @return the notification
+     */
+    private Notification buildNotification(AppTrack track) {
+        createNotificationChannel();
+        Intent launchIntent = getPackageManager().getLaunchIntentForPackage(getPackageName());
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+        return new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_media_play)
+                .setContentTitle(track == null ? null : track.getTrackName())
+                .setContentText(track == null ? null : track.getArtistName())
+                .setContentIntent(contentIntent)
+                .setShowWhen(false)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .build();
+    }
+
+    /**
+     * Create the channel for the notification shown while a track is playing,
+     * on devices which have notification channels.
+     */
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager notificationManager =
+                    (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID,
+                    getString(R.string.notification_channel_playback), NotificationManager.IMPORTANCE_LOW);
+            // Creating a channel which already exists does nothing
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+
+    /**
+     * Returns the current track.
+     * @return the current track
+     */
+    private AppTrack getTrack() {
+        if (mTrackList == null || mTrackPosition == -1) {
+            return null;
+        }
+        return mTrackList.get(mTrackPosition);
+    }
+
+    /**
+     * Resolves the URI from which to play the preview of a track, which is in the preview
+     * cache if the preview has been played before, or is being downloaded into it.
+     * The URI is resolved in a background thread, as looking in the cache touches the disk,
+     * and the preview proxy may have to be started, then passed to the callback on the
+     * UI thread.
+     * @param track the track
+     * @param callback the callback for the URI, which is null if the track has no preview
+     */
+    private void resolvePreviewUri(AppTrack track, final PreviewUriCallback callback) {
+        final String previewUrl = (track == null) ? null : track.getPreviewUrl();
+        final Context appContext = getApplicationContext();
+        TaskScheduler.getInstance().getUiWorkExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Uri previewUri = PreviewProxy.getInstance(appContext).getPlaybackUri(previewUrl);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onPreviewUriResolved(previewUri);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns whether a preview URI refers to a local file, e.g. in the preview cache.
+     * @param previewUri the preview URI
+     * @return whether the preview is played from a local file
+     */
+    private static boolean isLocal(Uri previewUri) {
+        return previewUri != null && "file".equals(previewUri.getScheme());
+    }
+
+    //-------------------------------------------------------------------------------
+    // Wifi and wake locks
+
+    /**
+     * Acquire or release the wifi and wake locks, according to whether they are needed.
+     * The wifi lock is only needed while a media player is reading a preview from the
+     * network, i.e. until it has buffered the whole preview, which it does even while paused.
+     * The wake lock is also needed while the current track is being prepared, so that it
+     * can start; while a track is playing, the audio system keeps the device awake.
+     */
+    private void updateLocks() {
+        boolean readingNetwork = (mMediaPlayer != null && !mBuffered)
+                || (mNextMediaPlayer != null && !mNextBuffered);
+        // A media player which is idle is waiting for the URI of its preview to be resolved
+        boolean preparing = (mPlayerState == PlayerState.IDLE || mPlayerState == PlayerState.PREPARING);
+
+        if (readingNetwork && !mWifiLock.isHeld()) {
+            mWifiLock.acquire();
+            mWifiLockTimer.onAcquired();
+        } else if (!readingNetwork && mWifiLock.isHeld()) {
+            mWifiLock.release();
+            mWifiLockTimer.onReleased();
+        }
+
+        boolean awake = readingNetwork || preparing;
+        if (awake && !mWakeLock.isHeld()) {
+            mWakeLock.acquire();
+            mWakeLockTimer.onAcquired();
+        } else if (!awake && mWakeLock.isHeld()) {
+            mWakeLock.release();
+            mWakeLockTimer.onReleased();
+        }
+    }
+
+}
@@ -8,10 +8,6 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.Menu;
 import android.view.MenuItem;
 
-import java.util.List;
-
-import uk.jumpingmouse.spotify.data.AppTrack;
-
 
 /**
  * Activity for displaying the track player.
@@ -23,21 +19,21 @@ public class PlayerActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_player);
 
-        List<AppTrack> appTrackList = getIntent().getExtras().getParcelableArrayList("TRACK_LIST");
+        String queueId = getIntent().getExtras().getString("QUEUE_ID");
         int position = (int) getIntent().getExtras().get("POSITION");
 
         if (savedInstanceState == null) {
-            displayFragment(appTrackList, position);
+            displayFragment(queueId, position);
         }
     }
 
     /**
      * Display the fragment
      */
-    private void displayFragment(List<AppTrack> appTrackList, int position) {
+    private void displayFragment(String queueId, int position) {
         FragmentManager fragmentManager = getSupportFragmentManager();
 
-        PlayerFragment fragment = PlayerFragment.newInstance(appTrackList, position);
+        PlayerFragment fragment = PlayerFragment.newInstance(queueId, position);
 
         // Show the fragment fullscreen
         FragmentTransaction transaction = fragmentManager.beginTransaction();
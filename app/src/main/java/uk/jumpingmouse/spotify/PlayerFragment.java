@@ -1,14 +1,14 @@
 package uk.jumpingmouse.spotify;
 
 import android.app.Dialog;
+import android.content.ComponentName;
 import android.content.Context;
-import android.media.AudioManager;
-import android.media.MediaPlayer;
-import android.net.Uri;
-import android.net.wifi.WifiManager;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.AsyncTask;
 import android.os.Bundle;
-import android.os.PowerManager;
+import android.os.Handler;
+import android.os.IBinder;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.DialogFragment;
@@ -27,11 +27,13 @@ import android.widget.TextView;
 
 import com.squareup.picasso.Picasso;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import uk.jumpingmouse.spotify.data.AppTrack;
+import uk.jumpingmouse.spotify.data.TrackQueueRepository;
+import uk.jumpingmouse.spotify.util.ImagePrefetcher;
+import uk.jumpingmouse.spotify.util.TaskScheduler;
 
 
 /**
@@ -43,19 +45,17 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
      */
     private static final String LOG_TAG = PlayerFragment.class.getSimpleName();
 
-    private static final String ARG_TRACKS = "TRACK_LIST";
+    private static final String ARG_QUEUE_ID = "QUEUE_ID";
     private static final String ARG_POSITION = "TRACK_POSITION";
 
-    private static final String KEY_TRACKS = "KEY_TRACK_LIST";
     private static final String KEY_TRACK_POSITION = "KEY_TRACK_POSITION";
-    private static final String KEY_PLAYER_STATE = "KEY_PLAYER_STATE";
     private static final String KEY_SONG_POSITION = "KEY_SONG_POSITION";
 
     private static final String MINUTES_SECONDS_FORMAT = "%d:%02d";
 
-    private static final String WIFI_LOCK_TAG = "WIFI_LOCK_TAG";
-
     private static final int SEEKBAR_INCREMENTS = 300;
+    /** The time represented by each seekbar increment, in milliseconds. */
+    private static final int SEEKBAR_TICK_MS = 100;
 
     /**
      * The list of tracks available to the player.
@@ -66,36 +66,21 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
      */
     private int mTrackPosition = -1;
 
-    /** The media player object. */
-    private MediaPlayer mMediaPlayer;
-
-    /** The wifi lock object. */
-    private WifiManager.WifiLock mWifiLock;
-
+    /** The time into the current track in milliseconds, while the service is not bound. */
     private int mSongPosition = 0;
-    private boolean mStartWhenPrepared;
+    /** Whether to start playing the queue once the service is bound, because the player has just opened. */
+    private boolean mStartWhenBound;
 
+    /** The playback service, while it is bound. */
+    private PlaybackService mPlaybackService;
 
-    /**
-     * The media player states, see:
-     * http://developer.android.com/reference/android/media/MediaPlayer.html.
-     */
-    public enum PlayerState {
-        IDLE,
-        INITIALISED,
-        PREPARING,
-        PREPARED,
-        STARTED,
-        PAUSED,
-        PAUSED_AWAITING_RESTART,
-        STOPPED,
-        PLAYBACK_COMPLETED,
-//        ERROR,
-        END
-    }
-
-    /** The current state of the media player. */
-    private PlayerState mPlayerState;
+    /** The prefetcher for the images of the previous and next tracks. */
+    private ImagePrefetcher mImagePrefetcher;
+
+    /** The handler on which the progress clock runs, on the UI thread. */
+    private final Handler mProgressHandler = new Handler();
+    /** The second displayed as the time position, or -1 if none has been displayed. */
+    private long mDisplayedSeconds = -1;
 
     // Display elements
     private TextView txtTrack;
@@ -123,6 +108,8 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
         // Inflate the fragment
         View rootView = inflater.inflate(R.layout.player, container, false);
 
+        mImagePrefetcher = new ImagePrefetcher(getActivity());
+
         txtTrack = (TextView) rootView.findViewById(R.id.txtTrack);
         txtArtist = (TextView) rootView.findViewById(R.id.txtArtist);
         txtAlbum = (TextView) rootView.findViewById(R.id.txtAlbum);
@@ -160,58 +147,28 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
 
         sbProgress.setOnSeekBarChangeListener(this);
 
+        sbProgress.setMax(SEEKBAR_INCREMENTS);
+        mDisplayedSeconds = -1;
+
+        // Get the track list from the repository, if it is in memory
+        mTrackList = TrackQueueRepository.getInstance(getActivity()).getIfPresent(getQueueId());
+
         // If there is no saved state, initialise the state.
         if (savedInstanceState == null) {
-            mTrackList = getTrackList();
-
-            sbProgress.setMax(SEEKBAR_INCREMENTS);
-            displayProgressIndicators(0);
+            // Display the track selected by the user, which will start playing
+            // once the playback service has been bound
+            displayTrackPosition(getInitialTrackPosition());
+            mStartWhenBound = true;
+        }
 
-            // Change to the track position selected by the user -
-            // this will create a new media player and start playing the track
-            changeTrackPlaying(getInitialTrackPosition());
+        if (mTrackList == null) {
+            // e.g. the process has been killed since the track was selected
+            loadTrackList();
         }
 
         return rootView;
     }
 
-    private MediaPlayer createMediaPlayer() {
-        MediaPlayer mediaPlayer = new MediaPlayer();
-        mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-        mediaPlayer.setWakeMode(getActivity(), PowerManager.PARTIAL_WAKE_LOCK);
-
-        //--------------------------------------------------------
-        // Callbacks for media player events
-
-        mediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
-            @Override
-            public void onPrepared(MediaPlayer mediaPlayer) {
-                changeStatePrepared();
-                if (mStartWhenPrepared) {
-                    changeStateStarted();
-                }
-            }
-        });
-
-        mediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
-            @Override
-            public void onCompletion(MediaPlayer mediaPlayer) {
-                changeStatePlaybackCompleted();
-            }
-        });
-
-        mediaPlayer.setOnErrorListener(new MediaPlayer.OnErrorListener() {
-            @Override
-            public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
-                Log.e(LOG_TAG, String.format("MediaPlayer error: What: %d. Extra: %d", what, extra));
-                changeStateEnd();
-                return false;
-            }
-        });
-
-        return mediaPlayer;
-    }
-
     /**
      * The system calls this only when creating the layout in a dialog.
      * It does not get called when using the DialogWhenLarge theme for the activity.
@@ -229,36 +186,48 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
     }
 
     @Override
-    public void onPause() {
-        if (mMediaPlayer != null && mMediaPlayer.isPlaying()) {
-            changeStatePausedAwaitingRestart();
-        }
-        super.onPause();
+    public void onStart() {
+        super.onStart();
+        // Start the service as well as binding to it, so that it keeps playing
+        // while the fragment is not visible
+        Intent intent = new Intent(getActivity(), PlaybackService.class);
+        getActivity().startService(intent);
+        getActivity().bindService(intent, mServiceConnection, Context.BIND_AUTO_CREATE);
     }
 
     @Override
-    public void onResume() {
-        super.onResume();
-
-        boolean startWhenPrepared = (mPlayerState == PlayerState.PAUSED_AWAITING_RESTART);
-
-        // Create a new instance of the media player
-        changeStateIdle();
-        // Initialise the media player by loading the current track
-        changeStateInitialised();
-        // Prepare the current track and start it if it was playing
-        changeStatePreparing(startWhenPrepared);
+    public void onStop() {
+        // Stop monitoring the progress of the song
+        stopProgressClock();
+        if (mPlaybackService != null) {
+            saveServiceState();
+            mPlaybackService.setPlaybackListener(null);
+            mPlaybackService = null;
+        }
+        getActivity().unbindService(mServiceConnection);
+        super.onStop();
+    }
 
-        if (mPlayerState == PlayerState.PAUSED_AWAITING_RESTART) {
-            changeStateStarted();
+    @Override
+    public void onDestroy() {
+        // Stop loading the track list
+        TaskScheduler.getInstance().cancelTasks(this);
+        if (isRemoving() || getActivity().isFinishing()) {
+            // The player has been closed, rather than recreated, so stop playing
+            getActivity().stopService(new Intent(getActivity(), PlaybackService.class));
+        }
+        if (mImagePrefetcher != null) {
+            mImagePrefetcher.cancel();
         }
+        super.onDestroy();
     }
 
     @Override
     public void onSaveInstanceState(Bundle outState) {
-        outState.putParcelableArrayList(KEY_TRACKS, (ArrayList<AppTrack>) mTrackList);
+        if (mPlaybackService != null) {
+            saveServiceState();
+        }
         outState.putInt(KEY_TRACK_POSITION, mTrackPosition);
-        outState.putString(KEY_PLAYER_STATE, mPlayerState.name());
         outState.putInt(KEY_SONG_POSITION, mSongPosition);
 
         super.onSaveInstanceState(outState);
@@ -276,130 +245,143 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
      */
     private void restoreState(final Bundle savedInstanceState) {
         if (savedInstanceState != null) {
-            // restore the track list and position
-            mTrackList = savedInstanceState.getParcelableArrayList(KEY_TRACKS);
-            mTrackPosition = savedInstanceState.getInt(KEY_TRACK_POSITION);
-            mPlayerState = PlayerState.valueOf(savedInstanceState.getString(KEY_PLAYER_STATE));
+            // restore the track position
+            displayTrackPosition(savedInstanceState.getInt(KEY_TRACK_POSITION));
             mSongPosition = savedInstanceState.getInt(KEY_SONG_POSITION);
-
-            sbProgress.setMax(SEEKBAR_INCREMENTS);
-            displayTrackDetails(getTrack());
             displayProgressIndicators(mSongPosition);
         }
     }
 
-    /** Change state to IDLE. */
-    private void changeStateIdle() {
-        if (mMediaPlayer == null) {
-            mMediaPlayer = createMediaPlayer();
-            mPlayerState = PlayerState.IDLE;
-        }
+    /**
+     * Record the position of the playback service in the queue, so that it can be
+     * restored if the service is destroyed while it is not bound.
+     */
+    private void saveServiceState() {
+        mTrackPosition = mPlaybackService.getTrackPosition();
+        mSongPosition = mPlaybackService.getSongPosition();
     }
 
-    /** Change state to INITIALISED. */
-    private void changeStateInitialised() {
-        if (mMediaPlayer != null
-                && mPlayerState == PlayerState.IDLE) {
-            try {
-                mMediaPlayer.setDataSource(getActivity(), getPreviewUri());
-            } catch (Exception e) {
-                Log.e(LOG_TAG, String.format("Exception while setting media player data source to %s: %s",
-                        getPreviewUri(), e));
-                changeStateEnd();
-                return;
+    //-------------------------------------------------------------------------------
+    // Playback service
+
+    /** The connection to the playback service. */
+    private final ServiceConnection mServiceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            mPlaybackService = ((PlaybackService.PlaybackBinder) binder).getService();
+            mPlaybackService.setPlaybackListener(mPlaybackListener);
+            if (mTrackList != null) {
+                attachToQueue();
             }
-            mPlayerState = PlayerState.INITIALISED;
         }
-    }
 
-    /** Change state to PREPARING. */
-    private void changeStatePreparing(boolean startWhenPrepared) {
-        if (mMediaPlayer != null
-                && (mPlayerState == PlayerState.INITIALISED
-                || mPlayerState == PlayerState.STOPPED)) {
-            acquireWifiLock();
-            mStartWhenPrepared = startWhenPrepared;
-            mMediaPlayer.prepareAsync();
-            mPlayerState = PlayerState.PREPARING;
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mPlaybackService = null;
         }
-    }
+    };
 
-    /** Change state to PREPARED. */
-    private void changeStatePrepared() {
-        mPlayerState = PlayerState.PREPARED;
-    }
+    /**
+     * Make the track list the queue of the playback service, unless it already is, and
+     * display the state of the service.
+     * Both the service and the track list must be available.
+     */
+    private void attachToQueue() {
+        if (mStartWhenBound || !mPlaybackService.hasQueue(mTrackList)) {
+            // The player has just been opened, or the service has been destroyed
+            // since it was last bound, e.g. because the process was killed
+            mPlaybackService.setQueue(mTrackList, mTrackPosition, mSongPosition, mStartWhenBound);
+            mStartWhenBound = false;
+        }
 
-    /** Change state to STARTED. */
-    private void changeStateStarted() {
-        if (mMediaPlayer != null
-                && (mPlayerState == PlayerState.PREPARED
-                || mPlayerState == PlayerState.PAUSED
-                || mPlayerState == PlayerState.PAUSED_AWAITING_RESTART
-                || mPlayerState == PlayerState.PLAYBACK_COMPLETED)) {
+        // Display the state of the service, which may have changed while it was not bound
+        displayTrackPosition(mPlaybackService.getTrackPosition());
+        displayPlaying(mPlaybackService.isPlaying());
+    }
 
-            displayPlayPauseButtonAsPause();
-            acquireWifiLock();
-            mMediaPlayer.seekTo(mSongPosition);
-            mMediaPlayer.start();
-            mPlayerState = PlayerState.STARTED;
+    /** The listener for changes to the playback by the playback service. */
+    private final PlaybackService.PlaybackListener mPlaybackListener = new PlaybackService.PlaybackListener() {
+        @Override
+        public void onTrackChanged(int trackPosition) {
+            displayTrackPosition(trackPosition);
+        }
 
-            new MonitorProgressTask().execute();
+        @Override
+        public void onPlayingChanged(boolean playing) {
+            displayPlaying(playing);
         }
-    }
+    };
 
-    /** Change state to PAUSED. */
-    private void changeStatePaused() {
-        if (mMediaPlayer != null
-                && mPlayerState == PlayerState.STARTED) {
+    /**
+     * Display whether the current track is playing, and monitor its progress while it is.
+     * @param playing whether the current track is playing
+     */
+    private void displayPlaying(boolean playing) {
+        if (playing) {
+            displayPlayPauseButtonAsPause();
+            startProgressClock();
+        } else {
             displayPlayPauseButtonAsPlay();
-            mMediaPlayer.pause();
-            mSongPosition = mMediaPlayer.getCurrentPosition();
-            releaseWifiLock();
-            mPlayerState = PlayerState.PAUSED;
+            stopProgressClock();
+            // The last progress check may have been before the song was paused or ended
+            displayProgressIndicators(mPlaybackService.getSongPosition());
         }
     }
 
-    /** Change state to PAUSED_AWAITING_RESTART. */
-    private void changeStatePausedAwaitingRestart() {
-        changeStatePaused();
-        mPlayerState = PlayerState.PAUSED_AWAITING_RESTART;
-    }
+    //-------------------------------------------------------------------------------
+    // Progress clock
 
-//    /** Change state to STOPPED. */
-//    private void changeStateStopped() {
-//        if (mMediaPlayer != null
-//                && (mPlayerState == PlayerState.PREPARED
-//                || mPlayerState == PlayerState.STARTED
-//                || mPlayerState == PlayerState.PAUSED
-//                || mPlayerState == PlayerState.PLAYBACK_COMPLETED)) {
-//            mMediaPlayer.stop();
-//            releaseWifiLock();
-//            displayPlayPauseButtonAsPlay();
-//            mPlayerState = PlayerState.STOPPED;
-//        }
-//    }
+    /**
+     * The progress clock, which updates the progress indicators while the song is playing.
+     * It runs just after each time they visibly change, see {@link #getProgressClockDelay(int)}.
+     */
+    private final Runnable mProgressClock = new Runnable() {
+        @Override
+        public void run() {
+            if (mPlaybackService == null || !mPlaybackService.isPlaying()) {
+                return;
+            }
+            int songPositionMillis = mPlaybackService.getSongPosition();
+            displayProgressIndicators(songPositionMillis);
+            mProgressHandler.postDelayed(this, getProgressClockDelay(songPositionMillis));
+        }
+    };
 
-    /** Change state to PLAYBACK_COMPLETED. */
-    private void changeStatePlaybackCompleted() {
-        mSongPosition = 0;
-        if (getActivity() != null) {
-            displayPlayPauseButtonAsPlay();
-            // The last progress check may have been before the end of the song
-            displayProgressIndicators(mSongPosition);
+    /**
+     * Returns the time until the progress indicators next visibly change, i.e. until the
+     * seekbar's thumb moves to the next pixel or the displayed second changes, whichever
+     * comes first, so that the clock does not wake more often than can be seen.
+     * A seekbar narrower than its number of increments moves less than once per increment.
+     * @param songPositionMillis the time into the song in milliseconds
+     * @return the delay in milliseconds
+     */
+    private long getProgressClockDelay(int songPositionMillis) {
+        long secondMillis = TimeUnit.SECONDS.toMillis(1);
+        long delay = secondMillis - songPositionMillis % secondMillis;
+        int trackWidthPx = sbProgress.getWidth() - sbProgress.getPaddingLeft() - sbProgress.getPaddingRight();
+        if (trackWidthPx > 0) {
+            // The first increment at which the thumb is drawn a pixel further on
+            long thumbPx = (long) (songPositionMillis / SEEKBAR_TICK_MS) * trackWidthPx / SEEKBAR_INCREMENTS;
+            long nextIncrement = ((thumbPx + 1) * SEEKBAR_INCREMENTS + trackWidthPx - 1) / trackWidthPx;
+            delay = Math.min(delay, nextIncrement * SEEKBAR_TICK_MS - songPositionMillis);
         }
-        releaseWifiLock();
-        mPlayerState = PlayerState.PLAYBACK_COMPLETED;
+        return delay;
     }
 
-    /** Change state to END. */
-    private void changeStateEnd() {
-        if (mMediaPlayer != null) {
-            mMediaPlayer.reset();
-            mMediaPlayer.release();
-            mMediaPlayer = null;
-        }
-        releaseWifiLock();
-        mPlayerState = PlayerState.END;
+    /**
+     * Start the progress clock, replacing it if it is already running.
+     */
+    private void startProgressClock() {
+        // Remove any pending run, so that there is never more than one clock
+        mProgressHandler.removeCallbacks(mProgressClock);
+        mProgressClock.run();
+    }
+
+    /**
+     * Stop the progress clock.
+     */
+    private void stopProgressClock() {
+        mProgressHandler.removeCallbacks(mProgressClock);
     }
 
     /**
@@ -408,9 +390,16 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
      * @param songPositionMillis the time into the song in milliseconds
      */
     private void displayProgressIndicators(int songPositionMillis) {
-        sbProgress.setProgress(songPositionMillis / 100);
-        int seconds = (int) TimeUnit.MILLISECONDS.toSeconds(songPositionMillis);
-        txtTimePosition.setText(getHumanReadableSeconds(seconds));
+        int progress = songPositionMillis / SEEKBAR_TICK_MS;
+        if (progress != sbProgress.getProgress()) {
+            sbProgress.setProgress(progress);
+        }
+        // Only change the text when the displayed second changes, as this lays out the view
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(songPositionMillis);
+        if (seconds != mDisplayedSeconds) {
+            mDisplayedSeconds = seconds;
+            txtTimePosition.setText(getHumanReadableSeconds(seconds));
+        }
     }
 
     /** Change the PlayPause button to the pause icon. */
@@ -436,12 +425,8 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
      * Toggle the play/pause status of the current track.
      */
     private void playPause() {
-        if (mMediaPlayer != null) {
-            if (mMediaPlayer.isPlaying()) {
-                changeStatePaused();
-            } else {
-                changeStateStarted();
-            }
+        if (mPlaybackService != null) {
+            mPlaybackService.playPause();
         }
     }
 
@@ -449,8 +434,8 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
      * Move to the previous track.
      */
     private void prevTrack() {
-        if (mTrackPosition > 0) {
-            changeTrackPlaying(mTrackPosition - 1);
+        if (mPlaybackService != null) {
+            mPlaybackService.prevTrack();
         }
     }
 
@@ -458,41 +443,36 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
      * Move to the next track.
      */
     private void nextTrack() {
-        if (mTrackPosition < mTrackList.size() - 1) {
-            changeTrackPlaying(mTrackPosition + 1);
+        if (mPlaybackService != null) {
+            mPlaybackService.nextTrack();
         }
     }
 
     /**
-     * Change the track which is playing.
-     * @param newPosition the position of the track to play in the track list
+     * Change the current position in the track list, and display the details of the track
+     * at the position, with its progress indicators at the start of the track.
+     * @param newPosition the new position in the track list
      */
-    private void changeTrackPlaying(int newPosition) {
-        if (newPosition >= 0 && newPosition < mTrackList.size() && newPosition != mTrackPosition) {
-            // End the previously selected track and free up resources
-            changeStateEnd();
-
-            // Change the current position
-            mTrackPosition = newPosition;
-            btnPrev.setEnabled(mTrackPosition > 0);
-            btnNext.setEnabled(mTrackPosition < mTrackList.size() - 1);
-
-            // Display the details of the new track
-            displayTrackDetails(getTrack());
+    private void displayTrackPosition(int newPosition) {
+        // Change the current position
+        mTrackPosition = newPosition;
+        if (mTrackList == null) {
+            // The track list is still being loaded
+            return;
+        }
+        btnPrev.setEnabled(mTrackPosition > 0);
+        btnNext.setEnabled(mTrackPosition < mTrackList.size() - 1);
 
-            // Set the progress indicators to the start of the track
-            mSongPosition = 0;
-            displayProgressIndicators(mSongPosition);
+        // Display the details of the new track
+        displayTrackDetails(getTrack());
 
-            // Create a new instance of the media player
-            changeStateIdle();
-            // Initialise the media player by loading the current track
-            changeStateInitialised();
-            // Start playing the current track
-            changeStatePreparing(true);
-        }
+        // Set the progress indicators to the start of the track
+        mSongPosition = 0;
+        displayProgressIndicators(mSongPosition);
     }
 
+    //-------------------------------------------------------------------------------
+
     private void displayTrackDetails(AppTrack appTrack) {
         if (appTrack != null) {
             txtTrack.setText(appTrack.getTrackName());
@@ -500,6 +480,23 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
             txtAlbum.setText(appTrack.getAlbumName());
             Picasso.with(getActivity()).load(appTrack.getImageUrlLarge()).into(imgAlbum);
             txtTimeEnd.setText(getHumanReadableMilliseconds(appTrack.getPreviewDuration()));
+            prefetchAdjacentImages();
+        }
+    }
+
+    /**
+     * Prefetch the images of the previous and next tracks, so that they can be displayed
+     * as soon as the user skips to them.
+     */
+    private void prefetchAdjacentImages() {
+        mImagePrefetcher.cancel();
+        if (mTrackList != null) {
+            if (mTrackPosition < mTrackList.size() - 1) {
+                mImagePrefetcher.prefetch(mTrackList.get(mTrackPosition + 1).getImageUrlLarge());
+            }
+            if (mTrackPosition > 0) {
+                mImagePrefetcher.prefetch(mTrackList.get(mTrackPosition - 1).getImageUrlLarge());
+            }
         }
     }
 
@@ -547,30 +544,61 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
 
     /**
      * Create and return a new instance of the fragment.
-     * @param trackList the list of tracks to which the fragment has access
+     * @param queueId the queue id of the list of tracks to which the fragment has access,
+     *                in the track queue repository
      * @param position  the position of the selected track in the list
      * @return a new instance of the fragment
      */
-    public static PlayerFragment newInstance(List<AppTrack> trackList, int position) {
+    public static PlayerFragment newInstance(String queueId, int position) {
         PlayerFragment fragment = new PlayerFragment();
         Bundle args = new Bundle();
-        args.putParcelableArrayList(PlayerFragment.ARG_TRACKS, (ArrayList<AppTrack>) trackList);
+        args.putString(PlayerFragment.ARG_QUEUE_ID, queueId);
         args.putInt(PlayerFragment.ARG_POSITION, position);
         fragment.setArguments(args);
         return fragment;
     }
 
     /**
-     * Returns a list of this fragment's tracks.
-     *
-     * @return a list of this fragment's tracks
+     * Returns the queue id of this fragment's tracks.
+     * @return the queue id of this fragment's tracks
      */
-    private List<AppTrack> getTrackList() {
+    private String getQueueId() {
         Bundle arguments = getArguments();
-        if (arguments == null) {
-            return null;
+        return (arguments == null) ? null : arguments.getString(ARG_QUEUE_ID);
+    }
+
+    /**
+     * Load the track list from the repository in another thread, for when it is not in
+     * memory, and play it once it has been loaded.
+     */
+    private void loadTrackList() {
+        TaskScheduler.getInstance().executeNetworkTask(this, new LoadTrackListTask(),
+                TaskScheduler.Priority.VISIBLE, getQueueId());
+    }
+
+    /**
+     * Handle the track list having been loaded.
+     * @param trackList the track list, or null if it could not be loaded
+     */
+    private void onTrackListLoaded(List<AppTrack> trackList) {
+        if (trackList == null || mTrackPosition >= trackList.size()) {
+            // There is nothing to play, so close the player
+            Log.w(LOG_TAG, "Could not load track queue " + getQueueId());
+            if (getShowsDialog()) {
+                dismiss();
+            } else {
+                getActivity().finish();
+            }
+            return;
+        }
+        mTrackList = trackList;
+        int songPosition = mSongPosition;
+        displayTrackPosition(mTrackPosition);
+        mSongPosition = songPosition;
+        displayProgressIndicators(mSongPosition);
+        if (mPlaybackService != null) {
+            attachToQueue();
         }
-        return arguments.getParcelableArrayList(ARG_TRACKS);
     }
 
     /**
@@ -593,15 +621,6 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
         return mTrackList.get(mTrackPosition);
     }
 
-    private Uri getPreviewUri() {
-        AppTrack track = getTrack();
-        if (track == null || track.getPreviewUrl() == null) {
-            return null;
-        }
-        return Uri.parse(track.getPreviewUrl());
-
-    }
-
     //----------------------------------------------------------------
     // Seekbar change methods
 
@@ -620,7 +639,9 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
             displayProgressIndicators(songPositionMillis);
             // move the media player to the new song position
             mSongPosition = songPositionMillis;
-            mMediaPlayer.seekTo(mSongPosition);
+            if (mPlaybackService != null) {
+                mPlaybackService.seekTo(mSongPosition);
+            }
         }
     }
 
@@ -632,49 +653,26 @@ public class PlayerFragment extends DialogFragment implements SeekBar.OnSeekBarC
     public void onStopTrackingTouch(SeekBar seekBar) {
     }
 
-    private void acquireWifiLock() {
-        if (mWifiLock == null) {
-            WifiManager wifiManager = (WifiManager) getActivity().getSystemService(Context.WIFI_SERVICE);
-            mWifiLock = wifiManager.createWifiLock(WifiManager.WIFI_MODE_FULL, WIFI_LOCK_TAG);
-            mWifiLock.acquire();
-        }
-    }
-
-    private void releaseWifiLock() {
-        if (mWifiLock != null) {
-            mWifiLock.release();
-            mWifiLock = null;
-        }
-    }
-
     //-------------------------------------------------------------------------------
     /**
-     * Background task to monitor the progress of the song and update the seekbar and
-     * song position indicator accordingly.
+     * Background task to load the track list from the repository, which reads it
+     * from the top track store if it is not in memory.
      */
-    private class MonitorProgressTask extends AsyncTask<Void, Integer, Void> {
-        private static final int CHECK_INTERVAL_MS = 90;
+    private class LoadTrackListTask extends AsyncTask<String, Void, List<AppTrack>> {
+        private final TrackQueueRepository mTrackQueueRepository;
 
-        @Override
-        protected Void doInBackground(Void... params) {
-            while (mMediaPlayer != null && mMediaPlayer.isPlaying()) {
-                publishProgress((int) mMediaPlayer.getCurrentPosition());
-                try {
-                    Thread.sleep(CHECK_INTERVAL_MS);
-                } catch (InterruptedException e) {
-                    Log.e(LOG_TAG, String.format("InterruptedException in monitor task: %s", e.toString()));
-                    break;
-                }
-                // Escape early if cancel() is called
-                if (isCancelled()) break;
-            }
-            return null;
+        LoadTrackListTask() {
+            mTrackQueueRepository = TrackQueueRepository.getInstance(getActivity());
         }
 
         @Override
-        protected void onProgressUpdate(Integer... songPositionMillis) {
-            displayProgressIndicators(songPositionMillis[0]);
+        protected List<AppTrack> doInBackground(String... queueIds) {
+            return mTrackQueueRepository.get(queueIds[0]);
         }
 
+        @Override
+        protected void onPostExecute(List<AppTrack> trackList) {
+            onTrackListLoaded(trackList);
+        }
     }
 }
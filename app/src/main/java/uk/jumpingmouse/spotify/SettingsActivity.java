@@ -29,6 +29,8 @@ public class SettingsActivity extends PreferenceActivity
         // For all preferences, attach an OnPreferenceChangeListener so the UI summary can be
         // updated when the preference changes.
         bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_country_code_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_preview_cache_size_key)));
+        bindPreferenceSummaryToValue(findPreference(getString(R.string.pref_related_artists_depth_key)));
     }
 
     /**
@@ -0,0 +1,20 @@
+package uk.jumpingmouse.spotify;
+
+import android.app.Application;
+
+import uk.jumpingmouse.spotify.net.SpotifyServiceProvider;
+
+
+/**
+ * The application, used to perform process-wide initialisation.
+ */
+public class SpotifyApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Prepare the Spotify service and its connection ahead of the first search
+        SpotifyServiceProvider.warmUp();
+    }
+
+}
@@ -1,92 +1,177 @@
 package uk.jumpingmouse.spotify;
 
 import android.app.Activity;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.squareup.picasso.Picasso;
 
 import java.util.List;
+import java.util.Map;
 
 import uk.jumpingmouse.spotify.data.AppTrack;
+import uk.jumpingmouse.spotify.util.ImagePrefetcher;
+import uk.jumpingmouse.spotify.util.ListDiffer;
 
 
 /**
  * An adapter for the list items in a track list.
  * @author Edmund Johnson
  */
-public class TrackAdapter extends ArrayAdapter<AppTrack> {
+public class TrackAdapter extends RecyclerView.Adapter<TrackAdapter.ViewHolder>
+        implements ImagePrefetcher.ImageUrlSource {
 
     private final Activity context;
-    private final List<AppTrack> trackList;
+    private final OnTrackClickListener clickListener;
+    private final ListDiffer<AppTrack> listDiffer;
+    /** The text displaying the rank of each track, by track id, or null if tracks are not ranked. */
+    private Map<String, String> trackRanks;
 
 
     /**
-     * Constructor which does not require a resource.
+     * Constructor.
      * @param context the current context, used to inflate the layout file
-     * @param trackList the list of track objects to be displayed
+     * @param clickListener the listener for clicks on tracks
      */
-    public TrackAdapter(Activity context, List<AppTrack> trackList) {
-        // The second argument is used when the ArrayAdapter is populating a single TextView.
-        // This adapter does not use the second argument, so it is set to 0.
-        super(context, 0, trackList);
+    public TrackAdapter(Activity context, OnTrackClickListener clickListener) {
         this.context = context;
-        this.trackList = trackList;
+        this.clickListener = clickListener;
+        this.listDiffer = new ListDiffer<>(this, new ListDiffer.ItemComparator<AppTrack>() {
+            @Override
+            public boolean areItemsTheSame(AppTrack oldTrack, AppTrack newTrack) {
+                return oldTrack.getId() != null && oldTrack.getId().equals(newTrack.getId());
+            }
+
+            @Override
+            public boolean areContentsTheSame(AppTrack oldTrack, AppTrack newTrack) {
+                return oldTrack.equals(newTrack);
+            }
+        });
     }
 
     /**
-     * Get the view for a list item at a specified position.
-     * @param position the position in the list
-     * @param itemView the recycled view
+     * Create a view holder for a list item, inflating the list item layout.
      * @param parent the parent ViewGroup that is used for inflation
-     * @return the View for the list item at the specified position
+     * @param viewType the view type, unused as all list items are the same type
+     * @return the view holder for the list item
+     */
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(context).inflate(R.layout.track_list_item, parent, false);
+        return new ViewHolder(itemView);
+    }
+
+    /**
+     * Bind the track at a specified position to a list item view.
+     * @param viewHolder the view holder for the list item
+     * @param position the position in the list
      */
     @Override
-    public View getView(final int position, View itemView, ViewGroup parent) {
+    public void onBindViewHolder(ViewHolder viewHolder, int position) {
         // Get the track object from the list of tracks
-        AppTrack track = getItem(position);
+        AppTrack track = getTrackList().get(position);
+
+        // Display the track's rank, which can change while the track stays the same
+        String rank = (trackRanks == null) ? null : trackRanks.get(track.getId());
+        viewHolder.txtRanks.setText(rank);
+        viewHolder.txtRanks.setVisibility(rank == null ? View.GONE : View.VISIBLE);
 
-        // If the recycled view is null, inflate the list item layout and assign it
-        if (itemView == null) {
-            itemView = LayoutInflater.from(getContext()).inflate(R.layout.track_list_item, parent, false);
+        // If the view is already displaying this track, there is nothing to do
+        if (viewHolder.track == track) {
+            return;
         }
+        viewHolder.track = track;
 
         // Populate the image view element with the track image
-        ImageView imgAlbum = (ImageView) itemView.findViewById(R.id.imgAlbum);
-        Picasso.with(context).load(track.getImageUrlSmall()).into(imgAlbum);
+        Picasso.with(context).load(track.getImageUrlSmall()).into(viewHolder.imgAlbum);
 
         // Populate the text view elements with the track name and album name
-        TextView txtTrack = (TextView) itemView.findViewById(R.id.txtTrack);
-        txtTrack.setText(track.getTrackName());
-        TextView txtAlbum = (TextView) itemView.findViewById(R.id.txtAlbum);
-        txtAlbum.setText(track.getAlbumName());
+        viewHolder.txtTrack.setText(track.getTrackName());
+        viewHolder.txtAlbum.setText(track.getAlbumName());
+    }
+
+    @Override
+    public int getItemCount() {
+        return getTrackList().size();
+    }
 
-        return itemView;
+    @Override
+    public String getImageUrl(int position) {
+        return getTrackList().get(position).getImageUrlSmall();
     }
 
+    /**
+     * Returns the list of tracks being displayed.
+     * @return the list of tracks being displayed
+     */
     public List<AppTrack> getTrackList() {
-        return trackList;
+        return listDiffer.getList();
+    }
+
+    /**
+     * Display a new list of tracks, updating only the rows which have changed.
+     * The update is applied asynchronously.
+     * @param trackList the new list of tracks
+     */
+    public void setTrackList(List<AppTrack> trackList) {
+        listDiffer.submitList(trackList);
+    }
+
+    /**
+     * Display a new list of tracks immediately, e.g. when restoring state.
+     * @param trackList the new list of tracks
+     */
+    public void restoreTrackList(List<AppTrack> trackList) {
+        listDiffer.setList(trackList);
+    }
+
+    /**
+     * Set the text displaying the rank of each track, e.g. its positions in the top tracks
+     * of several countries, rebinding the rows displayed.
+     * @param trackRanks the text displaying the rank of each track, by track id,
+     *                   or null if the tracks are not ranked
+     */
+    public void setTrackRanks(Map<String, String> trackRanks) {
+        this.trackRanks = trackRanks;
+        notifyDataSetChanged();
     }
 
     /**
-     * Cache of the child item views.
-     * Useful for newView/bindView approach, but not for getView approach.
+     * Listener for clicks on tracks in the list.
      */
-    /*
-    public static class ViewHolder {
-        public final ImageView imgAlbum;
-        public final TextView txtAlbum;
-        public final TextView txtTrack;
+    public interface OnTrackClickListener {
+        void onTrackClick(List<AppTrack> trackList, int position);
+    }
 
-        public ViewHolder(View view) {
+    /**
+     * Cache of the child item views, and of the track which they are displaying.
+     */
+    public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        private final ImageView imgAlbum;
+        private final TextView txtAlbum;
+        private final TextView txtRanks;
+        private final TextView txtTrack;
+        private AppTrack track;
+
+        ViewHolder(View view) {
+            super(view);
             imgAlbum = (ImageView) view.findViewById(R.id.imgAlbum);
             txtAlbum = (TextView) view.findViewById(R.id.txtAlbum);
+            txtRanks = (TextView) view.findViewById(R.id.txtRanks);
             txtTrack = (TextView) view.findViewById(R.id.txtTrack);
+            view.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                clickListener.onTrackClick(getTrackList(), position);
+            }
         }
     }
-    */
 }
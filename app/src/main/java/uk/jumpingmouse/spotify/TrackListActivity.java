@@ -6,11 +6,7 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.Menu;
 import android.view.MenuItem;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import uk.jumpingmouse.spotify.data.AppArtist;
-import uk.jumpingmouse.spotify.data.AppTrack;
 
 
 /**
@@ -71,13 +67,13 @@ public class TrackListActivity extends AppCompatActivity implements TrackListFra
 
     /**
      * List fragment callback for when a track has been selected from the track list.
-     * @param appTrackList the list of all top tracks for the artist whose track was selected
-     * @param position the position in appTrackList of the selected track
+     * @param queueId the queue id of the list of all top tracks for the artist whose track was selected
+     * @param position the position in the list of the selected track
      */
     @Override
-    public void onTrackSelected(List<AppTrack> appTrackList, int position) {
+    public void onTrackSelected(String queueId, int position) {
         Intent intent = new Intent(this, PlayerActivity.class);
-        intent.putParcelableArrayListExtra("TRACK_LIST", (ArrayList<AppTrack>) appTrackList);
+        intent.putExtra("QUEUE_ID", queueId);
         intent.putExtra("POSITION", position);
         startActivity(intent);
     }
@@ -7,6 +7,10 @@ import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -14,24 +18,34 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ListView;
 
+import java.io.IOException;
 import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
-import kaaes.spotify.webapi.android.SpotifyApi;
-import kaaes.spotify.webapi.android.SpotifyService;
-import kaaes.spotify.webapi.android.models.Track;
-import kaaes.spotify.webapi.android.models.Tracks;
 import retrofit.RetrofitError;
+import retrofit.client.Response;
 import uk.jumpingmouse.spotify.data.AppArtist;
 import uk.jumpingmouse.spotify.data.AppTrack;
+import uk.jumpingmouse.spotify.data.AppTrackList;
+import uk.jumpingmouse.spotify.data.TopTrackComparison;
+import uk.jumpingmouse.spotify.data.TopTrackStore;
+import uk.jumpingmouse.spotify.data.TrackQueueRepository;
+import uk.jumpingmouse.spotify.net.SingleFlight;
+import uk.jumpingmouse.spotify.net.SpotifyResponseDecoder;
+import uk.jumpingmouse.spotify.net.SpotifyServiceProvider;
+import uk.jumpingmouse.spotify.util.ImagePrefetcher;
 import uk.jumpingmouse.spotify.util.NetUtil;
-import uk.jumpingmouse.spotify.util.SpotifyUtil;
+import uk.jumpingmouse.spotify.util.TaskScheduler;
 import uk.jumpingmouse.spotify.util.UiUtil;
 
 
@@ -43,23 +57,112 @@ public class TrackListFragment extends Fragment {
     private static final String LOG_TAG = TrackListFragment.class.getSimpleName();
 
     private static final String QUERY_COUNTRY_KEY = "country";
+    private static final String QUERY_MARKET_KEY = "market";
+    private static final String QUERY_ALBUM_TYPE_KEY = "album_type";
+    private static final String QUERY_OFFSET_KEY = "offset";
+    private static final String QUERY_LIMIT_KEY = "limit";
+
+    /** The types of album whose tracks are listed in a discography. */
+    private static final String DISCOGRAPHY_ALBUM_TYPES = "album,single";
 
     private static final String ARG_ARTIST = "ARTIST";
 
     private static final String KEY_ARTIST = "KEY_ARTIST";
+    private static final String KEY_COUNTRY_CODE = "KEY_COUNTRY_CODE";
     private static final String KEY_TRACK_LIST = "KEY_TRACK_LIST";
+    private static final String KEY_LIST_MODE = "KEY_LIST_MODE";
+    private static final String KEY_DISCOGRAPHY_COMPLETE = "KEY_DISCOGRAPHY_COMPLETE";
 
     private static final long PREVIEW_DURATION_MS = 30000;
 
+    /** The number of rows beyond the visible rows whose images are prefetched. */
+    private static final int IMAGE_PREFETCH_ROWS = 5;
+
+    /** The age up to which stored top tracks are displayed without being refreshed. */
+    private static final long TOP_TRACKS_FRESH_MS = TimeUnit.HOURS.toMillis(1);
+
+    /** The top track fetches in flight, shared by all instances, e.g. before and after rotation. */
+    private static final SingleFlight<String, List<AppTrack>> sTopTrackFlights =
+            new SingleFlight<>("top tracks");
+
+    /** The number of albums requested in each page of an artist's albums. */
+    private static final int ALBUM_PAGE_SIZE = 50;
+    /** The maximum number of an artist's albums whose tracks are listed in its discography. */
+    private static final int MAX_DISCOGRAPHY_ALBUMS = 200;
+    /** The maximum number of album ids in a request for several albums. */
+    private static final int MAX_ALBUMS_PER_REQUEST = 20;
+    /** The maximum number of requests for several albums which are in flight at a time. */
+    private static final int MAX_ALBUM_REQUESTS_IN_FLIGHT = 3;
+    /** The number of times a page of albums, or a batch of their tracks, is requested before giving up. */
+    private static final int MAX_DISCOGRAPHY_FETCH_ATTEMPTS = 2;
+    /** The number of countries compared if the user has not chosen any, including the user's own. */
+    private static final int DEFAULT_COMPARISON_COUNTRY_COUNT = 3;
+    /** The maximum number of countries whose top tracks are being fetched at a time. */
+    private static final int MAX_COUNTRY_REQUESTS_IN_FLIGHT = 3;
+
     /** The artist whose top tracks are to be listed. */
     private AppArtist mArtist;
+    /** The country code of the top tracks being displayed. */
+    private String mCountryCode;
 
-    /** The list of top tracks for the artist. */
-    private ArrayList<AppTrack> mTrackList;
+    /**
+     * What is listed for the artist.
+     */
+    private enum ListMode {
+        /** The artist's top tracks in the user's country. */
+        TOP_TRACKS,
+        /** The tracks of the artist's albums, i.e. its discography. */
+        DISCOGRAPHY,
+        /** The artist's top tracks in several countries, ranked across the countries. */
+        COUNTRY_COMPARISON
+    }
+
+    /** What is listed for the artist. */
+    private ListMode mListMode = ListMode.TOP_TRACKS;
+    /** Whether all the tracks of the discography have been fetched. */
+    private boolean mDiscographyComplete = false;
+    /** The ids of the albums of the discography, so that no album is listed twice. */
+    private final Set<String> mDiscographyAlbumIds = new HashSet<>();
+    /** The batches of album ids of the discography, in album order. */
+    private final List<String[]> mAlbumBatches = new ArrayList<>();
+    /** The tracks of each batch of albums, or null for a batch which has not been fetched. */
+    private final List<List<AppTrack>> mAlbumBatchTracks = new ArrayList<>();
+    /** The number of times each batch of albums has been requested. */
+    private final List<Integer> mAlbumBatchAttempts = new ArrayList<>();
+    /** The indexes of the batches of albums which failed, and are to be fetched again. */
+    private final Queue<Integer> mRetryAlbumBatches = new ArrayDeque<>();
+    /** The index of the next batch of albums to be fetched. */
+    private int mNextAlbumBatch = 0;
+    /** The number of batches of albums being fetched. */
+    private int mAlbumRequestsInFlight = 0;
+    /** Whether all the album ids of the discography have been listed. */
+    private boolean mAlbumsListed = false;
+    /** Whether a page of albums, or a batch of their tracks, could not be fetched. */
+    private boolean mDiscographyFetchFailed = false;
+    /** Whether a page of albums, or a batch of their tracks, could not be fetched for lack of a connection. */
+    private boolean mDiscographyNotConnected = false;
+
+    /** The country codes of the countries being compared, in display order. */
+    private List<String> mComparisonCountryCodes = new ArrayList<>();
+    /** The id of the artist whose top tracks are being compared. */
+    private String mComparisonArtistId;
+    /** The index of the next country whose top tracks are to be loaded. */
+    private int mNextComparisonCountry = 0;
+    /** The number of countries whose top tracks are being loaded. */
+    private int mCountryRequestsInFlight = 0;
+    /** The top tracks of each country being compared which have been loaded. */
+    private final Map<String, List<AppTrack>> mComparisonTracks = new HashMap<>();
+    /** Whether any country's top tracks could not be loaded for lack of a connection. */
+    private boolean mComparisonNotConnected = false;
+    /** Whether any country's top tracks could not be fetched, e.g. because Spotify was busy. */
+    private boolean mComparisonFetchFailed = false;
 
     /** The adapter for the track list. */
     private TrackAdapter mTrackAdapter;
 
+    /** The prefetcher for the images of rows which are about to be scrolled into view. */
+    private ImagePrefetcher mImagePrefetcher;
+
     /**
      * Instantiates and returns a new TrackListFragment for a supplied artist.
      * @param appArtist the artist
@@ -94,31 +197,57 @@ public class TrackListFragment extends Fragment {
                                     final Bundle savedInstanceState) {
         mArtist = getArtist();
 
-        // Initialise the track list and adapter
-        mTrackList = new ArrayList<>();
-        mTrackAdapter = new TrackAdapter(getActivity(), mTrackList);
-
-        // Inflate the fragment
-        View rootView = inflater.inflate(R.layout.track_list, container, false);
-
-        // Get a reference to the ListView
-        ListView listviewTrack = (ListView) rootView.findViewById(R.id.listview_track);
-        // Attach the adapter to the ListView
-        listviewTrack.setAdapter(mTrackAdapter);
-
-        // Create a listener for clicking on the list item.
-        listviewTrack.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Initialise the adapter, with a listener for clicking on a track
+        mTrackAdapter = new TrackAdapter(getActivity(), new TrackAdapter.OnTrackClickListener() {
             @Override
-            public void onItemClick(AdapterView adapterView, View view, int position, long l) {
+            public void onTrackClick(List<AppTrack> trackList, int position) {
+                // Put the list into the repository, so that only its queue id need be passed on
+                TrackQueueRepository repository = TrackQueueRepository.getInstance(getActivity());
+                String queueId;
+                switch (mListMode) {
+                    case DISCOGRAPHY:
+                        queueId = repository.putDiscography(mArtist.getId(), mCountryCode, trackList);
+                        break;
+                    case COUNTRY_COMPARISON:
+                        queueId = repository.putCountryComparison(mArtist.getId(), mComparisonCountryCodes, trackList);
+                        break;
+                    default:
+                        queueId = repository.putTopTracks(mArtist.getId(), mCountryCode, trackList);
+                        break;
+                }
                 // Call the item click handler in the activity in which the list is being displayed
                 TrackListFragment.Callback callbackActivity = (TrackListFragment.Callback) getActivity();
-                callbackActivity.onTrackSelected(mTrackAdapter.getTrackList(), position);
+                callbackActivity.onTrackSelected(queueId, position);
             }
         });
 
+        // Inflate the fragment
+        View rootView = inflater.inflate(R.layout.track_list, container, false);
+
+        // Get a reference to the RecyclerView and attach the adapter to it
+        RecyclerView recyclerviewTrack = (RecyclerView) rootView.findViewById(R.id.recyclerview_track);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        recyclerviewTrack.setLayoutManager(layoutManager);
+        recyclerviewTrack.addItemDecoration(
+                new DividerItemDecoration(getActivity(), layoutManager.getOrientation()));
+        recyclerviewTrack.setAdapter(mTrackAdapter);
+
+        // Prefetch the images of the rows which are about to be scrolled into view
+        mImagePrefetcher = new ImagePrefetcher(getActivity());
+        recyclerviewTrack.addOnScrollListener(
+                mImagePrefetcher.createScrollListener(layoutManager, mTrackAdapter, IMAGE_PREFETCH_ROWS));
+
         // Restore any saved state
         if (savedInstanceState != null) {
             restoreState(savedInstanceState);
+            // The discography fetch does not survive the fragment, so restart an unfinished one
+            if (mListMode == ListMode.DISCOGRAPHY && !mDiscographyComplete && mArtist != null) {
+                fetchDiscography(mArtist.getId());
+            }
+            // The country positions are not saved, so compare the stored top tracks again
+            if (mListMode == ListMode.COUNTRY_COMPARISON && mArtist != null) {
+                fetchCountryComparison(mArtist.getId());
+            }
         } else {
             // Fetch the top tracks for the artist in another thread
             if (mArtist != null) {
@@ -129,10 +258,26 @@ public class TrackListFragment extends Fragment {
         return rootView;
     }
 
+    @Override
+    public void onDestroyView() {
+        // Stop fetching tracks, as there is no longer a list to update
+        if (getActivity() != null && getActivity().isChangingConfigurations()) {
+            // The recreated fragment will share the fetches in flight, so let them finish
+            TaskScheduler.getInstance().detachTasks(this);
+        } else {
+            TaskScheduler.getInstance().cancelTasks(this);
+        }
+        mImagePrefetcher.cancel();
+        super.onDestroyView();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         outState.putParcelable(KEY_ARTIST, mArtist);
-        outState.putParcelableArrayList(KEY_TRACK_LIST, mTrackList);
+        outState.putString(KEY_COUNTRY_CODE, mCountryCode);
+        outState.putParcelable(KEY_TRACK_LIST, new AppTrackList(mTrackAdapter.getTrackList()));
+        outState.putString(KEY_LIST_MODE, mListMode.name());
+        outState.putBoolean(KEY_DISCOGRAPHY_COMPLETE, mDiscographyComplete);
 
         super.onSaveInstanceState(outState);
     }
@@ -153,16 +298,14 @@ public class TrackListFragment extends Fragment {
         if (savedInstanceState != null) {
             // restore the artist
             mArtist = savedInstanceState.getParcelable(KEY_ARTIST);
+            mCountryCode = savedInstanceState.getString(KEY_COUNTRY_CODE);
+            String listMode = savedInstanceState.getString(KEY_LIST_MODE);
+            mListMode = (listMode == null) ? ListMode.TOP_TRACKS : ListMode.valueOf(listMode);
+            mDiscographyComplete = savedInstanceState.getBoolean(KEY_DISCOGRAPHY_COMPLETE);
             //set action bar subtitle ?
             // restore the track list
-            List<AppTrack> updatedAppTrackList = savedInstanceState.getParcelableArrayList(KEY_TRACK_LIST);
-            mTrackList.clear();
-            if (updatedAppTrackList != null) {
-                for (AppTrack appTrack : updatedAppTrackList) {
-                    mTrackList.add(appTrack);
-                }
-            }
-            mTrackAdapter.notifyDataSetChanged();
+            AppTrackList updatedAppTrackList = savedInstanceState.getParcelable(KEY_TRACK_LIST);
+            mTrackAdapter.restoreTrackList(updatedAppTrackList.getTrackList());
         }
     }
 
@@ -171,6 +314,26 @@ public class TrackListFragment extends Fragment {
         inflater.inflate(R.menu.menu_track_list, menu);
     }
 
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        int checkedItemId;
+        switch (mListMode) {
+            case DISCOGRAPHY:
+                checkedItemId = R.id.action_discography;
+                break;
+            case COUNTRY_COMPARISON:
+                checkedItemId = R.id.action_compare_countries;
+                break;
+            default:
+                checkedItemId = R.id.action_top_tracks;
+                break;
+        }
+        MenuItem checkedItem = menu.findItem(checkedItemId);
+        if (checkedItem != null) {
+            checkedItem.setChecked(true);
+        }
+    }
+
     /**
      * Handle the selection of a menu item.
      * The action bar will automatically handle clicks on the Home/Up button, so long
@@ -180,7 +343,20 @@ public class TrackListFragment extends Fragment {
      */
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
-//        int id = item.getItemId();
+        int id = item.getItemId();
+        if (id == R.id.action_top_tracks) {
+            setListMode(ListMode.TOP_TRACKS);
+            item.setChecked(true);
+            return true;
+        } else if (id == R.id.action_discography) {
+            setListMode(ListMode.DISCOGRAPHY);
+            item.setChecked(true);
+            return true;
+        } else if (id == R.id.action_compare_countries) {
+            setListMode(ListMode.COUNTRY_COMPARISON);
+            item.setChecked(true);
+            return true;
+        }
 //        if (id == R.id.action_refresh) {
 //            fetchTracks(appArtist.getId());
 //            return true;
@@ -188,78 +364,447 @@ public class TrackListFragment extends Fragment {
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Switch what is listed for the artist, fetching the new list.
+     * @param listMode what is to be listed
+     */
+    private void setListMode(ListMode listMode) {
+        if (listMode == mListMode) {
+            return;
+        }
+        mListMode = listMode;
+        TaskScheduler.getInstance().cancelTasks(this);
+        mTrackAdapter.setTrackRanks(null);
+        displayTrackList(new ArrayList<AppTrack>());
+        if (mArtist == null) {
+            return;
+        }
+        switch (listMode) {
+            case DISCOGRAPHY:
+                fetchDiscography(mArtist.getId());
+                break;
+            case COUNTRY_COMPARISON:
+                fetchCountryComparison(mArtist.getId());
+                break;
+            default:
+                fetchTracks(mArtist.getId());
+                break;
+        }
+    }
+
     /**
      * Perform an async task to refresh the list of tracks.
      * @param artistId the id of the artist whose top tracks are to be displayed.
      */
     private void fetchTracks(String artistId) {
         if (artistId != null && !artistId.isEmpty()) {
-            if (NetUtil.isConnected(getActivity())) {
-                FetchTracksTask fetchTracksTask = new FetchTracksTask(new TrackListFragmentCallback() {
-                    @Override
-                    public void displayNoTracksMessage() {
-                        if (isAdded()) {
-                            String message = String.format(
-                                    getString(R.string.no_matching_tracks_for_artist), mArtist.getName());
-                            UiUtil.displayMessage(getActivity(), message);
-                        }
+            String countryCode = getPreference(getActivity(), R.string.pref_country_code_key,
+                    R.string.pref_country_code_default);
+            // The task displays any stored tracks first, so it is run even when offline
+            FetchTracksTask fetchTracksTask = new FetchTracksTask(countryCode, new TrackListFragmentCallback() {
+                @Override
+                public void displayNoTracksMessage() {
+                    if (isAdded()) {
+                        String message = String.format(
+                                getString(R.string.no_matching_tracks_for_artist), mArtist.getName());
+                        UiUtil.displayMessage(getActivity(), message);
                     }
-                });
-                fetchTracksTask.execute(artistId);
+                }
+
+                @Override
+                public void displayNotConnectedMessage() {
+                    if (isAdded()) {
+                        UiUtil.displayMessage(getActivity(), getString(R.string.error_not_connected));
+                    }
+                }
+
+                @Override
+                public void displayFetchFailedMessage() {
+                    if (isAdded()) {
+                        UiUtil.displayMessage(getActivity(), getString(R.string.error_spotify_unavailable));
+                    }
+                }
+            });
+            TaskScheduler.getInstance().executeNetworkTask(this, fetchTracksTask,
+                    TaskScheduler.Priority.VISIBLE, artistId);
+        }
+    }
+
+    /**
+     * Display a list of tracks, updating the adapter only if the list has changed.
+     * Only the rows which have changed are rebound.
+     * @param updatedTrackList the list of tracks to display
+     */
+    private void displayTrackList(List<AppTrack> updatedTrackList) {
+        if (mTrackAdapter.getTrackList().equals(updatedTrackList)) {
+            // e.g. a background refresh which found no changes
+            return;
+        }
+        // The images being prefetched are for the rows of the previous list
+        mImagePrefetcher.cancel();
+        mTrackAdapter.setTrackList(updatedTrackList);
+    }
+
+    /**
+     * Perform async tasks to list the tracks of an artist's albums, i.e. its discography.
+     * The artist's albums are listed a page at a time, and the tracks of each page of
+     * albums are fetched in batches while the next page is listed, with a bounded number
+     * of batches in flight. The tracks are displayed as each batch arrives.
+     * @param artistId the id of the artist whose discography is to be displayed.
+     */
+    private void fetchDiscography(String artistId) {
+        if (artistId == null || artistId.isEmpty()) {
+            return;
+        }
+        mCountryCode = getPreference(getActivity(), R.string.pref_country_code_key, R.string.pref_country_code_default);
+        mDiscographyComplete = false;
+        mDiscographyAlbumIds.clear();
+        mAlbumBatches.clear();
+        mAlbumBatchTracks.clear();
+        mAlbumBatchAttempts.clear();
+        mRetryAlbumBatches.clear();
+        mNextAlbumBatch = 0;
+        mAlbumRequestsInFlight = 0;
+        mAlbumsListed = false;
+        mDiscographyFetchFailed = false;
+        mDiscographyNotConnected = false;
+        TaskScheduler.getInstance().executeNetworkTask(this, new FetchAlbumsTask(mCountryCode),
+                TaskScheduler.Priority.VISIBLE, artistId);
+    }
+
+    /**
+     * Add a page of the artist's album ids to the discography, and fetch their tracks.
+     * @param albumIds the album ids
+     */
+    private void addDiscographyAlbums(List<String> albumIds) {
+        List<String> newAlbumIds = new ArrayList<>(albumIds.size());
+        for (String albumId : albumIds) {
+            // Albums can shift between pages while they are being listed
+            if (mDiscographyAlbumIds.add(albumId)) {
+                newAlbumIds.add(albumId);
+            }
+        }
+        for (int start = 0; start < newAlbumIds.size(); start += MAX_ALBUMS_PER_REQUEST) {
+            List<String> batch = newAlbumIds.subList(start, Math.min(start + MAX_ALBUMS_PER_REQUEST, newAlbumIds.size()));
+            mAlbumBatches.add(batch.toArray(new String[batch.size()]));
+            mAlbumBatchTracks.add(null);
+            mAlbumBatchAttempts.add(0);
+        }
+        fetchAlbumBatches();
+    }
+
+    /**
+     * Perform async tasks to fetch the tracks of the pending batches of albums, up to
+     * the maximum number in flight. Batches which failed are fetched again first, as
+     * the batches after them are not displayed until they arrive.
+     */
+    private void fetchAlbumBatches() {
+        while (mAlbumRequestsInFlight < MAX_ALBUM_REQUESTS_IN_FLIGHT) {
+            int batchIndex;
+            if (!mRetryAlbumBatches.isEmpty()) {
+                batchIndex = mRetryAlbumBatches.remove();
+            } else if (mNextAlbumBatch < mAlbumBatches.size()) {
+                batchIndex = mNextAlbumBatch++;
             } else {
+                break;
+            }
+            mAlbumRequestsInFlight++;
+            mAlbumBatchAttempts.set(batchIndex, mAlbumBatchAttempts.get(batchIndex) + 1);
+            TaskScheduler.getInstance().executeNetworkTask(this,
+                    new FetchAlbumTracksTask(batchIndex, mCountryCode),
+                    TaskScheduler.Priority.VISIBLE, mAlbumBatches.get(batchIndex));
+        }
+    }
+
+    /**
+     * Display the tracks of a batch of albums, and fetch the next pending batch.
+     * The tracks of the batches are displayed in album order, so a batch which arrives
+     * before an earlier one is displayed once the earlier one has arrived.
+     * A batch which failed is fetched again, unless it has been tried too often or there
+     * is no connection, in which case the discography is displayed without it.
+     * @param batchIndex the index of the batch
+     * @param trackList the tracks of the albums, or null if they could not be fetched
+     * @param notConnected whether the tracks could not be fetched for lack of a connection
+     */
+    private void onAlbumBatchFetched(int batchIndex, List<AppTrack> trackList, boolean notConnected) {
+        mAlbumRequestsInFlight--;
+        if (trackList == null) {
+            if (!notConnected && mAlbumBatchAttempts.get(batchIndex) < MAX_DISCOGRAPHY_FETCH_ATTEMPTS) {
+                mRetryAlbumBatches.add(batchIndex);
+                fetchAlbumBatches();
+                return;
+            }
+            mDiscographyFetchFailed = true;
+            mDiscographyNotConnected |= notConnected;
+            trackList = new ArrayList<>();
+        }
+        mAlbumBatchTracks.set(batchIndex, trackList);
+        List<AppTrack> discography = new ArrayList<>();
+        for (List<AppTrack> batchTracks : mAlbumBatchTracks) {
+            if (batchTracks == null) {
+                break;
+            }
+            discography.addAll(batchTracks);
+        }
+        displayTrackList(discography);
+        fetchAlbumBatches();
+        onDiscographyProgress();
+    }
+
+    /**
+     * Record whether the discography is complete, i.e. all its albums have been listed
+     * and all their tracks fetched, once no more of it is being fetched.
+     * If any of it could not be fetched, an error is displayed, as the discography is
+     * incomplete; otherwise a message is displayed if it has no tracks.
+     */
+    private void onDiscographyProgress() {
+        if (!mAlbumsListed || mAlbumRequestsInFlight > 0 || mNextAlbumBatch < mAlbumBatches.size()
+                || !mRetryAlbumBatches.isEmpty()) {
+            return;
+        }
+        // An incomplete discography is fetched again if the fragment is recreated
+        mDiscographyComplete = !mDiscographyFetchFailed;
+        if (!isAdded()) {
+            return;
+        }
+        if (mDiscographyNotConnected) {
+            UiUtil.displayMessage(getActivity(), getString(R.string.error_not_connected));
+        } else if (mDiscographyFetchFailed) {
+            UiUtil.displayMessage(getActivity(), getString(R.string.error_spotify_unavailable));
+        } else if (mTrackAdapter.getItemCount() == 0) {
+            UiUtil.displayMessage(getActivity(),
+                    String.format(getString(R.string.no_matching_tracks_for_artist), mArtist.getName()));
+        }
+    }
+
+    /**
+     * Returns a current preference.
+     * @param context the context
+     * @param key the string resource id of the preference's key
+     * @param defaultValue the string resource id of the preference's default value
+     * @return the current preference setting for the preference
+     */
+    private String getPreference(Context context, int key, int defaultValue) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(getString(key), getString(defaultValue));
+    }
+
+    /**
+     * Perform async tasks to load the artist's top tracks in each of the countries chosen
+     * by the user, a few at a time, then display them ranked across the countries.
+     * Each country's top tracks are loaded as in the top tracks mode, i.e. from the store
+     * if they are fresh, otherwise fetched and stored.
+     * @param artistId the id of the artist whose top tracks are to be compared.
+     */
+    private void fetchCountryComparison(String artistId) {
+        if (artistId == null || artistId.isEmpty()) {
+            return;
+        }
+        mComparisonCountryCodes = getComparisonCountryCodes();
+        mComparisonArtistId = artistId;
+        mComparisonTracks.clear();
+        mComparisonNotConnected = false;
+        mComparisonFetchFailed = false;
+        mNextComparisonCountry = 0;
+        mCountryRequestsInFlight = 0;
+        fetchComparisonCountries();
+    }
+
+    /**
+     * Perform async tasks to load the top tracks of the pending countries being compared,
+     * up to the maximum number in flight, so that a large selection neither fills the
+     * network pool nor exceeds the burst allowed by the rate limiter.
+     */
+    private void fetchComparisonCountries() {
+        while (mCountryRequestsInFlight < MAX_COUNTRY_REQUESTS_IN_FLIGHT
+                && mNextComparisonCountry < mComparisonCountryCodes.size()) {
+            mCountryRequestsInFlight++;
+            String countryCode = mComparisonCountryCodes.get(mNextComparisonCountry);
+            TaskScheduler.getInstance().executeNetworkTask(this, new FetchCountryTopTracksTask(countryCode),
+                    TaskScheduler.Priority.VISIBLE, mComparisonArtistId);
+            mNextComparisonCountry++;
+        }
+    }
+
+    /**
+     * Returns the country codes of the countries the user has chosen to compare,
+     * in the order in which the countries are offered.
+     * If the user has chosen none, the user's own country and a couple of others are compared.
+     * @return the country codes
+     */
+    private List<String> getComparisonCountryCodes() {
+        String[] allCountryCodes = getResources().getStringArray(R.array.pref_country_code_list_values);
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
+        Set<String> chosenCountryCodes = prefs.getStringSet(getString(R.string.pref_compare_countries_key),
+                new HashSet<String>());
+        List<String> countryCodes = new ArrayList<>();
+        for (String countryCode : allCountryCodes) {
+            if (chosenCountryCodes.contains(countryCode)) {
+                countryCodes.add(countryCode);
+            }
+        }
+        if (countryCodes.isEmpty()) {
+            countryCodes.add(getPreference(getActivity(), R.string.pref_country_code_key,
+                    R.string.pref_country_code_default));
+            for (String countryCode : getResources().getStringArray(R.array.pref_compare_countries_default)) {
+                if (countryCodes.size() >= DEFAULT_COMPARISON_COUNTRY_COUNT) {
+                    break;
+                }
+                if (!countryCodes.contains(countryCode)) {
+                    countryCodes.add(countryCode);
+                }
+            }
+        }
+        return countryCodes;
+    }
+
+    /**
+     * Record the top tracks of a country being compared, and once those of all the
+     * countries have been loaded, display them ranked across the countries.
+     * @param countryCode the country code
+     * @param trackList the top tracks, or null if they could not be loaded
+     * @param notConnected whether the tracks could not be fetched for lack of a connection
+     * @param fetchFailed whether the tracks could not be fetched, e.g. because Spotify was busy
+     */
+    private void onCountryTopTracksLoaded(String countryCode, List<AppTrack> trackList,
+                                          boolean notConnected, boolean fetchFailed) {
+        mCountryRequestsInFlight--;
+        mComparisonTracks.put(countryCode, (trackList == null) ? new ArrayList<AppTrack>() : trackList);
+        mComparisonNotConnected |= notConnected;
+        mComparisonFetchFailed |= fetchFailed && (trackList == null || trackList.isEmpty());
+        if (mComparisonTracks.size() < mComparisonCountryCodes.size()) {
+            fetchComparisonCountries();
+            return;
+        }
+
+        TopTrackComparison comparison = new TopTrackComparison(mComparisonCountryCodes, mComparisonTracks);
+        Map<String, String> trackRanks = new HashMap<>();
+        for (AppTrack track : comparison.getRankedTracks()) {
+            trackRanks.put(track.getId(), formatCountryPositions(comparison, track.getId()));
+        }
+        mTrackAdapter.setTrackRanks(trackRanks);
+        displayTrackList(comparison.getRankedTracks());
+
+        if (mComparisonFetchFailed && isAdded()) {
+            // A country missing from the comparison would skew the ranking, so say so
+            UiUtil.displayMessage(getActivity(), getString(R.string.error_spotify_unavailable));
+        } else if (comparison.getRankedTracks().isEmpty() && isAdded() && mArtist != null) {
+            if (mComparisonNotConnected) {
                 UiUtil.displayMessage(getActivity(), getString(R.string.error_not_connected));
+            } else {
+                UiUtil.displayMessage(getActivity(),
+                        String.format(getString(R.string.no_matching_tracks_for_artist), mArtist.getName()));
+            }
+        }
+    }
+
+    /**
+     * Returns the text displaying the positions of a track in each country compared,
+     * e.g. "GB #1 - US #4".
+     * @param comparison the comparison
+     * @param trackId the track id
+     * @return the text displaying the track's positions
+     */
+    private String formatCountryPositions(TopTrackComparison comparison, String trackId) {
+        StringBuilder builder = new StringBuilder();
+        for (String countryCode : comparison.getCountryCodes()) {
+            if (builder.length() > 0) {
+                builder.append(getString(R.string.country_positions_separator));
+            }
+            int position = comparison.getPosition(trackId, countryCode);
+            if (position == TopTrackComparison.NOT_RANKED) {
+                builder.append(getString(R.string.country_position_unranked, countryCode));
+            } else {
+                builder.append(getString(R.string.country_position, countryCode, position));
             }
         }
+        return builder.toString();
     }
 
     private interface TrackListFragmentCallback {
         void displayNoTracksMessage();
+        void displayNotConnectedMessage();
+        void displayFetchFailedMessage();
     }
 
     /**
-     * Background task for getting the list of top tracks for an artist from Spotify.
+     * Background task for getting the list of top tracks for an artist.
+     * Any stored top tracks are displayed straight away, as progress; if they are stale,
+     * or there are none, the top tracks are then fetched from Spotify and stored.
      */
-    public class FetchTracksTask extends AsyncTask<String, Void, List<AppTrack>> {
+    public class FetchTracksTask extends AsyncTask<String, List<AppTrack>, List<AppTrack>> {
 
         private final TrackListFragmentCallback mCallback;
+        private final TopTrackStore mTopTrackStore;
+        /** The country code of the top tracks to fetch. */
+        private final String mTaskCountryCode;
 
-        public FetchTracksTask(TrackListFragmentCallback callback) {
+        /** The size in pixels at which album images are displayed in the list. */
+        private final int mImageSizeSmallPx;
+        /** The size in pixels at which album images are displayed in the player. */
+        private final int mImageSizeLargePx;
+        /** Whether to save data by choosing smaller album images. */
+        private final boolean mSaveData;
+        private boolean mNotConnected = false;
+        /** Whether the tracks could not be fetched, e.g. because Spotify was busy. */
+        private boolean mFetchFailed = false;
+
+        /**
+         * Constructor.
+         * @param countryCode the country code of the top tracks to fetch
+         * @param callback the callback for reporting that there are no tracks, or null
+         *                 if the task does not display the tracks itself
+         */
+        public FetchTracksTask(String countryCode, TrackListFragmentCallback callback) {
             mCallback = callback;
+            mTopTrackStore = TopTrackStore.getInstance(getActivity());
+            mTaskCountryCode = countryCode;
+            mImageSizeSmallPx = getResources().getDimensionPixelSize(R.dimen.list_image_size);
+            mImageSizeLargePx = getResources().getDimensionPixelSize(R.dimen.player_image_size);
+            mSaveData = NetUtil.isSavingData(getActivity());
         }
 
         /**
          * Background task to fetch a list of the top tracks for an artist from Spotify
          * and return the list.
          * @param params the parameters
-         * @return the list of tracks as supplied by Spotify
+         * @return the list of tracks as supplied by Spotify, or as stored if they
+         *         could not be fetched
          */
         @Override
+        @SuppressWarnings("unchecked")
         protected List<AppTrack> doInBackground(String[] params) {
             // Check we have the artist id as a parameter
             if (params == null || params.length != 1) {
                 throw new InvalidParameterException("FetchTracksTask requires a single parameter, the artist id");
             }
             String artistId = params[0];
-            String countryCode = getPreference(getActivity(), R.string.pref_country_code_key, R.string.pref_country_code_default);
+            String countryCode = mTaskCountryCode;
+
+            // Use the stored top tracks, if there are any
+            TopTrackStore.StoredTrackList storedTrackList = mTopTrackStore.get(artistId, countryCode);
+            List<AppTrack> storedTracks = null;
+            if (storedTrackList != null) {
+                storedTracks = storedTrackList.getTrackList();
+                if (storedTrackList.isFresh(TOP_TRACKS_FRESH_MS)) {
+                    return storedTracks;
+                }
+                // Display the stale tracks while they are refreshed
+                publishProgress(storedTracks);
+            }
 
             if (NetUtil.isConnected(getActivity())) {
-                // Get the Spotify top tracks for the artist and return them
-                return getArtistTopAppTracks(artistId, countryCode);
+                // Get the Spotify top tracks for the artist, store them and return them
+                List<AppTrack> fetchedTracks = getArtistTopAppTracks(artistId, countryCode);
+                if (fetchedTracks != null) {
+                    mTopTrackStore.put(artistId, countryCode, fetchedTracks);
+                    return fetchedTracks;
+                }
             } else {
-                return new ArrayList<>();
+                mNotConnected = true;
             }
-        }
-
-        /**
-         * Returns a current preference.
-         * @param context the context
-         * @param key the string resource id of the preference's key
-         * @param defaultValue the string resource id of the preference's default value
-         * @return the current preference setting for the preference
-         */
-        private String getPreference(Context context, int key, int defaultValue) {
-            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-            return prefs.getString(getString(key), getString(defaultValue));
+            // The tracks could not be fetched, so fall back to the stored tracks
+            return storedTracks;
         }
 
         /**
@@ -270,81 +815,294 @@ public class TrackListFragment extends Fragment {
          */
         @Override
         protected void onPostExecute(List<AppTrack> updatedTrackList) {
+            mCountryCode = mTaskCountryCode;
             if (updatedTrackList == null || updatedTrackList.size() == 0) {
-                mCallback.displayNoTracksMessage();
+                if (updatedTrackList != null) {
+                    // Remove any stored tracks which were displayed
+                    displayTrackList(updatedTrackList);
+                }
+                if (mNotConnected) {
+                    mCallback.displayNotConnectedMessage();
+                } else if (mFetchFailed) {
+                    mCallback.displayFetchFailedMessage();
+                } else {
+                    mCallback.displayNoTracksMessage();
+                }
                 return;
             }
+            displayTrackList(updatedTrackList);
+        }
 
-            // update the adapter's data object
-            mTrackList.clear();
-            for (AppTrack track : updatedTrackList) {
-                mTrackList.add(track);
-            }
-            // notify the adapter that its data object has changed
-            mTrackAdapter.notifyDataSetChanged();
+        /**
+         * Load the stored track list into the adapter while it is being refreshed.
+         * Runs on the UI thread.
+         * @param storedTrackLists the stored track list, as published by {@link #doInBackground}.
+         */
+        @Override
+        protected void onProgressUpdate(List<AppTrack>... storedTrackLists) {
+            mCountryCode = mTaskCountryCode;
+            displayTrackList(storedTrackLists[0]);
+        }
+
+        /**
+         * Returns whether the tracks could not be fetched for lack of a connection.
+         * @return whether the device was not connected
+         */
+        protected boolean isNotConnected() {
+            return mNotConnected;
+        }
+
+        /**
+         * Returns whether the tracks could not be fetched, e.g. because Spotify was busy.
+         * @return whether the fetch failed
+         */
+        protected boolean isFetchFailed() {
+            return mFetchFailed;
         }
 
         /**
          * Returns a list of the top tracks for an artist in a country.
          * @param artistId the artist id
          * @param countryCode the country code
-         * @return a list of the top tracks for the artist in the country
+         * @return a list of the top tracks for the artist in the country,
+         *         or null if the tracks could not be fetched
          */
-        private List<AppTrack> getArtistTopAppTracks(String artistId, String countryCode) {
-            List<AppTrack> appTrackList = new ArrayList<>();
-            List<Track> trackList = getArtistTopSpotifyTracks(artistId, countryCode);
-            if (trackList != null) {
-                for (Track track : trackList) {
-                    AppTrack appTrack = new AppTrack(
-                            track.id,
-                            track.name,
-                            SpotifyUtil.getAlbumName(track, getActivity().getString(R.string.unknown_album_name)),
-                            SpotifyUtil.getImageUrlSmallForAlbum(track.album),
-                            SpotifyUtil.getImageUrlLargeForAlbum(track.album),
-                            track.preview_url,
-                            track.duration_ms,
-                            PREVIEW_DURATION_MS,
-                            SpotifyUtil.getArtistName(track, getActivity().getString(R.string.unknown_artist_name))
-                            );
-                    appTrackList.add(appTrack);
+        private List<AppTrack> getArtistTopAppTracks(final String artistId, final String countryCode) {
+            // An identical fetch may already be in flight, e.g. from before a rotation
+            String key = artistId + "/" + countryCode + "/" + mImageSizeSmallPx + "/"
+                    + mImageSizeLargePx + "/" + mSaveData;
+            final String unknownAlbumName = getActivity().getString(R.string.unknown_album_name);
+            final String unknownArtistName = getActivity().getString(R.string.unknown_artist_name);
+            try {
+                return sTopTrackFlights.execute(key, new SingleFlight.Fetch<List<AppTrack>>() {
+                    @Override
+                    public List<AppTrack> fetch() throws IOException {
+                        Map<String, Object> options = new HashMap<>();
+                        options.put(QUERY_COUNTRY_KEY, countryCode);
+                        Response response = SpotifyServiceProvider.getStreamingService()
+                                .getArtistTopTrack(artistId, options);
+                        return SpotifyResponseDecoder.readTracks(response, mImageSizeSmallPx, mImageSizeLargePx,
+                                mSaveData, unknownAlbumName, unknownArtistName, PREVIEW_DURATION_MS);
+                    }
+                });
+            } catch (RetrofitError | IOException e) {
+                if (!isCancelled()) {
+                    Log.e(LOG_TAG, "Error while fetching track list: " + e);
+                    mFetchFailed = true;
                 }
             }
-            return appTrackList;
+            return null;
         }
+    }
+
+    /**
+     * Background task for loading the top tracks of an artist in one of the countries
+     * being compared, which reports them to the comparison rather than displaying them.
+     * Stale stored tracks are not displayed while they are refreshed, as the comparison
+     * is only displayed once all its countries' tracks have been loaded.
+     */
+    public class FetchCountryTopTracksTask extends FetchTracksTask {
+        private final String mComparisonCountryCode;
 
         /**
-         * Returns a list of the top Spotify tracks for an artist in a country.
-         * This method must be run in a background thread.
+         * Constructor.
+         * @param countryCode the country code of the top tracks to load
+         */
+        public FetchCountryTopTracksTask(String countryCode) {
+            super(countryCode, null);
+            mComparisonCountryCode = countryCode;
+        }
+
+        @Override
+        protected void onProgressUpdate(List<AppTrack>... storedTrackLists) {
+            // Wait for the refreshed tracks
+        }
+
+        @Override
+        protected void onPostExecute(List<AppTrack> trackList) {
+            onCountryTopTracksLoaded(mComparisonCountryCode, trackList, isNotConnected(), isFetchFailed());
+        }
+    }
+
+    /**
+     * Background task for listing the album ids of an artist's discography.
+     * Each page of album ids is published as progress, so that the tracks of its albums
+     * can be fetched while the next page is listed.
+     */
+    public class FetchAlbumsTask extends AsyncTask<String, List<String>, Void> {
+
+        /** The country code of the market whose albums are listed. */
+        private final String mTaskCountryCode;
+        private boolean mNotConnected = false;
+        private boolean mFetchFailed = false;
+
+        /**
+         * Constructor.
+         * @param countryCode the country code of the market whose albums are to be listed
+         */
+        public FetchAlbumsTask(String countryCode) {
+            mTaskCountryCode = countryCode;
+        }
+
+        /**
+         * Lists the album ids of an artist a page at a time, publishing each page.
+         * @param params the parameters, i.e. the artist id
+         * @return null
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Void doInBackground(String... params) {
+            if (params == null || params.length != 1) {
+                throw new InvalidParameterException("FetchAlbumsTask requires a single parameter, the artist id");
+            }
+            if (!NetUtil.isConnected(getActivity())) {
+                mNotConnected = true;
+                return null;
+            }
+            for (int offset = 0; offset < MAX_DISCOGRAPHY_ALBUMS && !isCancelled(); offset += ALBUM_PAGE_SIZE) {
+                List<String> albumIds = null;
+                for (int attempt = 0; albumIds == null && attempt < MAX_DISCOGRAPHY_FETCH_ATTEMPTS
+                        && !isCancelled(); attempt++) {
+                    albumIds = getAlbumIds(params[0], offset);
+                }
+                if (albumIds == null) {
+                    // The rest of the albums cannot be listed
+                    mFetchFailed = true;
+                    break;
+                }
+                publishProgress(albumIds);
+                // A page which is not full is the last page
+                if (albumIds.size() < ALBUM_PAGE_SIZE) {
+                    break;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns a page of the album ids of an artist.
          * @param artistId the artist id
-         * @param countryCode the country code
-         * @return a list of the top Spotify tracks for the artist in the country
+         * @param offset the offset of the page
+         * @return the page of album ids, or null if they could not be fetched
          */
-        private List<Track> getArtistTopSpotifyTracks(String artistId, String countryCode) {
+        private List<String> getAlbumIds(String artistId, int offset) {
+            SpotifyServiceProvider.setRequestTag(this);
             try {
                 Map<String, Object> options = new HashMap<>();
-                options.put(QUERY_COUNTRY_KEY, countryCode);
-                Tracks tracks = getSpotifyService().getArtistTopTrack(artistId, options);
-                if (tracks != null) {
-                    return tracks.tracks;
+                options.put(QUERY_MARKET_KEY, mTaskCountryCode);
+                options.put(QUERY_ALBUM_TYPE_KEY, DISCOGRAPHY_ALBUM_TYPES);
+                options.put(QUERY_OFFSET_KEY, offset);
+                options.put(QUERY_LIMIT_KEY, ALBUM_PAGE_SIZE);
+                Response response = SpotifyServiceProvider.getStreamingService().getArtistAlbums(artistId, options);
+                return SpotifyResponseDecoder.readAlbumIds(response);
+            } catch (RetrofitError | IOException e) {
+                if (!isCancelled()) {
+                    Log.e(LOG_TAG, "Error while fetching album list: " + e);
                 }
-            } catch (RetrofitError e) {
-                Log.e(LOG_TAG, "RetrofitError while fetching track list: " + e);
+            } finally {
+                SpotifyServiceProvider.setRequestTag(null);
             }
             return null;
         }
 
         /**
-         * Return a SpotifyService object.
-         * @return a SpotifyService object
+         * Fetch the tracks of a page of albums.
+         * Runs on the UI thread.
+         * @param albumIdPages the page of album ids, as published by {@link #doInBackground}.
          */
-        private SpotifyService getSpotifyService() {
-            SpotifyApi spotifyApi = new SpotifyApi();
+        @Override
+        protected void onProgressUpdate(List<String>... albumIdPages) {
+            addDiscographyAlbums(albumIdPages[0]);
+        }
 
-            // Most (but not all) of the Spotify Web API endpoints require authorisation.
-            // The ones that require authorisation need the following step:
-            //spotifyApi.setAccessToken("myAccessToken");
+        /**
+         * Record that all the album ids have been listed.
+         * Runs on the UI thread after {@link #doInBackground}.
+         * This method won't be invoked if the task was cancelled.
+         * @param result null
+         */
+        @Override
+        protected void onPostExecute(Void result) {
+            mAlbumsListed = true;
+            mDiscographyFetchFailed |= mFetchFailed || mNotConnected;
+            mDiscographyNotConnected |= mNotConnected;
+            onDiscographyProgress();
+        }
+    }
+
+    /**
+     * Background task for getting the tracks of a batch of albums in a single request.
+     */
+    public class FetchAlbumTracksTask extends AsyncTask<String, Void, List<AppTrack>> {
+
+        /** The index of the batch of albums within the discography. */
+        private final int mBatchIndex;
+        /** The country code of the market whose tracks are fetched. */
+        private final String mTaskCountryCode;
 
-            return spotifyApi.getService();
+        /** The size in pixels at which album images are displayed in the list. */
+        private final int mImageSizeSmallPx;
+        /** The size in pixels at which album images are displayed in the player. */
+        private final int mImageSizeLargePx;
+        /** Whether to save data by choosing smaller album images. */
+        private final boolean mSaveData;
+        private final String mUnknownAlbumName;
+        private final String mUnknownArtistName;
+        private boolean mNotConnected = false;
+
+        /**
+         * Constructor.
+         * @param batchIndex the index of the batch of albums within the discography
+         * @param countryCode the country code of the market whose tracks are to be fetched
+         */
+        public FetchAlbumTracksTask(int batchIndex, String countryCode) {
+            mBatchIndex = batchIndex;
+            mTaskCountryCode = countryCode;
+            mImageSizeSmallPx = getResources().getDimensionPixelSize(R.dimen.list_image_size);
+            mImageSizeLargePx = getResources().getDimensionPixelSize(R.dimen.player_image_size);
+            mSaveData = NetUtil.isSavingData(getActivity());
+            mUnknownAlbumName = getString(R.string.unknown_album_name);
+            mUnknownArtistName = getString(R.string.unknown_artist_name);
+        }
+
+        /**
+         * Fetches the tracks of a batch of albums.
+         * @param albumIds the album ids, at most {@link #MAX_ALBUMS_PER_REQUEST}
+         * @return the tracks of the albums, in album order, or null if they could not be fetched
+         */
+        @Override
+        protected List<AppTrack> doInBackground(String... albumIds) {
+            if (!NetUtil.isConnected(getActivity())) {
+                mNotConnected = true;
+                return null;
+            }
+            SpotifyServiceProvider.setRequestTag(this);
+            try {
+                Map<String, Object> options = new HashMap<>();
+                options.put(QUERY_MARKET_KEY, mTaskCountryCode);
+                Response response = SpotifyServiceProvider.getStreamingService()
+                        .getAlbums(TextUtils.join(",", albumIds), options);
+                return SpotifyResponseDecoder.readAlbumTracks(response, mImageSizeSmallPx, mImageSizeLargePx,
+                        mSaveData, mUnknownAlbumName, mUnknownArtistName, PREVIEW_DURATION_MS);
+            } catch (RetrofitError | IOException e) {
+                if (!isCancelled()) {
+                    Log.e(LOG_TAG, "Error while fetching album tracks: " + e);
+                }
+            } finally {
+                SpotifyServiceProvider.setRequestTag(null);
+            }
+            return null;
+        }
+
+        /**
+         * Display the tracks of the batch of albums.
+         * Runs on the UI thread after {@link #doInBackground}.
+         * This method won't be invoked if the task was cancelled.
+         * @param trackList the tracks, as returned by {@link #doInBackground}.
+         */
+        @Override
+        protected void onPostExecute(List<AppTrack> trackList) {
+            onAlbumBatchFetched(mBatchIndex, trackList, mNotConnected);
         }
     }
 
@@ -356,8 +1114,10 @@ public class TrackListFragment extends Fragment {
     public interface Callback {
         /**
          * List fragment callback for when an item has been selected.
+         * @param queueId the queue id of the track list, in the track queue repository
+         * @param position the position in the track list of the selected track
          */
-        void onTrackSelected(List<AppTrack> appTrackList, int position);
+        void onTrackSelected(String queueId, int position);
     }
 
 }
@@ -5,6 +5,8 @@ import android.os.Parcelable;
 
 /**
  * A parcelable artist.
+ * The artist's details are not needed to list it, so are only present once they have
+ * been fetched, see {@link #withDetails(ArtistDetails)}.
  * @author Edmund Johnson
  */
 public class AppArtist implements Parcelable {
@@ -12,17 +14,31 @@ public class AppArtist implements Parcelable {
     private final String id;
     private final String name;
     private final String imageUrlSmall;
+    private final ArtistDetails details;
 
     /**
-     * Public constructor which initialises the artist.
+     * Public constructor which initialises the artist, without its details.
      * @param id the Spotify id for the artist
      * @param name the name of the artist
      * @param imageUrlSmall the URL of a small image of the artist
      */
     public AppArtist(String id, String name, String imageUrlSmall) {
+        this(id, name, imageUrlSmall, null);
+    }
+
+    /**
+     * Constructor which initialises the artist.
+     * @param id the Spotify id for the artist
+     * @param name the name of the artist
+     * @param imageUrlSmall the URL of a small image of the artist
+     * @param details the details of the artist, or null if they have not been fetched
+     */
+    private AppArtist(String id, String name, String imageUrlSmall, ArtistDetails details) {
         this.id = id;
-        this.name = name;
+        // The name is shared with the artist's tracks
+        this.name = StringInterner.intern(name);
         this.imageUrlSmall = imageUrlSmall;
+        this.details = details;
     }
 
     /**
@@ -31,8 +47,36 @@ public class AppArtist implements Parcelable {
      */
     private AppArtist(Parcel parcel) {
         this.id = parcel.readString();
-        this.name = parcel.readString();
+        this.name = StringInterner.intern(parcel.readString());
         this.imageUrlSmall = parcel.readString();
+        this.details = (parcel.readInt() == 0) ? null : ArtistDetails.readFromParcel(parcel);
+    }
+
+    /**
+     * Returns a placeholder for an artist which is listed but not held in memory, e.g.
+     * in a page of search results which has been evicted, so that the rows after it
+     * keep their positions. A placeholder has no id or name.
+     * @return a placeholder
+     */
+    public static AppArtist createPlaceholder() {
+        return new AppArtist(null, null, null, null);
+    }
+
+    /**
+     * Returns whether this is a placeholder, see {@link #createPlaceholder()}.
+     * @return whether this is a placeholder
+     */
+    public boolean isPlaceholder() {
+        return id == null && name == null;
+    }
+
+    /**
+     * Returns a copy of the artist with its details.
+     * @param details the details of the artist
+     * @return a copy of the artist with the details
+     */
+    public AppArtist withDetails(ArtistDetails details) {
+        return new AppArtist(id, name, imageUrlSmall, details);
     }
 
     @Override
@@ -45,6 +89,12 @@ public class AppArtist implements Parcelable {
         parcel.writeString(getId());
         parcel.writeString(getName());
         parcel.writeString(getImageUrlSmall());
+        if (details == null) {
+            parcel.writeInt(0);
+        } else {
+            parcel.writeInt(1);
+            details.writeToParcel(parcel);
+        }
     }
 
     public static final Parcelable.Creator<AppArtist> CREATOR
@@ -72,4 +122,36 @@ public class AppArtist implements Parcelable {
         return imageUrlSmall;
     }
 
+    /**
+     * Returns the details of the artist.
+     * @return the details of the artist, or null if they have not been fetched
+     */
+    public ArtistDetails getDetails() {
+        return details;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AppArtist other = (AppArtist) o;
+        return equal(id, other.id)
+                && equal(name, other.name)
+                && equal(imageUrlSmall, other.imageUrlSmall)
+                && equal(details, other.details);
+    }
+
+    @Override
+    public int hashCode() {
+        return id == null ? 0 : id.hashCode();
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
 }
@@ -35,13 +35,14 @@ public class AppTrack implements Parcelable {
                     long duration, long previewDuration, String artistName) {
         this.id = id;
         this.trackName = trackName;
-        this.albumName = albumName;
-        this.imageUrlSmall = imageUrlSmall;
-        this.imageUrlLarge = imageUrlLarge;
+        // The album, artist and album images are usually shared with other tracks
+        this.albumName = StringInterner.intern(albumName);
+        this.imageUrlSmall = StringInterner.intern(imageUrlSmall);
+        this.imageUrlLarge = StringInterner.intern(imageUrlLarge);
         this.previewUrl = previewUrl;
         this.duration = duration;
         this.previewDuration = previewDuration;
-        this.artistName = artistName;
+        this.artistName = StringInterner.intern(artistName);
     }
 
     /**
@@ -51,13 +52,13 @@ public class AppTrack implements Parcelable {
     private AppTrack(Parcel parcel) {
         this.id = parcel.readString();
         this.trackName = parcel.readString();
-        this.albumName = parcel.readString();
-        this.imageUrlSmall = parcel.readString();
-        this.imageUrlLarge = parcel.readString();
+        this.albumName = StringInterner.intern(parcel.readString());
+        this.imageUrlSmall = StringInterner.intern(parcel.readString());
+        this.imageUrlLarge = StringInterner.intern(parcel.readString());
         this.previewUrl = parcel.readString();
         this.duration = parcel.readLong();
         this.previewDuration = parcel.readLong();
-        this.artistName = parcel.readString();
+        this.artistName = StringInterner.intern(parcel.readString());
     }
 
     @Override
@@ -91,7 +92,7 @@ public class AppTrack implements Parcelable {
 
     // Getters and setters
 
-    private String getId() {
+    public String getId() {
         return id;
     }
 
@@ -115,7 +116,7 @@ public class AppTrack implements Parcelable {
         return previewUrl;
     }
 
-    private long getDuration() {
+    public long getDuration() {
         return duration;
     }
 
@@ -126,4 +127,33 @@ public class AppTrack implements Parcelable {
     public String getArtistName() {
         return artistName;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AppTrack other = (AppTrack) o;
+        return duration == other.duration
+                && previewDuration == other.previewDuration
+                && equal(id, other.id)
+                && equal(trackName, other.trackName)
+                && equal(albumName, other.albumName)
+                && equal(imageUrlSmall, other.imageUrlSmall)
+                && equal(imageUrlLarge, other.imageUrlLarge)
+                && equal(previewUrl, other.previewUrl)
+                && equal(artistName, other.artistName);
+    }
+
+    @Override
+    public int hashCode() {
+        return id == null ? 0 : id.hashCode();
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
 }
@@ -0,0 +1,173 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parcelable list of tracks, with a more compact parcel encoding than a list of
+ * parcelable tracks, for passing track lists between components and saving them in
+ * instance state.
+ * The strings of all the tracks are written once each, in a string table shared by the
+ * list, and each track is written as indexes into the table. As the tracks in a list
+ * usually have the same artist, and often the same album, these are written once.
+ * URLs are split into a prefix, up to and including the last '/', and a suffix, so
+ * that the common prefixes of the image and preview URLs are also written once.
+ * @author Edmund Johnson
+ */
+public class AppTrackList implements Parcelable {
+
+    /** The index written for a null string. */
+    private static final int NULL_INDEX = -1;
+    /** The number of string table indexes written for each track. */
+    private static final int INDEXES_PER_TRACK = 10;
+    /** The number of longs written for each track. */
+    private static final int LONGS_PER_TRACK = 2;
+
+    private final List<AppTrack> trackList;
+
+    /**
+     * Public constructor which initialises the track list.
+     * @param trackList the list of tracks
+     */
+    public AppTrackList(List<AppTrack> trackList) {
+        this.trackList = trackList;
+    }
+
+    /**
+     * Constructor which creates the track list from a parcel.
+     * @param parcel the parcel
+     */
+    private AppTrackList(Parcel parcel) {
+        String[] strings = new String[parcel.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = parcel.readString();
+        }
+        int[] indexes = parcel.createIntArray();
+        long[] longs = parcel.createLongArray();
+
+        int trackCount = indexes.length / INDEXES_PER_TRACK;
+        trackList = new ArrayList<>(trackCount);
+        int i = 0;
+        int l = 0;
+        for (int t = 0; t < trackCount; t++) {
+            String id = getString(strings, indexes[i++]);
+            String trackName = getString(strings, indexes[i++]);
+            String albumName = getString(strings, indexes[i++]);
+            String artistName = getString(strings, indexes[i++]);
+            String imageUrlSmall = getUrl(strings, indexes[i++], indexes[i++]);
+            String imageUrlLarge = getUrl(strings, indexes[i++], indexes[i++]);
+            String previewUrl = getUrl(strings, indexes[i++], indexes[i++]);
+            long duration = longs[l++];
+            long previewDuration = longs[l++];
+            trackList.add(new AppTrack(id, trackName, albumName, imageUrlSmall, imageUrlLarge,
+                    previewUrl, duration, previewDuration, artistName));
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel parcel, int i) {
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        int[] indexes = new int[trackList.size() * INDEXES_PER_TRACK];
+        long[] longs = new long[trackList.size() * LONGS_PER_TRACK];
+
+        int index = 0;
+        int l = 0;
+        for (AppTrack track : trackList) {
+            indexes[index++] = addString(strings, stringIndexes, track.getId());
+            indexes[index++] = addString(strings, stringIndexes, track.getTrackName());
+            indexes[index++] = addString(strings, stringIndexes, track.getAlbumName());
+            indexes[index++] = addString(strings, stringIndexes, track.getArtistName());
+            index = addUrl(strings, stringIndexes, track.getImageUrlSmall(), indexes, index);
+            index = addUrl(strings, stringIndexes, track.getImageUrlLarge(), indexes, index);
+            index = addUrl(strings, stringIndexes, track.getPreviewUrl(), indexes, index);
+            longs[l++] = track.getDuration();
+            longs[l++] = track.getPreviewDuration();
+        }
+
+        parcel.writeInt(strings.size());
+        for (String string : strings) {
+            parcel.writeString(string);
+        }
+        parcel.writeIntArray(indexes);
+        parcel.writeLongArray(longs);
+    }
+
+    public static final Creator<AppTrackList> CREATOR
+            = new Creator<AppTrackList>() {
+        public AppTrackList createFromParcel(Parcel in) {
+            return new AppTrackList(in);
+        }
+
+        public AppTrackList[] newArray(int size) {
+            return new AppTrackList[size];
+        }
+    };
+
+    /**
+     * Adds a string to the string table, unless it is already in it.
+     * @param strings the string table
+     * @param stringIndexes the indexes of the strings in the string table
+     * @param string the string, which may be null
+     * @return the index of the string in the string table, or NULL_INDEX if it is null
+     */
+    private static int addString(List<String> strings, Map<String, Integer> stringIndexes, String string) {
+        if (string == null) {
+            return NULL_INDEX;
+        }
+        Integer index = stringIndexes.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndexes.put(string, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds the prefix and suffix of a URL to the string table, and records their indexes.
+     * @param strings the string table
+     * @param stringIndexes the indexes of the strings in the string table
+     * @param url the URL, which may be null
+     * @param indexes the string table indexes of the tracks
+     * @param index the position in the indexes at which to record those of the URL
+     * @return the position in the indexes after those of the URL
+     */
+    private static int addUrl(List<String> strings, Map<String, Integer> stringIndexes, String url,
+                              int[] indexes, int index) {
+        if (url == null) {
+            indexes[index++] = NULL_INDEX;
+            indexes[index++] = NULL_INDEX;
+        } else {
+            int prefixLength = url.lastIndexOf('/') + 1;
+            indexes[index++] = addString(strings, stringIndexes, url.substring(0, prefixLength));
+            indexes[index++] = addString(strings, stringIndexes, url.substring(prefixLength));
+        }
+        return index;
+    }
+
+    private static String getString(String[] strings, int index) {
+        return index == NULL_INDEX ? null : strings[index];
+    }
+
+    private static String getUrl(String[] strings, int prefixIndex, int suffixIndex) {
+        return prefixIndex == NULL_INDEX ? null : strings[prefixIndex] + strings[suffixIndex];
+    }
+
+    // Getters and setters
+
+    public List<AppTrack> getTrackList() {
+        return trackList;
+    }
+
+}
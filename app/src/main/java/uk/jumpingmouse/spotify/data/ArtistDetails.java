@@ -0,0 +1,103 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.os.Parcel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The details of an artist which are not needed to list it, i.e. its genres, followers
+ * and popularity, which are fetched for the listed artists in batches.
+ * @author Edmund Johnson
+ */
+public class ArtistDetails {
+
+    private final String id;
+    private final List<String> genres;
+    private final int followers;
+    private final int popularity;
+
+    /**
+     * Public constructor which initialises the artist details.
+     * @param id the Spotify id for the artist
+     * @param genres the genres with which the artist is associated
+     * @param followers the number of followers of the artist
+     * @param popularity the popularity of the artist, from 0 to 100
+     */
+    public ArtistDetails(String id, List<String> genres, int followers, int popularity) {
+        this.id = id;
+        List<String> internedGenres = new ArrayList<>(genres == null ? 0 : genres.size());
+        if (genres != null) {
+            // Genre names are shared by many artists
+            for (String genre : genres) {
+                internedGenres.add(StringInterner.intern(genre));
+            }
+        }
+        this.genres = Collections.unmodifiableList(internedGenres);
+        this.followers = followers;
+        this.popularity = popularity;
+    }
+
+    /**
+     * Creates artist details from a parcel.
+     * @param parcel the parcel
+     * @return the artist details
+     */
+    static ArtistDetails readFromParcel(Parcel parcel) {
+        String id = parcel.readString();
+        List<String> genres = new ArrayList<>();
+        parcel.readStringList(genres);
+        return new ArtistDetails(id, genres, parcel.readInt(), parcel.readInt());
+    }
+
+    /**
+     * Writes the artist details to a parcel.
+     * @param parcel the parcel
+     */
+    void writeToParcel(Parcel parcel) {
+        parcel.writeString(getId());
+        parcel.writeStringList(getGenres());
+        parcel.writeInt(getFollowers());
+        parcel.writeInt(getPopularity());
+    }
+
+    // Getters and setters
+
+    public String getId() {
+        return id;
+    }
+
+    public List<String> getGenres() {
+        return genres;
+    }
+
+    public int getFollowers() {
+        return followers;
+    }
+
+    public int getPopularity() {
+        return popularity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ArtistDetails other = (ArtistDetails) o;
+        return (id == null ? other.id == null : id.equals(other.id))
+                && genres.equals(other.genres)
+                && followers == other.followers
+                && popularity == other.popularity;
+    }
+
+    @Override
+    public int hashCode() {
+        return id == null ? 0 : id.hashCode();
+    }
+
+}
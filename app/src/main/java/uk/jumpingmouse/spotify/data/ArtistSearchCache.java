@@ -0,0 +1,339 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.content.Context;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.jumpingmouse.spotify.util.FileUtil;
+
+/**
+ * A two-tier cache of pages of artist search results, keyed by the normalised search
+ * string, the offset of the page, and the image size and data saving setting for which
+ * the artists' images were chosen.
+ * Recent results are held in an in-memory LRU cache, backed by a size-limited cache
+ * on disk, so that repeating a search does not require a network round trip.
+ * Entries expire once they are older than the time-to-live.
+ * The get and put methods perform disk I/O, so must be run in a background thread.
+ * @author Edmund Johnson
+ */
+public class ArtistSearchCache {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = ArtistSearchCache.class.getSimpleName();
+
+    private static final int MEMORY_CACHE_MAX_ENTRIES = 32;
+    private static final long DISK_CACHE_MAX_BYTES = 512 * 1024;
+    private static final long TIME_TO_LIVE_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String DISK_CACHE_DIR = "artist_search";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int FILE_FORMAT_VERSION = 3;
+
+    private static ArtistSearchCache sInstance;
+
+    private final LruCache<String, Entry> mMemoryCache;
+    private final File mDiskCacheDir;
+
+    private final AtomicInteger mMemoryHitCount = new AtomicInteger();
+    private final AtomicInteger mDiskHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+
+    /**
+     * Returns the process-wide artist search cache, creating it if necessary.
+     * @param context the context
+     * @return the artist search cache
+     */
+    public static synchronized ArtistSearchCache getInstance(Context context) {
+        if (sInstance == null) {
+            File diskCacheDir = new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIR);
+            sInstance = new ArtistSearchCache(diskCacheDir);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor.
+     * @param diskCacheDir the directory in which to store the disk tier of the cache
+     */
+    ArtistSearchCache(File diskCacheDir) {
+        mMemoryCache = new LruCache<>(MEMORY_CACHE_MAX_ENTRIES);
+        mDiskCacheDir = diskCacheDir;
+    }
+
+    /**
+     * Returns the normalised form of a search string, which is used as the cache key,
+     * so that searches differing only in case or spacing share an entry.
+     * @param searchString the search string
+     * @return the normalised search string
+     */
+    public static String normalise(String searchString) {
+        if (searchString == null) {
+            return "";
+        }
+        return searchString.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the cache key for a page of the results for a search string.
+     * The image URLs of the artists depend on the image size and data saving setting,
+     * so a page fetched for one is not returned for another.
+     * @param searchString the search string
+     * @param offset the offset of the page within the results
+     * @param imageSizePx the size in pixels for which the artist images were chosen
+     * @param saveData whether smaller artist images were chosen to save data
+     * @return the cache key
+     */
+    private static String getKey(String searchString, int offset, int imageSizePx, boolean saveData) {
+        return normalise(searchString) + "@" + offset + "/" + imageSizePx + "/" + saveData;
+    }
+
+    /**
+     * Returns a cached page of the results for a search string, if it has not expired.
+     * This method must be run in a background thread.
+     * @param searchString the search string
+     * @param offset the offset of the page within the results
+     * @param imageSizePx the size in pixels for which the artist images are chosen
+     * @param saveData whether smaller artist images are chosen to save data
+     * @return the cached page of artists, or null if there is no unexpired entry
+     */
+    public List<AppArtist> get(String searchString, int offset, int imageSizePx, boolean saveData) {
+        String key = getKey(searchString, offset, imageSizePx, saveData);
+        long now = now();
+
+        Entry entry = mMemoryCache.get(key);
+        if (entry != null) {
+            if (!entry.isExpired(now)) {
+                mMemoryHitCount.incrementAndGet();
+                return entry.artistList;
+            }
+            mMemoryCache.remove(key);
+        }
+
+        entry = readFromDisk(key);
+        if (entry != null) {
+            if (!entry.isExpired(now)) {
+                mDiskHitCount.incrementAndGet();
+                mMemoryCache.put(key, entry);
+                return entry.artistList;
+            }
+            getFile(key).delete();
+        }
+
+        mMissCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Adds a page of the results of a search to both tiers of the cache.
+     * This method must be run in a background thread.
+     * @param searchString the search string
+     * @param offset the offset of the page within the results
+     * @param imageSizePx the size in pixels for which the artist images were chosen
+     * @param saveData whether smaller artist images were chosen to save data
+     * @param artistList the page of artists matching the search string
+     */
+    public void put(String searchString, int offset, int imageSizePx, boolean saveData,
+                    List<AppArtist> artistList) {
+        if (artistList == null) {
+            return;
+        }
+        String key = getKey(searchString, offset, imageSizePx, saveData);
+        Entry entry = new Entry(now(),
+                Collections.unmodifiableList(new ArrayList<>(artistList)));
+        mMemoryCache.put(key, entry);
+        writeToDisk(key, entry);
+        trimDiskCache();
+    }
+
+    /** Removes all entries from both tiers of the cache. */
+    public void clear() {
+        mMemoryCache.evictAll();
+        File[] files = mDiskCacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the current time, against which the age of entries is measured.
+     * Tests override this to control the passage of time.
+     * @return the current time in milliseconds
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    //-------------------------------------------------------------------------------
+    // Statistics
+
+    /**
+     * Returns the number of lookups served from the memory tier.
+     * @return the number of lookups served from the memory tier
+     */
+    public int getMemoryHitCount() {
+        return mMemoryHitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups served from the disk tier.
+     * @return the number of lookups served from the disk tier
+     */
+    public int getDiskHitCount() {
+        return mDiskHitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups which could not be served from the cache.
+     * @return the number of lookups which could not be served from the cache
+     */
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "ArtistSearchCache[memoryHits=%d, diskHits=%d, misses=%d, memoryEntries=%d]",
+                getMemoryHitCount(), getDiskHitCount(), getMissCount(), mMemoryCache.size());
+    }
+
+    //-------------------------------------------------------------------------------
+    // Disk tier
+
+    /**
+     * Returns the file in which the entry for a key is stored.
+     * @param key the cache key
+     * @return the file for the key
+     */
+    private File getFile(String key) {
+        return new File(mDiskCacheDir, FileUtil.hash(key));
+    }
+
+    /**
+     * Reads the entry for a key from disk.
+     * @param key the cache key
+     * @return the entry, or null if there is no valid entry for the key
+     */
+    private Entry readFromDisk(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FILE_FORMAT_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            long timestamp = in.readLong();
+            int size = in.readInt();
+            List<AppArtist> artistList = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                artistList.add(new AppArtist(readString(in), readString(in), readString(in)));
+            }
+            // Record the access, so that the least recently used files are trimmed first
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(timestamp, Collections.unmodifiableList(artistList));
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "IOException while reading artist search cache file: " + e);
+            file.delete();
+            return null;
+        } finally {
+            FileUtil.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the entry for a key to disk.
+     * The entry is written to a temporary file which is then renamed, so that a partly
+     * written file is never read.
+     * @param key the cache key
+     * @param entry the entry
+     */
+    private synchronized void writeToDisk(String key, Entry entry) {
+        if (!mDiskCacheDir.exists() && !mDiskCacheDir.mkdirs()) {
+            Log.w(LOG_TAG, "Could not create artist search cache directory " + mDiskCacheDir);
+            return;
+        }
+        File file = getFile(key);
+        File tempFile = new File(mDiskCacheDir, file.getName() + TEMP_FILE_SUFFIX);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FILE_FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeLong(entry.timestamp);
+            out.writeInt(entry.artistList.size());
+            for (AppArtist artist : entry.artistList) {
+                writeString(out, artist.getId());
+                writeString(out, artist.getName());
+                writeString(out, artist.getImageUrlSmall());
+            }
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "IOException while writing artist search cache file: " + e);
+            tempFile.delete();
+        } finally {
+            FileUtil.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Deletes the least recently used files from the disk tier until its total size
+     * is within the limit.
+     */
+    private synchronized void trimDiskCache() {
+        FileUtil.trimDirectory(mDiskCacheDir, DISK_CACHE_MAX_BYTES, null);
+    }
+
+    //-------------------------------------------------------------------------------
+    // Helper methods
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * A cache entry: the results of a search and the time at which they were fetched.
+     */
+    private static class Entry {
+        private final long timestamp;
+        private final List<AppArtist> artistList;
+
+        Entry(long timestamp, List<AppArtist> artistList) {
+            this.timestamp = timestamp;
+            this.artistList = artistList;
+        }
+
+        boolean isExpired(long now) {
+            return now - timestamp > TIME_TO_LIVE_MS;
+        }
+    }
+
+}
@@ -0,0 +1,358 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import uk.jumpingmouse.spotify.R;
+import uk.jumpingmouse.spotify.net.SpotifyServiceProvider;
+import uk.jumpingmouse.spotify.util.FileUtil;
+import uk.jumpingmouse.spotify.util.TaskScheduler;
+
+/**
+ * A size-limited cache on disk of the audio of track previews, keyed by preview URL,
+ * so that replaying a preview does not fetch it again.
+ * A preview is downloaded into the cache when it is first requested, and can be read
+ * while it is being downloaded, so that playback need not wait for the whole preview.
+ * Once the total size of the cached previews exceeds the limit chosen by the user,
+ * the least recently used previews are deleted.
+ * @author Edmund Johnson
+ */
+public class PreviewCache {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = PreviewCache.class.getSimpleName();
+
+    private static final String DISK_CACHE_DIR = "previews";
+    private static final String PARTIAL_FILE_SUFFIX = ".part";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private static PreviewCache sInstance;
+
+    private final File mCacheDir;
+    private final OkHttpClient mHttpClient;
+    private final Executor mDownloadExecutor;
+    private volatile long mMaxBytes;
+
+    /** The downloads in progress, by preview URL. */
+    private final Map<String, Download> mDownloads = new HashMap<>();
+
+    /** Listener which applies changes to the maximum size of the cache. */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sPreferenceListener;
+
+    /**
+     * Returns the process-wide preview cache, creating it if necessary.
+     * @param context the context
+     * @return the preview cache
+     */
+    public static synchronized PreviewCache getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            final String maxSizeKey = appContext.getString(R.string.pref_preview_cache_size_key);
+            File cacheDir = new File(appContext.getCacheDir(), DISK_CACHE_DIR);
+            sInstance = new PreviewCache(cacheDir, SpotifyServiceProvider.getHttpClient(),
+                    TaskScheduler.getInstance().getNetworkExecutor(TaskScheduler.Priority.VISIBLE),
+                    getMaxBytes(appContext, prefs));
+
+            // The preferences hold only a weak reference to the listener
+            sPreferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    if (maxSizeKey.equals(key)) {
+                        sInstance.setMaxBytes(getMaxBytes(appContext, sharedPreferences));
+                    }
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sPreferenceListener);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the maximum size of the cache chosen by the user.
+     * @param context the context
+     * @param prefs the shared preferences
+     * @return the maximum size of the cache in bytes
+     */
+    private static long getMaxBytes(Context context, SharedPreferences prefs) {
+        String maxMegabytes = prefs.getString(context.getString(R.string.pref_preview_cache_size_key),
+                context.getString(R.string.pref_preview_cache_size_default));
+        try {
+            return Long.parseLong(maxMegabytes) * BYTES_PER_MEGABYTE;
+        } catch (NumberFormatException e) {
+            return Long.parseLong(context.getString(R.string.pref_preview_cache_size_default)) * BYTES_PER_MEGABYTE;
+        }
+    }
+
+    /**
+     * Constructor.
+     * The HTTP client and executor are supplied so that the cache can be exercised
+     * against a local stand-in for the preview server.
+     * @param cacheDir the directory in which to store the cached previews
+     * @param httpClient the HTTP client with which to download previews
+     * @param downloadExecutor the executor on which to run downloads
+     * @param maxBytes the maximum total size of the cached previews
+     */
+    PreviewCache(File cacheDir, OkHttpClient httpClient, Executor downloadExecutor, long maxBytes) {
+        mCacheDir = cacheDir;
+        mHttpClient = httpClient;
+        mDownloadExecutor = downloadExecutor;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Sets the maximum total size of the cached previews, deleting the least recently
+     * used previews if the cache is now too large.
+     * @param maxBytes the maximum total size of the cached previews
+     */
+    public void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+        mDownloadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                trim();
+            }
+        });
+    }
+
+    /**
+     * Returns the file containing a preview, if it has been downloaded in full.
+     * @param previewUrl the preview URL
+     * @return the file containing the preview, or null if it is not in the cache
+     */
+    public File getCachedFile(String previewUrl) {
+        File file = getFile(previewUrl);
+        if (!file.exists()) {
+            return null;
+        }
+        // Record the access, so that the least recently used previews are deleted first
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Returns the download of a preview, starting it if it is not already in progress.
+     * The preview should first be looked for in the cache, using {@link #getCachedFile}.
+     * @param previewUrl the preview URL
+     * @return the download of the preview
+     */
+    public Download openDownload(final String previewUrl) {
+        synchronized (mDownloads) {
+            Download download = mDownloads.get(previewUrl);
+            File file = getFile(previewUrl);
+            if (download == null && file.exists()) {
+                // The preview finished downloading since it was looked for in the cache
+                return Download.completed(file);
+            }
+            if (download == null) {
+                final Download newDownload = new Download(
+                        new File(mCacheDir, file.getName() + PARTIAL_FILE_SUFFIX), file);
+                mDownloads.put(previewUrl, newDownload);
+                mDownloadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        download(previewUrl, newDownload);
+                    }
+                });
+                download = newDownload;
+            }
+            return download;
+        }
+    }
+
+    /**
+     * Downloads a preview into the cache.
+     * @param previewUrl the preview URL
+     * @param download the download
+     */
+    private void download(String previewUrl, Download download) {
+        boolean success = false;
+        InputStream in = null;
+        FileOutputStream out = null;
+        try {
+            if (!mCacheDir.exists() && !mCacheDir.mkdirs()) {
+                throw new IOException("Could not create preview cache directory " + mCacheDir);
+            }
+            Request request = new Request.Builder().url(previewUrl).build();
+            Response response = mHttpClient.newCall(request).execute();
+            ResponseBody body = response.body();
+            if (!response.isSuccessful()) {
+                body.close();
+                throw new IOException("Unexpected response code " + response.code());
+            }
+            in = body.byteStream();
+            // Each write goes straight to the file, so that it can be read as soon as it is written
+            out = new FileOutputStream(download.mPartialFile);
+            download.onStarted(body.contentLength());
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                download.onBytesWritten(count);
+            }
+            out.close();
+            out = null;
+            success = true;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "IOException while downloading preview " + previewUrl + ": " + e);
+        } finally {
+            FileUtil.closeQuietly(in);
+            FileUtil.closeQuietly(out);
+            // The partial file is renamed before the download is forgotten, so that a reader
+            // arriving in between finds the complete file rather than starting another download
+            synchronized (mDownloads) {
+                download.onFinished(success);
+                mDownloads.remove(previewUrl);
+            }
+        }
+        if (success) {
+            trim();
+        }
+    }
+
+    /**
+     * Deletes the least recently used previews until the cache is within its maximum size.
+     * Previews which are being downloaded are not deleted.
+     */
+    private synchronized void trim() {
+        FileUtil.trimDirectory(mCacheDir, mMaxBytes, new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return !file.getName().endsWith(PARTIAL_FILE_SUFFIX);
+            }
+        });
+    }
+
+    /**
+     * Returns the file in which a preview is cached.
+     * @param previewUrl the preview URL
+     * @return the file for the preview
+     */
+    private File getFile(String previewUrl) {
+        return new File(mCacheDir, FileUtil.hash(previewUrl));
+    }
+
+    //-------------------------------------------------------------------------------
+    /**
+     * The download of a preview into the cache, which can be read while it is in progress.
+     * The preview is written to a partial file, which is renamed once it is complete.
+     */
+    public static class Download {
+        private final File mPartialFile;
+        private final File mCompleteFile;
+        private File mFile;
+
+        /** The content length, or -1 if it is unknown. */
+        private long mContentLength = -1;
+        private long mBytesWritten = 0;
+        private boolean mStarted = false;
+        private boolean mFinished = false;
+        private boolean mFailed = false;
+
+        Download(File partialFile, File completeFile) {
+            mPartialFile = partialFile;
+            mCompleteFile = completeFile;
+            mFile = partialFile;
+        }
+
+        /**
+         * Returns a download which has already finished, of a preview which is in the cache.
+         * @param completeFile the file containing the preview
+         * @return the finished download
+         */
+        private static Download completed(File completeFile) {
+            Download download = new Download(completeFile, completeFile);
+            download.mContentLength = completeFile.length();
+            download.mBytesWritten = download.mContentLength;
+            download.mStarted = true;
+            download.mFinished = true;
+            return download;
+        }
+
+        private synchronized void onStarted(long contentLength) {
+            mContentLength = contentLength;
+            mStarted = true;
+            notifyAll();
+        }
+
+        private synchronized void onBytesWritten(int count) {
+            mBytesWritten += count;
+            notifyAll();
+        }
+
+        private synchronized void onFinished(boolean success) {
+            if (success && mPartialFile.renameTo(mCompleteFile)) {
+                mFile = mCompleteFile;
+            } else {
+                // Readers which have already opened the partial file can continue to read it
+                mFailed = !success;
+                mPartialFile.delete();
+            }
+            mFinished = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the download to start, and returns its content length.
+         * @return the content length in bytes, or -1 if it is unknown
+         * @throws IOException if the download failed
+         * @throws InterruptedException if the thread was interrupted while waiting
+         */
+        public synchronized long awaitContentLength() throws IOException, InterruptedException {
+            while (!mStarted && !mFinished) {
+                wait();
+            }
+            if (mFailed) {
+                throw new IOException("Preview download failed");
+            }
+            return mContentLength;
+        }
+
+        /**
+         * Opens the downloaded preview for reading, which may be done before the download
+         * is complete.
+         * @return the file containing the preview, open for reading
+         * @throws IOException if the file could not be opened
+         */
+        public synchronized RandomAccessFile openForReading() throws IOException {
+            return new RandomAccessFile(mFile, "r");
+        }
+
+        /**
+         * Waits until the byte at a position has been downloaded, or the download has finished.
+         * @param position the position of the byte
+         * @return the number of bytes which have been downloaded, which is no greater than the
+         *         position only if the download has finished
+         * @throws IOException if the download failed before the byte was downloaded
+         * @throws InterruptedException if the thread was interrupted while waiting
+         */
+        public synchronized long awaitBytes(long position) throws IOException, InterruptedException {
+            while (mBytesWritten <= position && !mFinished) {
+                wait();
+            }
+            if (mFailed && mBytesWritten <= position) {
+                throw new IOException("Preview download failed");
+            }
+            return mBytesWritten;
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package uk.jumpingmouse.spotify.data;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A pool of canonical instances of strings, so that equal strings held by many model
+ * objects, e.g. the artist and album names and image URLs of a list of tracks, share a
+ * single instance, rather than each object retaining its own copy.
+ * Strings are held weakly, so a string leaves the pool once no model object holds it.
+ * The pool is bounded; once it is full, strings which are not in it are not pooled.
+ * @author Edmund Johnson
+ */
+public class StringInterner {
+
+    /** The maximum number of strings in the pool. */
+    private static final int MAX_POOL_SIZE = 8192;
+
+    /** The pooled strings, each of which maps to a weak reference to itself. */
+    private static final Map<String, WeakReference<String>> sPool = new WeakHashMap<>();
+
+    /** Private constructor to prevent instantiation. */
+    private StringInterner() {
+    }
+
+    /**
+     * Returns the canonical instance of a string.
+     * @param string the string, which may be null
+     * @return the pooled instance equal to the string, or the string itself if there is
+     *         none, or null if the string is null
+     */
+    public static String intern(String string) {
+        if (string == null) {
+            return null;
+        }
+        synchronized (sPool) {
+            WeakReference<String> reference = sPool.get(string);
+            String pooled = (reference == null) ? null : reference.get();
+            if (pooled != null) {
+                return pooled;
+            }
+            if (sPool.size() < MAX_POOL_SIZE) {
+                sPool.put(string, new WeakReference<>(string));
+            }
+            return string;
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package uk.jumpingmouse.spotify.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A comparison of an artist's top tracks in several countries, merged into a single
+ * ranking, together with the position of each track in each country.
+ * Tracks are ranked by the sum of their positions, a track which is not in a country's
+ * top tracks counting as one place below the bottom of that country's list, so that
+ * a track which is popular everywhere ranks above one which tops a single country.
+ * Ties are broken by the best position, then by the order of the countries.
+ * @author Edmund Johnson
+ */
+public class TopTrackComparison {
+
+    /** The value of a position for a track which is not in a country's top tracks. */
+    public static final int NOT_RANKED = 0;
+
+    private final List<String> countryCodes;
+    private final List<AppTrack> rankedTracks;
+    /** The positions of each track, by track id, in the order of the country codes. */
+    private final Map<String, int[]> positionsByTrackId;
+
+    /**
+     * Public constructor which merges the top tracks of several countries.
+     * @param countryCodes the country codes, in display order
+     * @param tracksByCountry the top tracks of each country, in order; a country with
+     *                        no entry is treated as having no top tracks
+     */
+    public TopTrackComparison(List<String> countryCodes, Map<String, List<AppTrack>> tracksByCountry) {
+        this.countryCodes = Collections.unmodifiableList(new ArrayList<>(countryCodes));
+
+        // Collect the distinct tracks, in the order in which they are first found,
+        // together with their position in each country
+        final Map<String, AppTrack> tracksById = new LinkedHashMap<>();
+        final Map<String, int[]> positions = new HashMap<>();
+        int longestList = 0;
+        for (int country = 0; country < countryCodes.size(); country++) {
+            List<AppTrack> trackList = tracksByCountry.get(countryCodes.get(country));
+            if (trackList == null) {
+                continue;
+            }
+            longestList = Math.max(longestList, trackList.size());
+            for (int i = 0; i < trackList.size(); i++) {
+                AppTrack track = trackList.get(i);
+                if (track.getId() == null) {
+                    continue;
+                }
+                if (!tracksById.containsKey(track.getId())) {
+                    tracksById.put(track.getId(), track);
+                    positions.put(track.getId(), new int[countryCodes.size()]);
+                }
+                int[] trackPositions = positions.get(track.getId());
+                if (trackPositions[country] == NOT_RANKED) {
+                    trackPositions[country] = i + 1;
+                }
+            }
+        }
+
+        // Rank the tracks by the sum of their positions, then by their best position
+        final int unrankedPosition = longestList + 1;
+        final Map<String, Integer> firstFound = new HashMap<>();
+        for (String trackId : tracksById.keySet()) {
+            firstFound.put(trackId, firstFound.size());
+        }
+        List<AppTrack> ranked = new ArrayList<>(tracksById.values());
+        Collections.sort(ranked, new Comparator<AppTrack>() {
+            @Override
+            public int compare(AppTrack a, AppTrack b) {
+                int[] positionsA = positions.get(a.getId());
+                int[] positionsB = positions.get(b.getId());
+                int result = compareInts(sum(positionsA, unrankedPosition), sum(positionsB, unrankedPosition));
+                if (result == 0) {
+                    result = compareInts(best(positionsA, unrankedPosition), best(positionsB, unrankedPosition));
+                }
+                if (result == 0) {
+                    result = compareInts(firstFound.get(a.getId()), firstFound.get(b.getId()));
+                }
+                return result;
+            }
+        });
+        this.rankedTracks = Collections.unmodifiableList(ranked);
+        this.positionsByTrackId = positions;
+    }
+
+    /**
+     * Returns the country codes compared.
+     * @return the country codes, in display order
+     */
+    public List<String> getCountryCodes() {
+        return countryCodes;
+    }
+
+    /**
+     * Returns the distinct tracks of all the countries, in ranked order.
+     * @return the ranked tracks
+     */
+    public List<AppTrack> getRankedTracks() {
+        return rankedTracks;
+    }
+
+    /**
+     * Returns the position of a track in a country's top tracks.
+     * @param trackId the track id
+     * @param countryCode the country code
+     * @return the position, starting at 1, or {@link #NOT_RANKED} if the track is not
+     *         in the country's top tracks
+     */
+    public int getPosition(String trackId, String countryCode) {
+        int[] positions = positionsByTrackId.get(trackId);
+        int country = countryCodes.indexOf(countryCode);
+        if (positions == null || country == -1) {
+            return NOT_RANKED;
+        }
+        return positions[country];
+    }
+
+    private static int sum(int[] positions, int unrankedPosition) {
+        int sum = 0;
+        for (int position : positions) {
+            sum += (position == NOT_RANKED) ? unrankedPosition : position;
+        }
+        return sum;
+    }
+
+    private static int best(int[] positions, int unrankedPosition) {
+        int best = unrankedPosition;
+        for (int position : positions) {
+            if (position != NOT_RANKED && position < best) {
+                best = position;
+            }
+        }
+        return best;
+    }
+
+    private static int compareInts(int a, int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+}
@@ -0,0 +1,207 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.jumpingmouse.spotify.data.TrackContract.TopTrackEntry;
+import uk.jumpingmouse.spotify.data.TrackContract.TopTrackFetchEntry;
+
+/**
+ * A persistent store of the top tracks for artists, keyed by artist and country,
+ * so that top tracks can be displayed without waiting for the network, or when offline.
+ * All methods perform database I/O, so must be run in a background thread.
+ * @author Edmund Johnson
+ */
+public class TopTrackStore {
+
+    private static final String KEY_SELECTION = TopTrackEntry.COLUMN_ARTIST_ID + " = ? AND "
+            + TopTrackEntry.COLUMN_COUNTRY_CODE + " = ?";
+
+    /** The columns holding a track, which are shared with the stored track queues. */
+    static final String[] TRACK_COLUMNS = {
+            TopTrackEntry.COLUMN_TRACK_ID,
+            TopTrackEntry.COLUMN_TRACK_NAME,
+            TopTrackEntry.COLUMN_ALBUM_NAME,
+            TopTrackEntry.COLUMN_IMAGE_URL_SMALL,
+            TopTrackEntry.COLUMN_IMAGE_URL_LARGE,
+            TopTrackEntry.COLUMN_PREVIEW_URL,
+            TopTrackEntry.COLUMN_DURATION,
+            TopTrackEntry.COLUMN_PREVIEW_DURATION,
+            TopTrackEntry.COLUMN_ARTIST_NAME
+    };
+    private static final int COL_TRACK_ID = 0;
+    private static final int COL_TRACK_NAME = 1;
+    private static final int COL_ALBUM_NAME = 2;
+    private static final int COL_IMAGE_URL_SMALL = 3;
+    private static final int COL_IMAGE_URL_LARGE = 4;
+    private static final int COL_PREVIEW_URL = 5;
+    private static final int COL_DURATION = 6;
+    private static final int COL_PREVIEW_DURATION = 7;
+    private static final int COL_ARTIST_NAME = 8;
+
+    private static TopTrackStore sInstance;
+
+    private final TrackDbHelper mDbHelper;
+
+    /**
+     * Returns the process-wide top track store, creating it if necessary.
+     * @param context the context
+     * @return the top track store
+     */
+    public static synchronized TopTrackStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TopTrackStore(TrackDbHelper.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    private TopTrackStore(TrackDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Returns the stored top tracks for an artist in a country.
+     * @param artistId the artist id
+     * @param countryCode the country code
+     * @return the stored top tracks, or null if the top tracks for the artist in
+     *         the country have never been stored
+     */
+    public StoredTrackList get(String artistId, String countryCode) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        String[] selectionArgs = {artistId, countryCode};
+
+        long fetchedTime;
+        Cursor cursor = db.query(TopTrackFetchEntry.TABLE_NAME,
+                new String[] {TopTrackFetchEntry.COLUMN_FETCHED_TIME},
+                KEY_SELECTION, selectionArgs, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            fetchedTime = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+
+        List<AppTrack> trackList = new ArrayList<>();
+        cursor = db.query(TopTrackEntry.TABLE_NAME, TRACK_COLUMNS,
+                KEY_SELECTION, selectionArgs, null, null, TopTrackEntry.COLUMN_POSITION);
+        try {
+            while (cursor.moveToNext()) {
+                trackList.add(readTrack(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return new StoredTrackList(trackList, fetchedTime);
+    }
+
+    /**
+     * Replaces the stored top tracks for an artist in a country.
+     * @param artistId the artist id
+     * @param countryCode the country code
+     * @param trackList the top tracks for the artist in the country
+     */
+    public void put(String artistId, String countryCode, List<AppTrack> trackList) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        String[] selectionArgs = {artistId, countryCode};
+
+        db.beginTransaction();
+        try {
+            db.delete(TopTrackEntry.TABLE_NAME, KEY_SELECTION, selectionArgs);
+
+            ContentValues values = new ContentValues();
+            for (int position = 0; position < trackList.size(); position++) {
+                AppTrack track = trackList.get(position);
+                values.clear();
+                values.put(TopTrackEntry.COLUMN_ARTIST_ID, artistId);
+                values.put(TopTrackEntry.COLUMN_COUNTRY_CODE, countryCode);
+                values.put(TopTrackEntry.COLUMN_POSITION, position);
+                putTrack(values, track);
+                db.insert(TopTrackEntry.TABLE_NAME, null, values);
+            }
+
+            values.clear();
+            values.put(TopTrackFetchEntry.COLUMN_ARTIST_ID, artistId);
+            values.put(TopTrackFetchEntry.COLUMN_COUNTRY_CODE, countryCode);
+            values.put(TopTrackFetchEntry.COLUMN_FETCHED_TIME, System.currentTimeMillis());
+            db.insert(TopTrackFetchEntry.TABLE_NAME, null, values);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Reads a track from the current row of a cursor over {@link #TRACK_COLUMNS}.
+     * @param cursor the cursor
+     * @return the track
+     */
+    static AppTrack readTrack(Cursor cursor) {
+        return new AppTrack(
+                cursor.getString(COL_TRACK_ID),
+                cursor.getString(COL_TRACK_NAME),
+                cursor.getString(COL_ALBUM_NAME),
+                cursor.getString(COL_IMAGE_URL_SMALL),
+                cursor.getString(COL_IMAGE_URL_LARGE),
+                cursor.getString(COL_PREVIEW_URL),
+                cursor.getLong(COL_DURATION),
+                cursor.getLong(COL_PREVIEW_DURATION),
+                cursor.getString(COL_ARTIST_NAME));
+    }
+
+    /**
+     * Puts the columns of a track into a set of values.
+     * @param values the values
+     * @param track the track
+     */
+    static void putTrack(ContentValues values, AppTrack track) {
+        values.put(TopTrackEntry.COLUMN_TRACK_ID, track.getId());
+        values.put(TopTrackEntry.COLUMN_TRACK_NAME, track.getTrackName());
+        values.put(TopTrackEntry.COLUMN_ALBUM_NAME, track.getAlbumName());
+        values.put(TopTrackEntry.COLUMN_IMAGE_URL_SMALL, track.getImageUrlSmall());
+        values.put(TopTrackEntry.COLUMN_IMAGE_URL_LARGE, track.getImageUrlLarge());
+        values.put(TopTrackEntry.COLUMN_PREVIEW_URL, track.getPreviewUrl());
+        values.put(TopTrackEntry.COLUMN_DURATION, track.getDuration());
+        values.put(TopTrackEntry.COLUMN_PREVIEW_DURATION, track.getPreviewDuration());
+        values.put(TopTrackEntry.COLUMN_ARTIST_NAME, track.getArtistName());
+    }
+
+    /**
+     * The top tracks for an artist in a country, as stored, with the time at which they were fetched.
+     */
+    public static class StoredTrackList {
+        private final List<AppTrack> trackList;
+        private final long fetchedTime;
+
+        StoredTrackList(List<AppTrack> trackList, long fetchedTime) {
+            this.trackList = trackList;
+            this.fetchedTime = fetchedTime;
+        }
+
+        public List<AppTrack> getTrackList() {
+            return trackList;
+        }
+
+        public long getFetchedTime() {
+            return fetchedTime;
+        }
+
+        /**
+         * Returns whether the tracks were fetched recently enough not to need refreshing.
+         * @param maxAgeMs the maximum age in milliseconds of tracks which are fresh
+         * @return true if the tracks are fresh, false otherwise
+         */
+        public boolean isFresh(long maxAgeMs) {
+            long age = System.currentTimeMillis() - fetchedTime;
+            return age >= 0 && age <= maxAgeMs;
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.provider.BaseColumns;
+
+/**
+ * Defines the table and column names for the local track database.
+ * @author Edmund Johnson
+ */
+public class TrackContract {
+
+    /** Private constructor to prevent instantiation. */
+    private TrackContract() {
+    }
+
+    /**
+     * The time at which the top tracks for an artist in a country were last fetched.
+     * There is one row for each (artist, country) which has been fetched, even if
+     * the artist had no top tracks.
+     */
+    public static final class TopTrackFetchEntry implements BaseColumns {
+        public static final String TABLE_NAME = "top_track_fetch";
+
+        /** The Spotify id of the artist. */
+        public static final String COLUMN_ARTIST_ID = "artist_id";
+        /** The country code used when fetching the top tracks. */
+        public static final String COLUMN_COUNTRY_CODE = "country_code";
+        /** The time at which the top tracks were fetched, in milliseconds since the epoch. */
+        public static final String COLUMN_FETCHED_TIME = "fetched_time";
+    }
+
+    /**
+     * The top tracks for an artist in a country.
+     */
+    public static final class TopTrackEntry implements BaseColumns {
+        public static final String TABLE_NAME = "top_track";
+
+        /** The Spotify id of the artist. */
+        public static final String COLUMN_ARTIST_ID = "artist_id";
+        /** The country code used when fetching the top tracks. */
+        public static final String COLUMN_COUNTRY_CODE = "country_code";
+        /** The position of the track in the artist's top tracks, starting at 0. */
+        public static final String COLUMN_POSITION = "position";
+
+        public static final String COLUMN_TRACK_ID = "track_id";
+        public static final String COLUMN_TRACK_NAME = "track_name";
+        public static final String COLUMN_ALBUM_NAME = "album_name";
+        public static final String COLUMN_IMAGE_URL_SMALL = "image_url_small";
+        public static final String COLUMN_IMAGE_URL_LARGE = "image_url_large";
+        public static final String COLUMN_PREVIEW_URL = "preview_url";
+        public static final String COLUMN_DURATION = "duration";
+        public static final String COLUMN_PREVIEW_DURATION = "preview_duration";
+        public static final String COLUMN_ARTIST_NAME = "artist_name";
+    }
+
+    /**
+     * A snapshot of a track queue passed to the player, so that the queue can be read
+     * back exactly as it was if the process is killed.
+     */
+    public static final class QueueEntry implements BaseColumns {
+        public static final String TABLE_NAME = "track_queue";
+
+        /** The queue id, as issued by the track queue repository. */
+        public static final String COLUMN_QUEUE_ID = "queue_id";
+        /** The time at which the queue was stored, in milliseconds since the epoch. */
+        public static final String COLUMN_STORED_TIME = "stored_time";
+    }
+
+    /**
+     * The tracks of a stored track queue.
+     * The track columns have the same names as those of {@link TopTrackEntry}.
+     */
+    public static final class QueueTrackEntry implements BaseColumns {
+        public static final String TABLE_NAME = "track_queue_track";
+
+        /** The queue id, as issued by the track queue repository. */
+        public static final String COLUMN_QUEUE_ID = "queue_id";
+        /** The position of the track in the queue, starting at 0. */
+        public static final String COLUMN_POSITION = "position";
+    }
+
+}
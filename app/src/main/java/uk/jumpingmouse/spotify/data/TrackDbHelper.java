@@ -0,0 +1,100 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import uk.jumpingmouse.spotify.data.TrackContract.QueueEntry;
+import uk.jumpingmouse.spotify.data.TrackContract.QueueTrackEntry;
+import uk.jumpingmouse.spotify.data.TrackContract.TopTrackEntry;
+import uk.jumpingmouse.spotify.data.TrackContract.TopTrackFetchEntry;
+
+/**
+ * Manages the local database of tracks.
+ * @author Edmund Johnson
+ */
+public class TrackDbHelper extends SQLiteOpenHelper {
+
+    private static final int DATABASE_VERSION = 2;
+    private static final String DATABASE_NAME = "track.db";
+
+    private static TrackDbHelper sInstance;
+
+    /**
+     * Returns the process-wide database helper, creating it if necessary.
+     * @param context the context
+     * @return the database helper
+     */
+    public static synchronized TrackDbHelper getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TrackDbHelper(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private TrackDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TopTrackFetchEntry.TABLE_NAME + " ("
+                + TopTrackFetchEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + TopTrackFetchEntry.COLUMN_ARTIST_ID + " TEXT NOT NULL, "
+                + TopTrackFetchEntry.COLUMN_COUNTRY_CODE + " TEXT NOT NULL, "
+                + TopTrackFetchEntry.COLUMN_FETCHED_TIME + " INTEGER NOT NULL, "
+                + "UNIQUE (" + TopTrackFetchEntry.COLUMN_ARTIST_ID + ", "
+                + TopTrackFetchEntry.COLUMN_COUNTRY_CODE + ") ON CONFLICT REPLACE);");
+
+        db.execSQL("CREATE TABLE " + TopTrackEntry.TABLE_NAME + " ("
+                + TopTrackEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + TopTrackEntry.COLUMN_ARTIST_ID + " TEXT NOT NULL, "
+                + TopTrackEntry.COLUMN_COUNTRY_CODE + " TEXT NOT NULL, "
+                + TopTrackEntry.COLUMN_POSITION + " INTEGER NOT NULL, "
+                + TopTrackEntry.COLUMN_TRACK_ID + " TEXT, "
+                + TopTrackEntry.COLUMN_TRACK_NAME + " TEXT, "
+                + TopTrackEntry.COLUMN_ALBUM_NAME + " TEXT, "
+                + TopTrackEntry.COLUMN_IMAGE_URL_SMALL + " TEXT, "
+                + TopTrackEntry.COLUMN_IMAGE_URL_LARGE + " TEXT, "
+                + TopTrackEntry.COLUMN_PREVIEW_URL + " TEXT, "
+                + TopTrackEntry.COLUMN_DURATION + " INTEGER NOT NULL, "
+                + TopTrackEntry.COLUMN_PREVIEW_DURATION + " INTEGER NOT NULL, "
+                + TopTrackEntry.COLUMN_ARTIST_NAME + " TEXT, "
+                + "UNIQUE (" + TopTrackEntry.COLUMN_ARTIST_ID + ", "
+                + TopTrackEntry.COLUMN_COUNTRY_CODE + ", "
+                + TopTrackEntry.COLUMN_POSITION + ") ON CONFLICT REPLACE);");
+
+        db.execSQL("CREATE TABLE " + QueueEntry.TABLE_NAME + " ("
+                + QueueEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + QueueEntry.COLUMN_QUEUE_ID + " TEXT NOT NULL, "
+                + QueueEntry.COLUMN_STORED_TIME + " INTEGER NOT NULL, "
+                + "UNIQUE (" + QueueEntry.COLUMN_QUEUE_ID + ") ON CONFLICT REPLACE);");
+
+        db.execSQL("CREATE TABLE " + QueueTrackEntry.TABLE_NAME + " ("
+                + QueueTrackEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + QueueTrackEntry.COLUMN_QUEUE_ID + " TEXT NOT NULL, "
+                + QueueTrackEntry.COLUMN_POSITION + " INTEGER NOT NULL, "
+                + TopTrackEntry.COLUMN_TRACK_ID + " TEXT, "
+                + TopTrackEntry.COLUMN_TRACK_NAME + " TEXT, "
+                + TopTrackEntry.COLUMN_ALBUM_NAME + " TEXT, "
+                + TopTrackEntry.COLUMN_IMAGE_URL_SMALL + " TEXT, "
+                + TopTrackEntry.COLUMN_IMAGE_URL_LARGE + " TEXT, "
+                + TopTrackEntry.COLUMN_PREVIEW_URL + " TEXT, "
+                + TopTrackEntry.COLUMN_DURATION + " INTEGER NOT NULL, "
+                + TopTrackEntry.COLUMN_PREVIEW_DURATION + " INTEGER NOT NULL, "
+                + TopTrackEntry.COLUMN_ARTIST_NAME + " TEXT, "
+                + "UNIQUE (" + QueueTrackEntry.COLUMN_QUEUE_ID + ", "
+                + QueueTrackEntry.COLUMN_POSITION + ") ON CONFLICT REPLACE);");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The database only caches data fetched from Spotify, so it can simply be recreated
+        db.execSQL("DROP TABLE IF EXISTS " + TopTrackFetchEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + TopTrackEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + QueueEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + QueueTrackEntry.TABLE_NAME);
+        onCreate(db);
+    }
+
+}
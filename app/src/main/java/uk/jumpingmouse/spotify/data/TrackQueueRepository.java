@@ -0,0 +1,195 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import uk.jumpingmouse.spotify.util.FileUtil;
+import uk.jumpingmouse.spotify.util.TaskScheduler;
+
+/**
+ * An in-process repository of the track lists which can be played, keyed by a queue id,
+ * so that only the queue id, rather than the whole list, need be passed to the player
+ * in an intent or fragment arguments.
+ * A snapshot of each queue is also written to the track queue store, so if the process
+ * has been killed since the queue was put into the repository, the queue is read back
+ * from the store exactly as it was, even if the top tracks have been refreshed since.
+ * The queue id identifies the snapshot.
+ * Only the most recently used queues are kept in memory.
+ * @author Edmund Johnson
+ */
+public class TrackQueueRepository {
+
+    /** The maximum number of queues kept in memory. */
+    private static final int MAX_QUEUES = 4;
+    /** The separator of the artist id and country code in a queue id. */
+    private static final String QUEUE_ID_SEPARATOR = "/";
+    /** The prefix of the queue id of a discography. */
+    private static final String DISCOGRAPHY_QUEUE_ID_PREFIX = "discography:";
+    /** The prefix of the queue id of a comparison of top tracks in several countries. */
+    private static final String COMPARISON_QUEUE_ID_PREFIX = "comparison:";
+    /** The separator of the country codes in the queue id of a comparison. */
+    private static final String COUNTRY_CODE_SEPARATOR = ",";
+    /** The separator of the snapshot id in a queue id. */
+    private static final String SNAPSHOT_ID_SEPARATOR = "#";
+    /** The number of hex digits of the hash of a queue's tracks which identify its snapshot. */
+    private static final int SNAPSHOT_ID_LENGTH = 16;
+
+    private static TrackQueueRepository sInstance;
+
+    private final TrackQueueStore mTrackQueueStore;
+    /** The executor on which snapshots of queues are written to the store. */
+    private final Executor mStoreExecutor;
+
+    /** The queues in memory, in access order, so that the least recently used can be removed. */
+    private final Map<String, List<AppTrack>> mQueues =
+            new LinkedHashMap<String, List<AppTrack>>(MAX_QUEUES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<AppTrack>> eldest) {
+                    return size() > MAX_QUEUES;
+                }
+            };
+
+    /**
+     * Returns the process-wide track queue repository, creating it if necessary.
+     * @param context the context
+     * @return the track queue repository
+     */
+    public static synchronized TrackQueueRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TrackQueueRepository(TrackQueueStore.getInstance(context),
+                    TaskScheduler.getInstance().getUiWorkExecutor());
+        }
+        return sInstance;
+    }
+
+    private TrackQueueRepository(TrackQueueStore trackQueueStore, Executor storeExecutor) {
+        mTrackQueueStore = trackQueueStore;
+        mStoreExecutor = storeExecutor;
+    }
+
+    /**
+     * Puts the top tracks for an artist in a country into the repository, storing a
+     * snapshot of them so that they can be read back if the process is killed.
+     * @param artistId the artist id
+     * @param countryCode the country code
+     * @param trackList the top tracks for the artist in the country
+     * @return the queue id of the tracks
+     */
+    public String putTopTracks(String artistId, String countryCode, List<AppTrack> trackList) {
+        return putSnapshot(artistId + QUEUE_ID_SEPARATOR + countryCode, trackList);
+    }
+
+    /**
+     * Puts the discography of an artist in a country into the repository, storing a
+     * snapshot of it so that it can be read back if the process is killed.
+     * @param artistId the artist id
+     * @param countryCode the country code
+     * @param trackList the tracks of the artist's albums available in the country
+     * @return the queue id of the tracks
+     */
+    public String putDiscography(String artistId, String countryCode, List<AppTrack> trackList) {
+        return putSnapshot(DISCOGRAPHY_QUEUE_ID_PREFIX + artistId + QUEUE_ID_SEPARATOR + countryCode, trackList);
+    }
+
+    /**
+     * Puts a comparison of the top tracks of an artist in several countries into the
+     * repository, storing a snapshot of it so that it can be read back if the process is killed.
+     * @param artistId the artist id
+     * @param countryCodes the country codes compared
+     * @param trackList the top tracks for the artist in the countries, in ranked order
+     * @return the queue id of the tracks
+     */
+    public String putCountryComparison(String artistId, List<String> countryCodes, List<AppTrack> trackList) {
+        return putSnapshot(COMPARISON_QUEUE_ID_PREFIX + artistId + QUEUE_ID_SEPARATOR
+                + TextUtils.join(COUNTRY_CODE_SEPARATOR, countryCodes), trackList);
+    }
+
+    /**
+     * Returns a queue, if it is in memory.
+     * This method can be run in the UI thread.
+     * @param queueId the queue id
+     * @return the tracks in the queue, or null if the queue is not in memory
+     */
+    public List<AppTrack> getIfPresent(String queueId) {
+        synchronized (mQueues) {
+            return mQueues.get(queueId);
+        }
+    }
+
+    /**
+     * Returns a queue, reading it from the track queue store if it is not in memory.
+     * This method may perform database I/O, so must be run in a background thread.
+     * @param queueId the queue id
+     * @return the tracks in the queue, or null if the queue could not be found
+     */
+    public List<AppTrack> get(String queueId) {
+        List<AppTrack> trackList = getIfPresent(queueId);
+        if (trackList != null || queueId == null) {
+            return trackList;
+        }
+        trackList = mTrackQueueStore.get(queueId);
+        if (trackList != null) {
+            synchronized (mQueues) {
+                mQueues.put(queueId, trackList);
+            }
+        }
+        return trackList;
+    }
+
+    /**
+     * Puts a queue into the repository, storing a snapshot of it unless the same
+     * snapshot has already been stored.
+     * @param contentId the id of the contents of the queue, e.g. an artist id and country code
+     * @param trackList the tracks in the queue
+     * @return the queue id of the snapshot
+     */
+    private String putSnapshot(String contentId, List<AppTrack> trackList) {
+        String queueId = createSnapshotId(contentId, trackList);
+        boolean stored;
+        synchronized (mQueues) {
+            // A snapshot still in memory has already been stored
+            stored = (mQueues.put(queueId, trackList) != null);
+        }
+        if (!stored) {
+            store(queueId, trackList);
+        }
+        return queueId;
+    }
+
+    /**
+     * Returns the id of a snapshot of a queue, i.e. the id of its contents followed by
+     * a hash of its tracks, so that a queue whose tracks have changed gets a new id,
+     * while putting the same tracks again gives the same id.
+     * @param contentId the id of the contents of the queue, e.g. an artist id and country code
+     * @param trackList the tracks in the queue
+     * @return the queue id
+     */
+    private static String createSnapshotId(String contentId, List<AppTrack> trackList) {
+        StringBuilder trackIds = new StringBuilder();
+        for (AppTrack track : trackList) {
+            trackIds.append(track.getId()).append(QUEUE_ID_SEPARATOR);
+        }
+        String hash = FileUtil.hash(trackIds.toString());
+        return contentId + SNAPSHOT_ID_SEPARATOR + hash.substring(0, Math.min(hash.length(), SNAPSHOT_ID_LENGTH));
+    }
+
+    /**
+     * Writes a snapshot of a queue to the track queue store, in a background thread.
+     * @param queueId the queue id
+     * @param trackList the tracks in the queue
+     */
+    private void store(final String queueId, final List<AppTrack> trackList) {
+        mStoreExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mTrackQueueStore.put(queueId, trackList);
+            }
+        });
+    }
+
+}
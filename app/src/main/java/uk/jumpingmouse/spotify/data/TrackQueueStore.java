@@ -0,0 +1,129 @@
+package uk.jumpingmouse.spotify.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.jumpingmouse.spotify.data.TrackContract.QueueEntry;
+import uk.jumpingmouse.spotify.data.TrackContract.QueueTrackEntry;
+
+/**
+ * A persistent store of snapshots of the track queues passed to the player, keyed by
+ * queue id, so that after the process has been killed the player can read back the
+ * queue exactly as it was when the user chose a track, and the saved track position
+ * still refers to the same track.
+ * Only the most recently stored queues are kept.
+ * All methods perform database I/O, so must be run in a background thread.
+ * @author Edmund Johnson
+ */
+public class TrackQueueStore {
+
+    /** The maximum number of queues kept in the store. */
+    private static final int MAX_STORED_QUEUES = 8;
+
+    private static final String QUEUE_SELECTION = QueueTrackEntry.COLUMN_QUEUE_ID + " = ?";
+
+    private static TrackQueueStore sInstance;
+
+    private final TrackDbHelper mDbHelper;
+
+    /**
+     * Returns the process-wide track queue store, creating it if necessary.
+     * @param context the context
+     * @return the track queue store
+     */
+    public static synchronized TrackQueueStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TrackQueueStore(TrackDbHelper.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    private TrackQueueStore(TrackDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Returns a stored queue.
+     * @param queueId the queue id
+     * @return the tracks in the queue, or null if the queue is not in the store
+     */
+    public List<AppTrack> get(String queueId) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        String[] selectionArgs = {queueId};
+
+        Cursor cursor = db.query(QueueEntry.TABLE_NAME, new String[] {QueueEntry.COLUMN_QUEUE_ID},
+                QUEUE_SELECTION, selectionArgs, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        List<AppTrack> trackList = new ArrayList<>();
+        cursor = db.query(QueueTrackEntry.TABLE_NAME, TopTrackStore.TRACK_COLUMNS,
+                QUEUE_SELECTION, selectionArgs, null, null, QueueTrackEntry.COLUMN_POSITION);
+        try {
+            while (cursor.moveToNext()) {
+                trackList.add(TopTrackStore.readTrack(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return trackList;
+    }
+
+    /**
+     * Stores a queue, replacing any queue with the same id, and removes the least
+     * recently stored queues if there are too many.
+     * @param queueId the queue id
+     * @param trackList the tracks in the queue
+     */
+    public void put(String queueId, List<AppTrack> trackList) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        String[] selectionArgs = {queueId};
+
+        db.beginTransaction();
+        try {
+            db.delete(QueueTrackEntry.TABLE_NAME, QUEUE_SELECTION, selectionArgs);
+
+            ContentValues values = new ContentValues();
+            for (int position = 0; position < trackList.size(); position++) {
+                values.clear();
+                values.put(QueueTrackEntry.COLUMN_QUEUE_ID, queueId);
+                values.put(QueueTrackEntry.COLUMN_POSITION, position);
+                TopTrackStore.putTrack(values, trackList.get(position));
+                db.insert(QueueTrackEntry.TABLE_NAME, null, values);
+            }
+
+            values.clear();
+            values.put(QueueEntry.COLUMN_QUEUE_ID, queueId);
+            values.put(QueueEntry.COLUMN_STORED_TIME, System.currentTimeMillis());
+            db.insert(QueueEntry.TABLE_NAME, null, values);
+
+            trim(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Removes the least recently stored queues, keeping at most {@link #MAX_STORED_QUEUES}.
+     * @param db the database, in a transaction
+     */
+    private static void trim(SQLiteDatabase db) {
+        String oldQueueIds = "SELECT " + QueueEntry.COLUMN_QUEUE_ID + " FROM " + QueueEntry.TABLE_NAME
+                + " ORDER BY " + QueueEntry.COLUMN_STORED_TIME + " DESC, " + QueueEntry._ID + " DESC"
+                + " LIMIT -1 OFFSET " + MAX_STORED_QUEUES;
+        db.delete(QueueTrackEntry.TABLE_NAME, QueueTrackEntry.COLUMN_QUEUE_ID + " IN (" + oldQueueIds + ")", null);
+        db.delete(QueueEntry.TABLE_NAME, QueueEntry.COLUMN_QUEUE_ID + " IN (" + oldQueueIds + ")", null);
+    }
+
+}
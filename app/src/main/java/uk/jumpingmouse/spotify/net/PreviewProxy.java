@@ -0,0 +1,341 @@
+package uk.jumpingmouse.spotify.net;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import uk.jumpingmouse.spotify.data.PreviewCache;
+import uk.jumpingmouse.spotify.util.FileUtil;
+
+/**
+ * A minimal HTTP server on the loopback interface, which serves track previews to the
+ * media player from the preview cache.
+ * A preview which is not yet cached is downloaded into the cache, and served from the
+ * cache file while it is being downloaded, so that playback starts as soon as the first
+ * bytes arrive, as it would if the preview were streamed directly.
+ * A preview which is already cached is played from its file, without using the proxy.
+ * As any app on the device can connect to the loopback interface, the proxy serves only
+ * requests whose path holds a random token chosen for the process, and only preview URLs
+ * which it has itself handed out, so that it cannot be used as an open proxy or to fill
+ * the preview cache with other content.
+ * @author Edmund Johnson
+ */
+public class PreviewProxy {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = PreviewProxy.class.getSimpleName();
+
+    private static final String LOOPBACK_ADDRESS = "127.0.0.1";
+    private static final String PREVIEW_PATH = "/preview";
+    private static final String QUERY_URL_KEY = "url";
+    /** The number of random bytes in the token which a request path must hold. */
+    private static final int TOKEN_BYTES = 16;
+    /** The maximum number of preview URLs handed out which the proxy will serve. */
+    private static final int MAX_ISSUED_URLS = 64;
+    private static final int BACKLOG = 8;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final String CONTENT_TYPE = "audio/mpeg";
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-\\d*");
+
+    private static PreviewProxy sInstance;
+
+    private final PreviewCache mPreviewCache;
+    /** The path which a request must have, which holds the token for the process. */
+    private final String mPreviewPath;
+    private ServerSocket mServerSocket;
+
+    /** The preview URLs handed out by the proxy, in access order, so that the least recently used can be removed. */
+    private final Map<String, Boolean> mIssuedUrls =
+            new LinkedHashMap<String, Boolean>(MAX_ISSUED_URLS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_ISSUED_URLS;
+                }
+            };
+
+    /**
+     * Returns the process-wide preview proxy, creating it if necessary.
+     * @param context the context
+     * @return the preview proxy
+     */
+    public static synchronized PreviewProxy getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PreviewProxy(PreviewCache.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor.
+     * The preview cache is supplied so that the proxy can be exercised against a cache
+     * which downloads from a local stand-in for the preview server.
+     * @param previewCache the preview cache from which to serve previews
+     */
+    public PreviewProxy(PreviewCache previewCache) {
+        mPreviewCache = previewCache;
+        mPreviewPath = PREVIEW_PATH + "/" + createToken();
+    }
+
+    /**
+     * Returns a random token, which a request must hold to be served.
+     * @return the token, in hexadecimal
+     */
+    private static String createToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder(TOKEN_BYTES * 2);
+        for (byte b : bytes) {
+            token.append(String.format(Locale.ROOT, "%02x", b & 0xff));
+        }
+        return token.toString();
+    }
+
+    /**
+     * Returns the URI from which the media player should play a preview.
+     * This is the cached file if the preview has been downloaded, otherwise the proxy,
+     * or the preview URL itself if the proxy could not be started.
+     * Must not be called on the UI thread, as it touches the disk, and may start the proxy.
+     * @param previewUrl the preview URL
+     * @return the URI from which to play the preview, or null if the preview URL is null
+     */
+    public Uri getPlaybackUri(String previewUrl) {
+        if (previewUrl == null) {
+            return null;
+        }
+        File cachedFile = mPreviewCache.getCachedFile(previewUrl);
+        if (cachedFile != null) {
+            return Uri.fromFile(cachedFile);
+        }
+        int port = getPort();
+        if (port == -1) {
+            return Uri.parse(previewUrl);
+        }
+        synchronized (mIssuedUrls) {
+            mIssuedUrls.put(previewUrl, Boolean.TRUE);
+        }
+        return new Uri.Builder()
+                .scheme("http")
+                .encodedAuthority(LOOPBACK_ADDRESS + ":" + port)
+                .path(mPreviewPath)
+                .appendQueryParameter(QUERY_URL_KEY, previewUrl)
+                .build();
+    }
+
+    /**
+     * Returns the port on which the proxy is listening, starting it if necessary.
+     * @return the port, or -1 if the proxy could not be started
+     */
+    private synchronized int getPort() {
+        if (mServerSocket == null) {
+            try {
+                mServerSocket = new ServerSocket(0, BACKLOG, InetAddress.getByName(LOOPBACK_ADDRESS));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "IOException while starting preview proxy: " + e);
+                return -1;
+            }
+            Thread acceptThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    acceptConnections(mServerSocket);
+                }
+            }, "PreviewProxy");
+            acceptThread.setDaemon(true);
+            acceptThread.start();
+        }
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections from the media player, serving each in its own thread,
+     * as each is held open until its preview has been read.
+     * @param serverSocket the server socket
+     */
+    private void acceptConnections(ServerSocket serverSocket) {
+        while (true) {
+            try {
+                final Socket socket = serverSocket.accept();
+                Thread connectionThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "PreviewProxy connection");
+                connectionThread.setDaemon(true);
+                connectionThread.start();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "IOException while accepting preview proxy connection: " + e);
+                synchronized (this) {
+                    FileUtil.closeQuietly(mServerSocket);
+                    mServerSocket = null;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Serves a request for a preview.
+     * @param socket the socket connected to the media player
+     */
+    private void serve(Socket socket) {
+        RandomAccessFile file = null;
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            // Read the request line and the headers
+            String requestLine = readLine(in);
+            long rangeStart = 0;
+            String header;
+            while ((header = readLine(in)) != null && !header.isEmpty()) {
+                if (header.toLowerCase(Locale.ROOT).startsWith("range:")) {
+                    Matcher matcher = RANGE_PATTERN.matcher(header.substring("range:".length()).trim());
+                    if (matcher.matches()) {
+                        rangeStart = Long.parseLong(matcher.group(1));
+                    }
+                }
+            }
+            String[] requestParts = (requestLine == null) ? new String[0] : requestLine.split(" ");
+            Uri requestUri = (requestParts.length < 2) ? null : Uri.parse(requestParts[1]);
+            String previewUrl = (requestUri == null) ? null : requestUri.getQueryParameter(QUERY_URL_KEY);
+            if (previewUrl == null) {
+                writeStatus(out, "400 Bad Request", -1, 0);
+                return;
+            }
+            if (!mPreviewPath.equals(requestUri.getPath()) || !isIssued(previewUrl)) {
+                Log.w(LOG_TAG, "Refused preview proxy request for " + previewUrl);
+                writeStatus(out, "403 Forbidden", -1, 0);
+                return;
+            }
+
+            // Serve the preview from the cache if it has been downloaded since the URI was
+            // returned, otherwise from the download, while it is in progress
+            PreviewCache.Download download = null;
+            long contentLength;
+            File cachedFile = mPreviewCache.getCachedFile(previewUrl);
+            if (cachedFile != null) {
+                file = new RandomAccessFile(cachedFile, "r");
+                contentLength = file.length();
+            } else {
+                download = mPreviewCache.openDownload(previewUrl);
+                contentLength = download.awaitContentLength();
+                file = download.openForReading();
+            }
+
+            if (contentLength == -1 || rangeStart >= contentLength) {
+                // A range can only be served if the length of the preview is known
+                rangeStart = 0;
+                writeStatus(out, "200 OK", contentLength, 0);
+            } else if (rangeStart > 0) {
+                writeStatus(out, "206 Partial Content", contentLength, rangeStart);
+            } else {
+                writeStatus(out, "200 OK", contentLength, 0);
+            }
+
+            // Copy the preview to the media player, waiting for bytes which have not yet been downloaded
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long position = rangeStart;
+            while (true) {
+                long available = (download == null) ? contentLength : download.awaitBytes(position);
+                if (available <= position) {
+                    break;
+                }
+                file.seek(position);
+                int count = file.read(buffer, 0, (int) Math.min(buffer.length, available - position));
+                if (count == -1) {
+                    break;
+                }
+                out.write(buffer, 0, count);
+                out.flush();
+                position += count;
+            }
+            out.flush();
+        } catch (IOException e) {
+            // e.g. the media player has closed the connection, because it is seeking or has been released
+            Log.d(LOG_TAG, "IOException while serving preview: " + e);
+        } catch (InterruptedException e) {
+            Log.d(LOG_TAG, "Interrupted while serving preview");
+        } finally {
+            FileUtil.closeQuietly(file);
+            FileUtil.closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Returns whether a preview URL has been handed out by the proxy.
+     * @param previewUrl the preview URL
+     * @return whether the proxy may serve the preview
+     */
+    private boolean isIssued(String previewUrl) {
+        synchronized (mIssuedUrls) {
+            return mIssuedUrls.containsKey(previewUrl);
+        }
+    }
+
+    /**
+     * Writes the status line and headers of a response.
+     * @param out the output stream
+     * @param status the status code and reason phrase
+     * @param contentLength the length of the whole preview, or -1 if it is unknown
+     * @param rangeStart the position of the first byte being served
+     * @throws IOException if the response could not be written
+     */
+    private static void writeStatus(OutputStream out, String status, long contentLength, long rangeStart)
+            throws IOException {
+        StringBuilder response = new StringBuilder();
+        response.append("HTTP/1.1 ").append(status).append("\r\n");
+        response.append("Content-Type: ").append(CONTENT_TYPE).append("\r\n");
+        if (contentLength != -1) {
+            response.append("Accept-Ranges: bytes\r\n");
+            response.append("Content-Length: ").append(contentLength - rangeStart).append("\r\n");
+            if (rangeStart > 0) {
+                response.append("Content-Range: bytes ").append(rangeStart).append("-")
+                        .append(contentLength - 1).append("/").append(contentLength).append("\r\n");
+            }
+        }
+        response.append("Connection: close\r\n\r\n");
+        out.write(response.toString().getBytes(ISO_8859_1));
+        out.flush();
+    }
+
+    /**
+     * Reads a line of a request, terminated by CRLF or LF.
+     * @param in the input stream
+     * @return the line, without its terminator, or null if the stream has ended
+     * @throws IOException if the line could not be read
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return new String(line.toByteArray(), ISO_8859_1);
+    }
+
+}
@@ -0,0 +1,266 @@
+package uk.jumpingmouse.spotify.net;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+import uk.jumpingmouse.spotify.data.AppArtist;
+import uk.jumpingmouse.spotify.util.LongHashSet;
+
+/**
+ * Explores the graph of related artists breadth-first from an artist, to a given depth,
+ * so that the artists nearest to it are found first.
+ * The related artists of each artist in a level of the graph are fetched concurrently,
+ * with a bounded number of fetches in flight, and are kept in an adjacency cache keyed
+ * by artist id, so that an artist reached again, in this or a later crawl, costs no
+ * request. The artists visited are held as hashes of their ids in a primitive set.
+ * The source of the related artists is supplied, so the crawler can be run against
+ * canned responses.
+ * @author Edmund Johnson
+ */
+public class RelatedArtistCrawler {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = RelatedArtistCrawler.class.getSimpleName();
+
+    /** The default maximum number of artists whose related artists are held in the cache. */
+    private static final int DEFAULT_MAX_CACHED_ARTISTS = 256;
+
+    /**
+     * A source of the related artists of an artist, e.g. the Spotify Web API.
+     */
+    public interface RelatedArtistSource {
+        /**
+         * Returns the related artists of an artist.
+         * This method is run in a background thread, possibly concurrently with itself.
+         * @param artistId the artist id
+         * @return the related artists, or null if the artist has none
+         * @throws IOException if the related artists could not be fetched
+         */
+        List<AppArtist> getRelatedArtists(String artistId) throws IOException;
+    }
+
+    /**
+     * A listener for the progress of a crawl.
+     */
+    public interface Listener {
+        /**
+         * Called when a level of the graph has been explored.
+         * This method is run in the thread performing the crawl.
+         * @param depth the depth of the level, starting at 1 for the related artists of the root
+         * @param artists the artists first found at the level
+         */
+        void onLevelExplored(int depth, List<AppArtist> artists);
+    }
+
+    private final RelatedArtistSource mSource;
+    private final Executor mExecutor;
+    private final int mMaxInFlight;
+
+    /** The related artists of each artist, in access order, so that the least recently used can be removed. */
+    private final Map<String, List<AppArtist>> mAdjacencyCache;
+
+    /** The number of related artist lists fetched. */
+    private int mFetchCount = 0;
+    /** The number of related artist lists read from the cache. */
+    private int mCacheHitCount = 0;
+
+    /**
+     * Constructor.
+     * @param source the source of the related artists
+     * @param executor the executor on which the related artists are fetched
+     * @param maxInFlight the maximum number of fetches in flight at a time
+     */
+    public RelatedArtistCrawler(RelatedArtistSource source, Executor executor, int maxInFlight) {
+        this(source, executor, maxInFlight, DEFAULT_MAX_CACHED_ARTISTS);
+    }
+
+    /**
+     * Constructor.
+     * @param source the source of the related artists
+     * @param executor the executor on which the related artists are fetched
+     * @param maxInFlight the maximum number of fetches in flight at a time
+     * @param maxCachedArtists the maximum number of artists whose related artists are cached
+     */
+    public RelatedArtistCrawler(RelatedArtistSource source, Executor executor, int maxInFlight,
+                                final int maxCachedArtists) {
+        mSource = source;
+        mExecutor = executor;
+        mMaxInFlight = maxInFlight;
+        mAdjacencyCache = new LinkedHashMap<String, List<AppArtist>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<AppArtist>> eldest) {
+                return size() > maxCachedArtists;
+            }
+        };
+    }
+
+    /**
+     * Explores the graph of related artists breadth-first from an artist.
+     * This method must be run in a background thread, which is not one of the executor's.
+     * @param root the artist from which to start
+     * @param maxDepth the maximum depth to which the graph is explored
+     * @param maxArtists the maximum number of artists to find
+     * @param listener the listener for the progress of the crawl, or null
+     * @return the artists found, excluding the root, in the order in which they were found
+     * @throws InterruptedException if the calling thread was interrupted, e.g. because
+     *         the crawl was cancelled
+     */
+    public List<AppArtist> crawl(AppArtist root, int maxDepth, int maxArtists, Listener listener)
+            throws InterruptedException {
+        LongHashSet visited = new LongHashSet(maxArtists + 1);
+        visited.add(hash(root.getId()));
+        List<AppArtist> found = new ArrayList<>();
+        List<String> frontier = Collections.singletonList(root.getId());
+
+        for (int depth = 1; depth <= maxDepth && !frontier.isEmpty() && found.size() < maxArtists; depth++) {
+            List<List<AppArtist>> adjacencyLists = getRelatedArtists(frontier);
+            List<AppArtist> level = new ArrayList<>();
+            List<String> nextFrontier = new ArrayList<>();
+            for (List<AppArtist> relatedArtists : adjacencyLists) {
+                for (AppArtist artist : relatedArtists) {
+                    if (found.size() + level.size() >= maxArtists) {
+                        break;
+                    }
+                    if (artist.getId() != null && visited.add(hash(artist.getId()))) {
+                        level.add(artist);
+                        nextFrontier.add(artist.getId());
+                    }
+                }
+            }
+            found.addAll(level);
+            if (listener != null) {
+                listener.onLevelExplored(depth, level);
+            }
+            frontier = nextFrontier;
+        }
+        return found;
+    }
+
+    /**
+     * Returns the related artists of each of a list of artists, from the cache where
+     * possible, otherwise fetching them concurrently, with a bounded number in flight.
+     * @param artistIds the artist ids
+     * @return the related artists of each artist, in the order of the artist ids, with an
+     *         empty list for an artist whose related artists could not be fetched
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    private List<List<AppArtist>> getRelatedArtists(List<String> artistIds) throws InterruptedException {
+        final List<List<AppArtist>> adjacencyLists = new ArrayList<>(artistIds.size());
+        List<Integer> uncachedIndexes = new ArrayList<>();
+        synchronized (mAdjacencyCache) {
+            for (int i = 0; i < artistIds.size(); i++) {
+                List<AppArtist> relatedArtists = mAdjacencyCache.get(artistIds.get(i));
+                if (relatedArtists == null) {
+                    uncachedIndexes.add(i);
+                } else {
+                    mCacheHitCount++;
+                }
+                adjacencyLists.add(relatedArtists);
+            }
+        }
+
+        final Semaphore permits = new Semaphore(mMaxInFlight);
+        final CountDownLatch done = new CountDownLatch(uncachedIndexes.size());
+        try {
+            for (final int index : uncachedIndexes) {
+                permits.acquire();
+                final String artistId = artistIds.get(index);
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            List<AppArtist> relatedArtists = fetchRelatedArtists(artistId);
+                            synchronized (adjacencyLists) {
+                                adjacencyLists.set(index, relatedArtists);
+                            }
+                        } finally {
+                            permits.release();
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            done.await();
+        } finally {
+            // Fetches which have not completed fill their slots with nothing
+            synchronized (adjacencyLists) {
+                for (int i = 0; i < adjacencyLists.size(); i++) {
+                    if (adjacencyLists.get(i) == null) {
+                        adjacencyLists.set(i, Collections.<AppArtist>emptyList());
+                    }
+                }
+            }
+        }
+        synchronized (adjacencyLists) {
+            return new ArrayList<>(adjacencyLists);
+        }
+    }
+
+    /**
+     * Fetches the related artists of an artist, caching them if they were fetched.
+     * @param artistId the artist id
+     * @return the related artists, or an empty list if they could not be fetched
+     */
+    private List<AppArtist> fetchRelatedArtists(String artistId) {
+        try {
+            List<AppArtist> relatedArtists = mSource.getRelatedArtists(artistId);
+            if (relatedArtists == null) {
+                relatedArtists = Collections.emptyList();
+            }
+            synchronized (mAdjacencyCache) {
+                mAdjacencyCache.put(artistId, relatedArtists);
+                mFetchCount++;
+            }
+            return relatedArtists;
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "Error while fetching related artists of " + artistId + ": " + e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Returns the number of related artist lists fetched by the crawler.
+     * @return the number of related artist lists fetched
+     */
+    public int getFetchCount() {
+        synchronized (mAdjacencyCache) {
+            return mFetchCount;
+        }
+    }
+
+    /**
+     * Returns the number of related artist lists read from the adjacency cache.
+     * @return the number of cache hits
+     */
+    public int getCacheHitCount() {
+        synchronized (mAdjacencyCache) {
+            return mCacheHitCount;
+        }
+    }
+
+    /**
+     * Returns a 64-bit hash of an artist id, for the visited set.
+     * Spotify ids are 22 base-62 characters, so the chance of two of the few hundred
+     * artists in a crawl colliding is negligible.
+     * @param artistId the artist id
+     * @return the hash of the id
+     */
+    private static long hash(String artistId) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < artistId.length(); i++) {
+            hash ^= artistId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,221 @@
+package uk.jumpingmouse.spotify.net;
+
+import android.util.Log;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import uk.jumpingmouse.spotify.util.CircuitBreaker;
+import uk.jumpingmouse.spotify.util.NetUtil;
+import uk.jumpingmouse.spotify.util.TokenBucket;
+
+/**
+ * An OkHttp interceptor which makes requests resilient to a busy or failing server.
+ * Requests to each host are rate limited by a token bucket, so that a burst of requests
+ * is spread out rather than rejected, and pass through a circuit breaker, so that while
+ * a host is failing requests to it fail straight away.
+ * Idempotent requests which fail with a network error, or a 429 or transient 5xx
+ * response, are retried with exponential backoff and full jitter, honouring any
+ * Retry-After header; a 429 also pauses the host's rate limiter, so that the other
+ * requests in flight back off too.
+ * A cancelled request, i.e. one whose call has been cancelled or whose thread has been
+ * interrupted, is neither retried nor counted against its host.
+ * @author Edmund Johnson
+ */
+class ResilienceInterceptor implements Interceptor {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = ResilienceInterceptor.class.getSimpleName();
+
+    /** The number of times a request is retried. */
+    private static final int MAX_RETRIES = 3;
+    /** The backoff before the first retry; it doubles for each retry. */
+    private static final long BASE_BACKOFF_MS = 500;
+    /** The maximum backoff before a retry. */
+    private static final long MAX_BACKOFF_MS = TimeUnit.SECONDS.toMillis(8);
+    /** The longest Retry-After which is waited for, rather than failing the request. */
+    private static final long MAX_RETRY_AFTER_MS = TimeUnit.SECONDS.toMillis(10);
+
+    /** The largest burst of requests sent to a host at once. */
+    private static final int RATE_LIMIT_BURST = 10;
+    /** The steady rate of requests sent to a host. */
+    private static final double RATE_LIMIT_PER_SECOND = 5;
+
+    /** The number of consecutive failures which stop requests to a host. */
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    /** The time for which requests to a failing host are stopped. */
+    private static final long CIRCUIT_OPEN_MS = TimeUnit.SECONDS.toMillis(30);
+
+    /** The rate limiter and circuit breaker of each host, by host name. */
+    private final Map<String, HostState> mHostStates = new HashMap<>();
+    private final Random mRandom = new Random();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String host = request.httpUrl().host();
+        HostState hostState = getHostState(host);
+        boolean idempotent = "GET".equals(request.method()) || "HEAD".equals(request.method());
+
+        for (int attempt = 0; ; attempt++) {
+            acquirePermit(hostState.mRateLimiter);
+            if (!hostState.mCircuitBreaker.allowRequest()) {
+                throw new ServiceUnavailableException("Requests to " + host + " are suspended after repeated failures");
+            }
+
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted() || NetUtil.isCancellation(e)) {
+                    // The request was cancelled, which says nothing about the host
+                    hostState.mCircuitBreaker.onAbandoned();
+                    if (e instanceof InterruptedIOException) {
+                        // Okio cleared the interrupt status when it threw, so restore it
+                        Thread.currentThread().interrupt();
+                    }
+                    throw e;
+                }
+                hostState.mCircuitBreaker.onFailure();
+                if (!idempotent || attempt >= MAX_RETRIES) {
+                    throw e;
+                }
+                long backoffMs = getBackoffMs(attempt);
+                Log.w(LOG_TAG, "Retrying " + request.method() + " to " + host + " in " + backoffMs
+                        + "ms after error: " + e);
+                sleep(backoffMs);
+                continue;
+            }
+
+            int code = response.code();
+            if (code >= 500) {
+                hostState.mCircuitBreaker.onFailure();
+            } else {
+                hostState.mCircuitBreaker.onSuccess();
+            }
+            if (!isRetryable(code) || !idempotent || attempt >= MAX_RETRIES) {
+                return response;
+            }
+
+            long retryAfterMs = getRetryAfterMs(response);
+            if (retryAfterMs > MAX_RETRY_AFTER_MS) {
+                // Waiting so long would look like a hang, so report the failure instead
+                return response;
+            }
+            long delayMs = Math.max(retryAfterMs, getBackoffMs(attempt));
+            if (code == 429) {
+                hostState.mRateLimiter.pause(delayMs);
+            }
+            Log.w(LOG_TAG, "Retrying " + request.method() + " to " + host + " in " + delayMs
+                    + "ms after HTTP " + code);
+            response.body().close();
+            sleep(delayMs);
+        }
+    }
+
+    /**
+     * Returns the rate limiter and circuit breaker of a host, creating them if necessary.
+     * @param host the host name
+     * @return the state of the host
+     */
+    private HostState getHostState(String host) {
+        synchronized (mHostStates) {
+            HostState hostState = mHostStates.get(host);
+            if (hostState == null) {
+                hostState = new HostState();
+                mHostStates.put(host, hostState);
+            }
+            return hostState;
+        }
+    }
+
+    /**
+     * Returns whether a response with a status code is worth retrying, i.e. whether it
+     * reports that the server is busy or temporarily failing.
+     * @param code the HTTP status code
+     * @return whether the response is worth retrying
+     */
+    private static boolean isRetryable(int code) {
+        return code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * Returns the backoff before a retry, chosen at random up to an exponentially
+     * increasing limit, so that clients which failed together do not retry together.
+     * @param attempt the number of the attempt which failed, starting at 0
+     * @return the backoff in milliseconds
+     */
+    private long getBackoffMs(int attempt) {
+        long limitMs = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << attempt);
+        synchronized (mRandom) {
+            return 1 + (long) (mRandom.nextDouble() * limitMs);
+        }
+    }
+
+    /**
+     * Returns the delay requested by the Retry-After header of a response.
+     * Only a delay in seconds is understood, which is the form the Spotify Web API uses.
+     * @param response the response
+     * @return the delay in milliseconds, or 0 if none was requested
+     */
+    private static long getRetryAfterMs(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            Log.w(LOG_TAG, "Ignoring Retry-After header: " + retryAfter);
+            return 0;
+        }
+    }
+
+    /**
+     * Takes a permit from a rate limiter, waiting until one is available.
+     * @param rateLimiter the rate limiter
+     * @throws InterruptedIOException if the request was cancelled while waiting
+     */
+    private static void acquirePermit(TokenBucket rateLimiter) throws InterruptedIOException {
+        try {
+            rateLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limiter");
+        }
+    }
+
+    /**
+     * Waits before retrying a request.
+     * @param delayMs the delay in milliseconds
+     * @throws InterruptedIOException if the request was cancelled while waiting
+     */
+    private static void sleep(long delayMs) throws InterruptedIOException {
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // HostState
+
+    /**
+     * The rate limiter and circuit breaker of a host.
+     */
+    private static class HostState {
+        private final TokenBucket mRateLimiter = new TokenBucket(RATE_LIMIT_BURST, RATE_LIMIT_PER_SECOND);
+        private final CircuitBreaker mCircuitBreaker =
+                new CircuitBreaker(CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MS);
+    }
+
+}
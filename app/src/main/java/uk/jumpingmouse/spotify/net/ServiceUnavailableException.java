@@ -0,0 +1,20 @@
+package uk.jumpingmouse.spotify.net;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is refused without being sent, because requests to its host
+ * have been suspended after repeated failures.
+ * @author Edmund Johnson
+ */
+public class ServiceUnavailableException extends IOException {
+
+    /**
+     * Constructor.
+     * @param message the detail message
+     */
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,184 @@
+package uk.jumpingmouse.spotify.net;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import uk.jumpingmouse.spotify.util.NetUtil;
+
+/**
+ * Coalesces identical concurrent fetches, so that while a fetch is in flight, any other
+ * thread requesting the same key waits for it and shares its result, rather than making
+ * a second, identical network call, e.g. when the device is rotated while the top
+ * tracks of an artist are being fetched, or the same artist is selected twice quickly.
+ * The result is shared between all the threads which waited for it, so must not be modified.
+ * If the fetch is cancelled, e.g. because the task making it was cancelled when its
+ * fragment was closed, its failure is not shared; the waiting threads make the fetch
+ * again instead. A rotation does not cancel the fetches in flight, so that the recreated
+ * fragment can share them.
+ * @author Edmund Johnson
+ */
+public class SingleFlight<K, V> {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = SingleFlight.class.getSimpleName();
+
+    /** The name of the fetches, for logging. */
+    private final String mName;
+
+    /** The fetches in flight, by key. */
+    private final Map<K, Flight<V>> mFlights = new HashMap<>();
+
+    /** The number of fetches performed. */
+    private int mFetchCount = 0;
+    /** The number of fetches requested which shared a fetch already in flight. */
+    private int mCollapsedCount = 0;
+
+    /**
+     * A fetch which can be coalesced.
+     * @param <V> the type of the result of the fetch
+     */
+    public interface Fetch<V> {
+        /**
+         * Performs the fetch.
+         * This method is run in a background thread.
+         * @return the result of the fetch
+         * @throws IOException if the fetch failed
+         */
+        V fetch() throws IOException;
+    }
+
+    /**
+     * Constructor.
+     * @param name the name of the fetches, for logging
+     */
+    public SingleFlight(String name) {
+        mName = name;
+    }
+
+    /**
+     * Returns the result of a fetch, waiting for an identical fetch if one is already
+     * in flight, and otherwise performing the fetch in the calling thread.
+     * This method must be run in a background thread.
+     * @param key the key identifying the fetch, which must include every parameter
+     *            which affects its result
+     * @param fetch the fetch
+     * @return the result of the fetch
+     * @throws IOException if the fetch failed, or the calling thread was interrupted
+     *         while waiting for it
+     */
+    public V execute(K key, Fetch<V> fetch) throws IOException {
+        while (true) {
+            Flight<V> flight;
+            boolean leader;
+            synchronized (mFlights) {
+                flight = mFlights.get(key);
+                leader = (flight == null);
+                if (leader) {
+                    flight = new Flight<>();
+                    mFlights.put(key, flight);
+                    mFetchCount++;
+                } else {
+                    mCollapsedCount++;
+                    Log.d(LOG_TAG, mName + ": request collapsed (" + mCollapsedCount
+                            + " of " + (mFetchCount + mCollapsedCount) + ")");
+                }
+            }
+
+            if (leader) {
+                return fly(key, flight, fetch);
+            }
+
+            try {
+                flight.mDone.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for " + mName);
+            }
+            if (flight.mAbandoned) {
+                // The fetch was cancelled, so make it again
+                continue;
+            }
+            if (flight.mRuntimeException != null) {
+                throw flight.mRuntimeException;
+            }
+            if (flight.mIOException != null) {
+                throw flight.mIOException;
+            }
+            return flight.mResult;
+        }
+    }
+
+    /**
+     * Performs a fetch on behalf of any threads which are waiting for it.
+     * @param key the key identifying the fetch
+     * @param flight the flight of the fetch
+     * @param fetch the fetch
+     * @return the result of the fetch
+     * @throws IOException if the fetch failed
+     */
+    private V fly(K key, Flight<V> flight, Fetch<V> fetch) throws IOException {
+        try {
+            flight.mResult = fetch.fetch();
+            return flight.mResult;
+        } catch (IOException e) {
+            flight.mIOException = e;
+            flight.mAbandoned = NetUtil.isCancellation(e);
+            throw e;
+        } catch (RuntimeException e) {
+            // e.g. a RetrofitError wrapping the IOException of a cancelled call
+            flight.mRuntimeException = e;
+            flight.mAbandoned = NetUtil.isCancellation(e);
+            throw e;
+        } finally {
+            // Okio clears the interrupt status when it reports an interrupt, so the
+            // status only shows a cancellation which was not reported as an error
+            flight.mAbandoned |= (flight.mResult == null) && Thread.currentThread().isInterrupted();
+            synchronized (mFlights) {
+                mFlights.remove(key);
+            }
+            flight.mDone.countDown();
+        }
+    }
+
+    /**
+     * Returns the number of fetches requested, including those which were collapsed.
+     * @return the number of fetches requested
+     */
+    public int getRequestCount() {
+        synchronized (mFlights) {
+            return mFetchCount + mCollapsedCount;
+        }
+    }
+
+    /**
+     * Returns the number of fetches requested which shared a fetch already in flight,
+     * i.e. the number of network calls saved.
+     * @return the number of fetches which were collapsed
+     */
+    public int getCollapsedCount() {
+        synchronized (mFlights) {
+            return mCollapsedCount;
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Flight
+
+    /**
+     * The state of a fetch in flight.
+     * The fields are written by the thread making the fetch before the latch is
+     * counted down, and read by the waiting threads after it has been.
+     * @param <V> the type of the result of the fetch
+     */
+    private static class Flight<V> {
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private V mResult;
+        private IOException mIOException;
+        private RuntimeException mRuntimeException;
+        private boolean mAbandoned;
+    }
+
+}
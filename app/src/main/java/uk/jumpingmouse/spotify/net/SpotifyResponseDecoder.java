@@ -0,0 +1,649 @@
+package uk.jumpingmouse.spotify.net;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import kaaes.spotify.webapi.android.models.Image;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
+import uk.jumpingmouse.spotify.data.AppArtist;
+import uk.jumpingmouse.spotify.data.AppTrack;
+import uk.jumpingmouse.spotify.data.ArtistDetails;
+import uk.jumpingmouse.spotify.util.FileUtil;
+import uk.jumpingmouse.spotify.util.SpotifyUtil;
+
+/**
+ * Decodes Spotify Web API responses straight into the app's model objects, reading the
+ * JSON token by token, so that only the fields used by the app are kept, rather than
+ * building the whole tree of Spotify model objects, e.g. with the markets and external
+ * ids of every track, and then copying a few fields from it.
+ * Images are chosen for each artist or track as soon as its images have been read.
+ * @author Edmund Johnson
+ */
+public class SpotifyResponseDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Private constructor to prevent instantiation. */
+    private SpotifyResponseDecoder() {
+    }
+
+    /**
+     * Decodes a page of artists from an artist search response, and closes the response body.
+     * @param response the response from {@link StreamingSpotifyService#searchArtists}
+     * @param imageSizePx the size in pixels at which artist images are displayed
+     * @param saveData whether to save data by choosing smaller images
+     * @return the page of artists, or null if the response contains no page of artists
+     * @throws IOException if the response could not be read or is malformed
+     */
+    public static List<AppArtist> readArtists(Response response, int imageSizePx, boolean saveData)
+            throws IOException {
+        JsonReader reader = openReader(response);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            List<AppArtist> artistList = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("artists".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("items".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                            artistList = readArtistArray(reader, imageSizePx, saveData);
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return artistList;
+        } catch (IllegalStateException e) {
+            // The response does not have the expected structure
+            throw new IOException("Unexpected artist search response: " + e.getMessage());
+        } finally {
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Decodes the tracks from a top tracks response, and closes the response body.
+     * @param response the response from {@link StreamingSpotifyService#getArtistTopTrack}
+     * @param imageSizeSmallPx the size in pixels at which album images are displayed in lists
+     * @param imageSizeLargePx the size in pixels at which album images are displayed in the player
+     * @param saveData whether to save data by choosing smaller images
+     * @param defaultAlbumName the album name of a track whose album name is unknown
+     * @param defaultArtistName the artist name of a track whose artist is unknown
+     * @param previewDuration the duration of a track preview in milliseconds
+     * @return the tracks, or null if the response contains no tracks
+     * @throws IOException if the response could not be read or is malformed
+     */
+    public static List<AppTrack> readTracks(Response response, int imageSizeSmallPx, int imageSizeLargePx,
+                                            boolean saveData, String defaultAlbumName,
+                                            String defaultArtistName, long previewDuration)
+            throws IOException {
+        JsonReader reader = openReader(response);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            List<AppTrack> trackList = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("tracks".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    trackList = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        trackList.add(readTrack(reader, imageSizeSmallPx, imageSizeLargePx, saveData,
+                                defaultAlbumName, defaultArtistName, previewDuration));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return trackList;
+        } catch (IllegalStateException e) {
+            // The response does not have the expected structure
+            throw new IOException("Unexpected top tracks response: " + e.getMessage());
+        } finally {
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Decodes the related artists of an artist, and closes the response body.
+     * @param response the response from {@link StreamingSpotifyService#getRelatedArtists}
+     * @param imageSizePx the size in pixels at which artist images are displayed
+     * @param saveData whether to save data by choosing smaller images
+     * @return the related artists, or null if the response contains no artists
+     * @throws IOException if the response could not be read or is malformed
+     */
+    public static List<AppArtist> readRelatedArtists(Response response, int imageSizePx, boolean saveData)
+            throws IOException {
+        JsonReader reader = openReader(response);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            List<AppArtist> artistList = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("artists".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    artistList = readArtistArray(reader, imageSizePx, saveData);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return artistList;
+        } catch (IllegalStateException e) {
+            // The response does not have the expected structure
+            throw new IOException("Unexpected related artists response: " + e.getMessage());
+        } finally {
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Decodes the details of artists from a several artists response, and closes the
+     * response body. Any ids which were not found are omitted.
+     * @param response the response from {@link StreamingSpotifyService#getArtists}
+     * @return the details of the artists, or null if the response contains no artists
+     * @throws IOException if the response could not be read or is malformed
+     */
+    public static List<ArtistDetails> readArtistDetails(Response response) throws IOException {
+        JsonReader reader = openReader(response);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            List<ArtistDetails> detailsList = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("artists".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    detailsList = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                            // An id which was not found
+                            reader.skipValue();
+                            continue;
+                        }
+                        detailsList.add(readDetails(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return detailsList;
+        } catch (IllegalStateException e) {
+            // The response does not have the expected structure
+            throw new IOException("Unexpected artists response: " + e.getMessage());
+        } finally {
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Decodes the album ids from a page of an artist's albums, and closes the response body.
+     * @param response the response from {@link StreamingSpotifyService#getArtistAlbums}
+     * @return the album ids, or null if the response contains no page of albums
+     * @throws IOException if the response could not be read or is malformed
+     */
+    public static List<String> readAlbumIds(Response response) throws IOException {
+        JsonReader reader = openReader(response);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            List<String> albumIds = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("items".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    albumIds = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if ("id".equals(reader.nextName())) {
+                                String albumId = nextStringOrNull(reader);
+                                if (albumId != null) {
+                                    albumIds.add(albumId);
+                                }
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return albumIds;
+        } catch (IllegalStateException e) {
+            // The response does not have the expected structure
+            throw new IOException("Unexpected artist albums response: " + e.getMessage());
+        } finally {
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Decodes the tracks of the albums in a several albums response, in album order,
+     * and closes the response body.
+     * The album image URLs are chosen once for each album, and shared by its tracks.
+     * @param response the response from {@link StreamingSpotifyService#getAlbums}
+     * @param imageSizeSmallPx the size in pixels at which album images are displayed in lists
+     * @param imageSizeLargePx the size in pixels at which album images are displayed in the player
+     * @param saveData whether to save data by choosing smaller images
+     * @param defaultAlbumName the album name of a track whose album name is unknown
+     * @param defaultArtistName the artist name of a track whose artist is unknown
+     * @param previewDuration the duration of a track preview in milliseconds
+     * @return the tracks, or null if the response contains no albums
+     * @throws IOException if the response could not be read or is malformed
+     */
+    public static List<AppTrack> readAlbumTracks(Response response, int imageSizeSmallPx, int imageSizeLargePx,
+                                                 boolean saveData, String defaultAlbumName,
+                                                 String defaultArtistName, long previewDuration)
+            throws IOException {
+        JsonReader reader = openReader(response);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            List<AppTrack> trackList = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("albums".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    trackList = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                            // An id which was not found
+                            reader.skipValue();
+                            continue;
+                        }
+                        readAlbumTracks(reader, trackList, imageSizeSmallPx, imageSizeLargePx, saveData,
+                                defaultAlbumName, defaultArtistName, previewDuration);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return trackList;
+        } catch (IllegalStateException e) {
+            // The response does not have the expected structure
+            throw new IOException("Unexpected albums response: " + e.getMessage());
+        } finally {
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Opens a JSON reader on the body of a response.
+     * @param response the response
+     * @return the JSON reader, or null if the response has no body
+     * @throws IOException if the body could not be opened
+     */
+    private static JsonReader openReader(Response response) throws IOException {
+        TypedInput body = response.getBody();
+        if (body == null) {
+            return null;
+        }
+        return new JsonReader(new InputStreamReader(body.in(), UTF_8));
+    }
+
+    /**
+     * Reads an array of artists.
+     * @param reader the JSON reader, positioned at the start of the array
+     * @param imageSizePx the size in pixels at which artist images are displayed
+     * @param saveData whether to save data by choosing smaller images
+     * @return the artists
+     * @throws IOException if the artists could not be read
+     */
+    private static List<AppArtist> readArtistArray(JsonReader reader, int imageSizePx, boolean saveData)
+            throws IOException {
+        List<AppArtist> artistList = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String id = null;
+            String name = null;
+            List<Image> images = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String fieldName = reader.nextName();
+                if ("id".equals(fieldName)) {
+                    id = nextStringOrNull(reader);
+                } else if ("name".equals(fieldName)) {
+                    name = nextStringOrNull(reader);
+                } else if ("images".equals(fieldName)) {
+                    images = readImages(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            artistList.add(new AppArtist(id, name, SpotifyUtil.getImageUrl(images, imageSizePx, saveData)));
+        }
+        reader.endArray();
+        return artistList;
+    }
+
+    /**
+     * Reads the details of an artist.
+     * @param reader the JSON reader, positioned at the start of the artist object
+     * @return the details of the artist
+     * @throws IOException if the artist could not be read
+     */
+    private static ArtistDetails readDetails(JsonReader reader) throws IOException {
+        String id = null;
+        List<String> genres = new ArrayList<>();
+        int followers = 0;
+        int popularity = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String fieldName = reader.nextName();
+            if ("id".equals(fieldName)) {
+                id = nextStringOrNull(reader);
+            } else if ("genres".equals(fieldName) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String genre = nextStringOrNull(reader);
+                    if (genre != null) {
+                        genres.add(genre);
+                    }
+                }
+                reader.endArray();
+            } else if ("followers".equals(fieldName) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("total".equals(reader.nextName()) && reader.peek() == JsonToken.NUMBER) {
+                        followers = reader.nextInt();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if ("popularity".equals(fieldName) && reader.peek() == JsonToken.NUMBER) {
+                popularity = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new ArtistDetails(id, genres, followers, popularity);
+    }
+
+    /**
+     * Reads a track.
+     * @param reader the JSON reader, positioned at the start of the track object
+     * @return the track
+     * @throws IOException if the track could not be read
+     * @see #readTracks
+     */
+    private static AppTrack readTrack(JsonReader reader, int imageSizeSmallPx, int imageSizeLargePx,
+                                      boolean saveData, String defaultAlbumName,
+                                      String defaultArtistName, long previewDuration)
+            throws IOException {
+        TrackFields track = readTrackFields(reader);
+        return createTrack(track, track.albumName,
+                SpotifyUtil.getImageUrl(track.albumImages, imageSizeSmallPx, saveData),
+                SpotifyUtil.getImageUrl(track.albumImages, imageSizeLargePx, saveData),
+                defaultAlbumName, defaultArtistName, previewDuration);
+    }
+
+    /**
+     * Reads the tracks of an album, i.e. the first page of them, which is included in
+     * the album object.
+     * @param reader the JSON reader, positioned at the start of the album object
+     * @param trackList the list to which the tracks are added
+     * @throws IOException if the album could not be read
+     * @see #readAlbumTracks(Response, int, int, boolean, String, String, long)
+     */
+    private static void readAlbumTracks(JsonReader reader, List<AppTrack> trackList,
+                                        int imageSizeSmallPx, int imageSizeLargePx,
+                                        boolean saveData, String defaultAlbumName,
+                                        String defaultArtistName, long previewDuration)
+            throws IOException {
+        String albumName = null;
+        List<Image> albumImages = null;
+        // The tracks may precede the album's name and images, so are created afterwards
+        List<TrackFields> albumTracks = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String fieldName = reader.nextName();
+            if ("name".equals(fieldName)) {
+                albumName = nextStringOrNull(reader);
+            } else if ("images".equals(fieldName)) {
+                albumImages = readImages(reader);
+            } else if ("tracks".equals(fieldName) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("items".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                                reader.skipValue();
+                                continue;
+                            }
+                            albumTracks.add(readTrackFields(reader));
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        String imageUrlSmall = SpotifyUtil.getImageUrl(albumImages, imageSizeSmallPx, saveData);
+        String imageUrlLarge = SpotifyUtil.getImageUrl(albumImages, imageSizeLargePx, saveData);
+        for (TrackFields track : albumTracks) {
+            trackList.add(createTrack(track, albumName, imageUrlSmall, imageUrlLarge,
+                    defaultAlbumName, defaultArtistName, previewDuration));
+        }
+    }
+
+    /**
+     * Reads the fields of a track object, including those of its album, if present.
+     * @param reader the JSON reader, positioned at the start of the track object
+     * @return the fields of the track
+     * @throws IOException if the track could not be read
+     */
+    private static TrackFields readTrackFields(JsonReader reader) throws IOException {
+        TrackFields track = new TrackFields();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String fieldName = reader.nextName();
+            if ("id".equals(fieldName)) {
+                track.id = nextStringOrNull(reader);
+            } else if ("name".equals(fieldName)) {
+                track.name = nextStringOrNull(reader);
+            } else if ("preview_url".equals(fieldName)) {
+                track.previewUrl = nextStringOrNull(reader);
+            } else if ("duration_ms".equals(fieldName) && reader.peek() == JsonToken.NUMBER) {
+                track.duration = reader.nextLong();
+            } else if ("album".equals(fieldName) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String albumFieldName = reader.nextName();
+                    if ("name".equals(albumFieldName)) {
+                        track.albumName = nextStringOrNull(reader);
+                    } else if ("images".equals(albumFieldName)) {
+                        track.albumImages = readImages(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if ("artists".equals(fieldName) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                track.artistName = readFirstArtistName(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return track;
+    }
+
+    /**
+     * Creates a track from the fields read for it.
+     * @param track the fields of the track
+     * @param albumName the name of the track's album
+     * @param imageUrlSmall the URL of the album image to display in lists
+     * @param imageUrlLarge the URL of the album image to display in the player
+     * @param defaultAlbumName the album name to use if the album name is unknown
+     * @param defaultArtistName the artist name to use if the artist is unknown
+     * @param previewDuration the duration of a track preview in milliseconds
+     * @return the track
+     */
+    private static AppTrack createTrack(TrackFields track, String albumName,
+                                        String imageUrlSmall, String imageUrlLarge,
+                                        String defaultAlbumName, String defaultArtistName,
+                                        long previewDuration) {
+        if (albumName == null || albumName.trim().isEmpty()) {
+            albumName = defaultAlbumName;
+        }
+        String artistName = (track.artistName == null) ? defaultArtistName : track.artistName;
+        return new AppTrack(track.id, track.name, albumName, imageUrlSmall, imageUrlLarge,
+                track.previewUrl, track.duration, previewDuration, artistName);
+    }
+
+    /**
+     * Reads the name of the first artist in an array of artists.
+     * @param reader the JSON reader, positioned at the start of the array
+     * @return the name of the first artist, or null if there is none
+     * @throws IOException if the artists could not be read
+     */
+    private static String readFirstArtistName(JsonReader reader) throws IOException {
+        String artistName = null;
+        boolean first = true;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (!first || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            first = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("name".equals(reader.nextName())) {
+                    artistName = nextStringOrNull(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return artistName;
+    }
+
+    /**
+     * Reads an array of images.
+     * @param reader the JSON reader, positioned at the array
+     * @return the images, or null if the value is not an array
+     * @throws IOException if the images could not be read
+     */
+    private static List<Image> readImages(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        List<Image> images = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            Image image = new Image();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String fieldName = reader.nextName();
+                if ("url".equals(fieldName)) {
+                    image.url = nextStringOrNull(reader);
+                } else if ("width".equals(fieldName) && reader.peek() == JsonToken.NUMBER) {
+                    image.width = reader.nextInt();
+                } else if ("height".equals(fieldName) && reader.peek() == JsonToken.NUMBER) {
+                    image.height = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            images.add(image);
+        }
+        reader.endArray();
+        return images;
+    }
+
+    /**
+     * Reads a string value, which may be null.
+     * @param reader the JSON reader, positioned at the value
+     * @return the string, or null if the value is null or not a string
+     * @throws IOException if the value could not be read
+     */
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    //-------------------------------------------------------------------------------
+    // TrackFields
+
+    /**
+     * The fields of a track object which are used by the app, as read from the response.
+     */
+    private static class TrackFields {
+        private String id;
+        private String name;
+        private String previewUrl;
+        private long duration = 0;
+        private String albumName;
+        private List<Image> albumImages;
+        private String artistName;
+    }
+
+}
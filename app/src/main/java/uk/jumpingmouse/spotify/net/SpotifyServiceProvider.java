@@ -0,0 +1,183 @@
+package uk.jumpingmouse.spotify.net;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import kaaes.spotify.webapi.android.SpotifyApi;
+import kaaes.spotify.webapi.android.SpotifyService;
+import retrofit.RestAdapter;
+import retrofit.converter.GsonConverter;
+import uk.jumpingmouse.spotify.BuildConfig;
+import uk.jumpingmouse.spotify.util.TaskScheduler;
+
+/**
+ * Provides the process-wide SpotifyService and StreamingSpotifyService.
+ * The services are backed by a single OkHttp client, so the connection pool (and any
+ * established TLS sessions) and the Gson type adapters are shared between requests,
+ * rather than being rebuilt for every fetch.
+ * Requests made by the client are rate limited, retried and stopped while the host
+ * is failing by a {@link ResilienceInterceptor}.
+ * @author Edmund Johnson
+ */
+public class SpotifyServiceProvider {
+    /** The log tag for this class. */
+    private static final String LOG_TAG = SpotifyServiceProvider.class.getSimpleName();
+
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_DURATION_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long CONNECT_TIMEOUT_SECONDS = 15;
+    private static final long READ_TIMEOUT_SECONDS = 20;
+
+    private static String sEndpoint = SpotifyApi.SPOTIFY_WEB_API_ENDPOINT;
+    private static OkHttpClient sHttpClient;
+    private static Gson sGson;
+    private static SpotifyService sSpotifyService;
+    private static StreamingSpotifyService sStreamingService;
+
+    /** Private constructor to prevent instantiation. */
+    private SpotifyServiceProvider() {
+    }
+
+    /**
+     * Returns the shared SpotifyService, creating it if necessary.
+     * @return the shared SpotifyService
+     */
+    public static synchronized SpotifyService getService() {
+        if (sSpotifyService == null) {
+            sSpotifyService = createRestAdapter().create(SpotifyService.class);
+        }
+        return sSpotifyService;
+    }
+
+    /**
+     * Returns the shared StreamingSpotifyService, creating it if necessary.
+     * Its responses are decoded by {@link SpotifyResponseDecoder} as they are read.
+     * @return the shared StreamingSpotifyService
+     */
+    public static synchronized StreamingSpotifyService getStreamingService() {
+        if (sStreamingService == null) {
+            sStreamingService = createRestAdapter().create(StreamingSpotifyService.class);
+        }
+        return sStreamingService;
+    }
+
+    /**
+     * Returns a new RestAdapter for the current endpoint, backed by the shared HTTP client.
+     * @return a new RestAdapter
+     */
+    private static RestAdapter createRestAdapter() {
+        // Most (but not all) of the Spotify Web API endpoints require authorisation.
+        // The ones that require authorisation would need a RequestInterceptor which
+        // adds an "Authorization: Bearer <token>" header.
+        return new RestAdapter.Builder()
+                .setEndpoint(sEndpoint)
+                .setClient(new TaggingOkClient(getHttpClient()))
+                .setConverter(new GsonConverter(getGson()))
+                .setLogLevel(BuildConfig.DEBUG ? RestAdapter.LogLevel.BASIC : RestAdapter.LogLevel.NONE)
+                .build();
+    }
+
+    /**
+     * Returns the shared OkHttp client, creating it if necessary.
+     * The client keeps idle connections alive so that consecutive requests to the
+     * Spotify Web API can reuse them, and negotiates HTTP/2 where the platform supports it.
+     * Its requests are rate limited and, if they fail transiently, retried.
+     * @return the shared OkHttp client
+     */
+    public static synchronized OkHttpClient getHttpClient() {
+        if (sHttpClient == null) {
+            OkHttpClient httpClient = new OkHttpClient();
+            httpClient.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS));
+            httpClient.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.SPDY_3, Protocol.HTTP_1_1));
+            httpClient.setConnectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            httpClient.setReadTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            httpClient.interceptors().add(new ResilienceInterceptor());
+            sHttpClient = httpClient;
+        }
+        return sHttpClient;
+    }
+
+    /**
+     * Returns the shared Gson instance, creating it if necessary.
+     * @return the shared Gson instance
+     */
+    private static synchronized Gson getGson() {
+        if (sGson == null) {
+            sGson = new Gson();
+        }
+        return sGson;
+    }
+
+    /**
+     * Sets the tag to apply to Spotify requests subsequently made by the current thread,
+     * so that they can be cancelled using {@link #cancelRequests(Object)}.
+     * @param tag the tag, or null to stop tagging requests
+     */
+    public static void setRequestTag(Object tag) {
+        TaggingOkClient.setRequestTag(tag);
+    }
+
+    /**
+     * Cancels any in-flight Spotify requests which were made with a supplied tag.
+     * A cancelled request fails with an IOException, reported by Retrofit as a RetrofitError.
+     * @param tag the tag
+     */
+    public static void cancelRequests(Object tag) {
+        getHttpClient().cancel(tag);
+    }
+
+    /**
+     * Changes the endpoint used by the service, e.g. to point it at a local mock server.
+     * The service will be recreated on next use, but the HTTP client is retained.
+     * @param endpoint the base URL of the Spotify Web API
+     */
+    public static synchronized void setEndpoint(String endpoint) {
+        sEndpoint = endpoint;
+        sSpotifyService = null;
+        sStreamingService = null;
+    }
+
+    /**
+     * Warms up the service in a background thread, so that the first search does not
+     * pay for building the service and a cold TLS connection.
+     * This should be called once, at application start.
+     */
+    public static void warmUp() {
+        TaskScheduler.getInstance().getNetworkExecutor(TaskScheduler.Priority.PREFETCH).execute(new Runnable() {
+            @Override
+            public void run() {
+                getStreamingService();
+                openConnection();
+            }
+        });
+    }
+
+    /**
+     * Opens a connection to the API host, leaving it in the connection pool for reuse.
+     * This method must be run in a background thread.
+     */
+    private static void openConnection() {
+        String endpoint;
+        synchronized (SpotifyServiceProvider.class) {
+            endpoint = sEndpoint;
+        }
+        Request request = new Request.Builder().url(endpoint).head().build();
+        try {
+            Response response = getHttpClient().newCall(request).execute();
+            response.body().close();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "IOException while warming up connection: " + e);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package uk.jumpingmouse.spotify.net;
+
+import java.util.Map;
+
+import retrofit.client.Response;
+import retrofit.http.GET;
+import retrofit.http.Path;
+import retrofit.http.Query;
+import retrofit.http.QueryMap;
+import retrofit.http.Streaming;
+
+/**
+ * The Spotify Web API endpoints used by the app, returning their raw responses, which
+ * are streamed rather than read into memory, so that they can be decoded straight into
+ * the app's model objects by {@link SpotifyResponseDecoder}.
+ * The endpoints are the same as those of the corresponding SpotifyService methods.
+ * @author Edmund Johnson
+ */
+public interface StreamingSpotifyService {
+
+    /**
+     * Returns a page of the artists whose names match a search string.
+     * The body of the response must be closed by the caller.
+     * @param q the search string
+     * @param options the query options, e.g. the offset and limit of the page
+     * @return the response
+     */
+    @GET("/search?type=artist")
+    @Streaming
+    Response searchArtists(@Query("q") String q, @QueryMap Map<String, Object> options);
+
+    /**
+     * Returns the top tracks of an artist.
+     * The body of the response must be closed by the caller.
+     * @param artistId the artist id
+     * @param options the query options, i.e. the country
+     * @return the response
+     */
+    @GET("/artists/{id}/top-tracks")
+    @Streaming
+    Response getArtistTopTrack(@Path("id") String artistId, @QueryMap Map<String, Object> options);
+
+    /**
+     * Returns several artists.
+     * The body of the response must be closed by the caller.
+     * @param artistIds a comma-separated list of up to 50 artist ids
+     * @return the response
+     */
+    @GET("/artists")
+    @Streaming
+    Response getArtists(@Query("ids") String artistIds);
+
+    /**
+     * Returns the artists related to an artist.
+     * The body of the response must be closed by the caller.
+     * @param artistId the artist id
+     * @return the response
+     */
+    @GET("/artists/{id}/related-artists")
+    @Streaming
+    Response getRelatedArtists(@Path("id") String artistId);
+
+    /**
+     * Returns a page of the albums of an artist.
+     * The body of the response must be closed by the caller.
+     * @param artistId the artist id
+     * @param options the query options, e.g. the market, album types, offset and limit
+     * @return the response
+     */
+    @GET("/artists/{id}/albums")
+    @Streaming
+    Response getArtistAlbums(@Path("id") String artistId, @QueryMap Map<String, Object> options);
+
+    /**
+     * Returns several albums, including the first page of the tracks of each.
+     * The body of the response must be closed by the caller.
+     * @param albumIds a comma-separated list of up to 20 album ids
+     * @param options the query options, i.e. the market
+     * @return the response
+     */
+    @GET("/albums")
+    @Streaming
+    Response getAlbums(@Query("ids") String albumIds, @QueryMap Map<String, Object> options);
+
+}
@@ -0,0 +1,148 @@
+package uk.jumpingmouse.spotify.net;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.BufferedSink;
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+/**
+ * A Retrofit client which executes requests using OkHttp, tagging each call with
+ * the tag set for the calling thread, so that the call can later be cancelled
+ * using {@link OkHttpClient#cancel(Object)}.
+ * @author Edmund Johnson
+ */
+class TaggingOkClient implements Client {
+
+    /** The tag to apply to requests made by the current thread. */
+    private static final ThreadLocal<Object> sRequestTag = new ThreadLocal<>();
+
+    private final OkHttpClient mClient;
+
+    /**
+     * Constructor.
+     * @param client the OkHttp client which will execute the requests
+     */
+    TaggingOkClient(OkHttpClient client) {
+        mClient = client;
+    }
+
+    /**
+     * Sets the tag to apply to requests subsequently made by the current thread.
+     * @param tag the tag, or null to stop tagging requests
+     */
+    static void setRequestTag(Object tag) {
+        if (tag == null) {
+            sRequestTag.remove();
+        } else {
+            sRequestTag.set(tag);
+        }
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        com.squareup.okhttp.Request.Builder builder = new com.squareup.okhttp.Request.Builder()
+                .url(request.getUrl())
+                .method(request.getMethod(), createRequestBody(request.getBody()));
+
+        Object tag = sRequestTag.get();
+        if (tag != null) {
+            builder.tag(tag);
+        }
+        for (Header header : request.getHeaders()) {
+            String value = header.getValue();
+            builder.addHeader(header.getName(), value == null ? "" : value);
+        }
+
+        com.squareup.okhttp.Response response = mClient.newCall(builder.build()).execute();
+        return new Response(response.request().urlString(), response.code(), response.message(),
+                createHeaders(response.headers()), createResponseBody(response.body()));
+    }
+
+    /**
+     * Converts a Retrofit request body to an OkHttp request body.
+     * @param body the Retrofit request body
+     * @return the OkHttp request body, or null if there is no body
+     */
+    private static RequestBody createRequestBody(final TypedOutput body) {
+        if (body == null) {
+            return null;
+        }
+        final MediaType mediaType = MediaType.parse(body.mimeType());
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return mediaType;
+            }
+
+            @Override
+            public long contentLength() {
+                return body.length();
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                body.writeTo(sink.outputStream());
+            }
+        };
+    }
+
+    /**
+     * Converts an OkHttp response body to a Retrofit response body.
+     * @param body the OkHttp response body
+     * @return the Retrofit response body, or null if the body is empty
+     * @throws IOException if the body length could not be determined
+     */
+    private static TypedInput createResponseBody(final ResponseBody body) throws IOException {
+        final long length = body.contentLength();
+        if (length == 0) {
+            body.close();
+            return null;
+        }
+        return new TypedInput() {
+            @Override
+            public String mimeType() {
+                MediaType mediaType = body.contentType();
+                return mediaType == null ? null : mediaType.toString();
+            }
+
+            @Override
+            public long length() {
+                return length;
+            }
+
+            @Override
+            public InputStream in() throws IOException {
+                return body.byteStream();
+            }
+        };
+    }
+
+    /**
+     * Converts OkHttp headers to a list of Retrofit headers.
+     * @param headers the OkHttp headers
+     * @return the list of Retrofit headers
+     */
+    private static List<Header> createHeaders(Headers headers) {
+        int size = headers.size();
+        List<Header> headerList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            headerList.add(new Header(headers.name(i), headers.value(i)));
+        }
+        return headerList;
+    }
+
+}
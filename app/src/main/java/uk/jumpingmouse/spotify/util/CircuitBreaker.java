@@ -0,0 +1,110 @@
+package uk.jumpingmouse.spotify.util;
+
+import android.os.SystemClock;
+
+/**
+ * A circuit breaker, which stops requests to a failing server for a period once a
+ * number of consecutive requests have failed, so that they fail straight away rather
+ * than each waiting for a timeout, and the server is given time to recover.
+ * When the period has passed a single trial request is allowed; if it succeeds the
+ * breaker closes again, otherwise it stays open for another period.
+ * @author Edmund Johnson
+ */
+public class CircuitBreaker {
+
+    /** The state of the breaker. */
+    private enum State {
+        /** Requests are allowed. */
+        CLOSED,
+        /** Requests are refused. */
+        OPEN,
+        /** A single trial request is allowed, to find whether the server has recovered. */
+        HALF_OPEN
+    }
+
+    private final int mFailureThreshold;
+    private final long mOpenDurationMs;
+
+    private State mState = State.CLOSED;
+    /** The number of consecutive failures while the breaker was closed. */
+    private int mFailureCount = 0;
+    /** The time at which the breaker last opened. */
+    private long mOpenedAt = 0;
+    /** Whether the trial request is in flight, while the breaker is half open. */
+    private boolean mTrialInFlight = false;
+
+    /**
+     * Constructor.
+     * @param failureThreshold the number of consecutive failures which open the breaker
+     * @param openDurationMs the time in milliseconds for which the breaker stays open
+     */
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        mFailureThreshold = failureThreshold;
+        mOpenDurationMs = openDurationMs;
+    }
+
+    /**
+     * Returns whether a request may be made.
+     * If it may, its outcome must be recorded using {@link #onSuccess()} or {@link #onFailure()}.
+     * @return whether a request may be made
+     */
+    public synchronized boolean allowRequest() {
+        switch (mState) {
+            case OPEN:
+                if (now() - mOpenedAt < mOpenDurationMs) {
+                    return false;
+                }
+                mState = State.HALF_OPEN;
+                mTrialInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (mTrialInFlight) {
+                    return false;
+                }
+                mTrialInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Records that a request succeeded, closing the breaker.
+     */
+    public synchronized void onSuccess() {
+        mState = State.CLOSED;
+        mFailureCount = 0;
+        mTrialInFlight = false;
+    }
+
+    /**
+     * Records that a request failed, opening the breaker if the trial request failed
+     * or too many consecutive requests have failed.
+     */
+    public synchronized void onFailure() {
+        mFailureCount++;
+        if (mState == State.HALF_OPEN || mFailureCount >= mFailureThreshold) {
+            mState = State.OPEN;
+            mOpenedAt = now();
+            mTrialInFlight = false;
+        }
+    }
+
+    /**
+     * Records that a request was abandoned without an outcome, e.g. because it was
+     * cancelled, so that if it was the trial request another may be made.
+     */
+    public synchronized void onAbandoned() {
+        mTrialInFlight = false;
+    }
+
+    /**
+     * Returns the current time, from a clock which does not jump, e.g. when the user
+     * changes the time. Tests override this to control the passage of time.
+     * @return the current time in milliseconds
+     */
+    long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+}
@@ -0,0 +1,101 @@
+package uk.jumpingmouse.spotify.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Class containing file-related utility methods, e.g. for disk caches.
+ * @author Edmund Johnson
+ */
+public class FileUtil {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Private constructor to prevent instantiation. */
+    private FileUtil() {
+    }
+
+    /**
+     * Returns a hex-encoded hash of a key, for use as a file name.
+     * @param key the key
+     * @return the hash of the key
+     */
+    public static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(String.format(Locale.ROOT, "%02x", b & 0xff));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available on Android, but fall back to the hash code if not
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    /**
+     * Closes a closeable, ignoring any exception.
+     * @param closeable the closeable, which may be null
+     */
+    public static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently modified files in a directory until the total size of
+     * its files is within a limit.
+     * @param dir the directory
+     * @param maxBytes the maximum total size of the files in the directory
+     * @param filter a filter accepting the files which may be deleted, or null if any
+     *               file may be deleted
+     */
+    public static void trimDirectory(File dir, long maxBytes, FileFilter filter) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                long lastModified1 = file1.lastModified();
+                long lastModified2 = file2.lastModified();
+                return lastModified1 < lastModified2 ? -1 : (lastModified1 == lastModified2 ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            if (filter != null && !filter.accept(file)) {
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+}
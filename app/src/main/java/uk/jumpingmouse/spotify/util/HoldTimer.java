@@ -0,0 +1,61 @@
+package uk.jumpingmouse.spotify.util;
+
+import android.os.SystemClock;
+
+/**
+ * Accumulates the time for which a resource, e.g. a wake lock, has been held,
+ * so that the battery cost of holding it can be seen.
+ * Not thread-safe.
+ * @author Edmund Johnson
+ */
+public class HoldTimer {
+
+    /** The total time for which the resource was held, excluding the current hold. */
+    private long mTotalMs = 0;
+    /** The time at which the current hold started, or -1 if the resource is not held. */
+    private long mHeldSince = -1;
+    /** The number of times the resource has been acquired. */
+    private int mHoldCount = 0;
+
+    /**
+     * Records that the resource has been acquired.
+     * Does nothing if it is already held.
+     */
+    public void onAcquired() {
+        if (mHeldSince == -1) {
+            mHeldSince = SystemClock.elapsedRealtime();
+            mHoldCount++;
+        }
+    }
+
+    /**
+     * Records that the resource has been released.
+     * Does nothing if it is not held.
+     */
+    public void onReleased() {
+        if (mHeldSince != -1) {
+            mTotalMs += SystemClock.elapsedRealtime() - mHeldSince;
+            mHeldSince = -1;
+        }
+    }
+
+    /**
+     * Returns the total time for which the resource has been held, including the current hold.
+     * @return the total time for which the resource has been held, in milliseconds
+     */
+    public long getTotalMs() {
+        if (mHeldSince == -1) {
+            return mTotalMs;
+        }
+        return mTotalMs + SystemClock.elapsedRealtime() - mHeldSince;
+    }
+
+    /**
+     * Returns the number of times the resource has been acquired.
+     * @return the number of times the resource has been acquired
+     */
+    public int getHoldCount() {
+        return mHoldCount;
+    }
+
+}
@@ -0,0 +1,173 @@
+package uk.jumpingmouse.spotify.util;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Warms Picasso's caches with images which are about to be displayed, e.g. those of the
+ * list rows just beyond the visible rows, so that they are not blank when they appear.
+ * At most a fixed number of images are fetched at a time, at low priority, so that
+ * prefetching does not hold up the images which are being displayed.
+ * Prefetches are tagged, so that those which are outstanding can be cancelled when the
+ * images they fetch are no longer likely to be displayed, e.g. when the list changes.
+ * All methods must be called on the UI thread.
+ * @author Edmund Johnson
+ */
+public class ImagePrefetcher {
+
+    /** The default maximum number of images which are fetched at a time. */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 2;
+
+    /**
+     * A source of images for the rows of a list, e.g. a RecyclerView adapter.
+     */
+    public interface ImageUrlSource {
+        /**
+         * Returns the number of rows in the list.
+         * @return the number of rows in the list
+         */
+        int getItemCount();
+
+        /**
+         * Returns the URL of the image displayed in a row of the list.
+         * @param position the position of the row
+         * @return the URL of the row's image, or null if it has no image
+         */
+        String getImageUrl(int position);
+    }
+
+    private final Picasso mPicasso;
+    private final int mMaxInFlight;
+    /** The tag of this prefetcher's requests, so that they can be cancelled together. */
+    private final Object mTag = new Object();
+
+    /** The URLs which are waiting to be fetched. */
+    private final Queue<String> mPendingUrls = new ArrayDeque<>();
+    /** The URLs which have been requested since the prefetcher was last cancelled. */
+    private final Set<String> mRequestedUrls = new HashSet<>();
+    /** The number of fetches which have not yet completed. */
+    private int mInFlightCount = 0;
+    /** Incremented on cancellation, so that completions of cancelled fetches are ignored. */
+    private int mGeneration = 0;
+
+    /**
+     * Constructor.
+     * @param context the context
+     */
+    public ImagePrefetcher(Context context) {
+        this(context, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Constructor.
+     * @param context the context
+     * @param maxInFlight the maximum number of images which are fetched at a time
+     */
+    public ImagePrefetcher(Context context, int maxInFlight) {
+        mPicasso = Picasso.with(context.getApplicationContext());
+        mMaxInFlight = maxInFlight;
+    }
+
+    /**
+     * Prefetches an image, unless it has already been requested.
+     * @param url the URL of the image
+     */
+    public void prefetch(String url) {
+        if (url != null && mRequestedUrls.add(url)) {
+            mPendingUrls.add(url);
+            fetchPending();
+        }
+    }
+
+    /**
+     * Cancels all outstanding prefetches, e.g. when the list whose images are being
+     * prefetched changes.
+     */
+    public void cancel() {
+        mGeneration++;
+        mPendingUrls.clear();
+        mRequestedUrls.clear();
+        mInFlightCount = 0;
+        mPicasso.cancelTag(mTag);
+    }
+
+    /**
+     * Fetches pending images, up to the maximum number in flight.
+     */
+    private void fetchPending() {
+        while (mInFlightCount < mMaxInFlight && !mPendingUrls.isEmpty()) {
+            final int generation = mGeneration;
+            mInFlightCount++;
+            mPicasso.load(mPendingUrls.remove())
+                    .tag(mTag)
+                    .priority(Picasso.Priority.LOW)
+                    .fetch(new Callback() {
+                        @Override
+                        public void onSuccess() {
+                            onFetchComplete(generation);
+                        }
+
+                        @Override
+                        public void onError() {
+                            onFetchComplete(generation);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Records the completion of a fetch, and starts the next pending fetch.
+     * @param generation the generation in which the fetch was started
+     */
+    private void onFetchComplete(int generation) {
+        if (generation == mGeneration) {
+            mInFlightCount--;
+            fetchPending();
+        }
+    }
+
+    /**
+     * Returns a scroll listener which prefetches the images of the rows just beyond
+     * the visible rows of a list, in the direction in which it is being scrolled.
+     * @param layoutManager the layout manager of the list
+     * @param source the source of the images for the rows of the list
+     * @param rowCount the number of rows beyond the visible rows whose images are prefetched
+     * @return the scroll listener
+     */
+    public RecyclerView.OnScrollListener createScrollListener(final LinearLayoutManager layoutManager,
+                                                             final ImageUrlSource source,
+                                                             final int rowCount) {
+        return new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int firstVisiblePosition = layoutManager.findFirstVisibleItemPosition();
+                if (firstVisiblePosition == RecyclerView.NO_POSITION) {
+                    // There are no rows to scroll past
+                    return;
+                }
+                int firstPosition;
+                int lastPosition;
+                if (dy >= 0) {
+                    firstPosition = layoutManager.findLastVisibleItemPosition() + 1;
+                    lastPosition = Math.min(firstPosition + rowCount, source.getItemCount()) - 1;
+                } else {
+                    lastPosition = firstVisiblePosition - 1;
+                    firstPosition = Math.max(lastPosition - rowCount + 1, 0);
+                }
+                for (int position = firstPosition; position <= lastPosition; position++) {
+                    prefetch(source.getImageUrl(position));
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,144 @@
+package uk.jumpingmouse.spotify.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds the list displayed by a RecyclerView adapter, and applies updates to it
+ * incrementally.
+ * When a new list is submitted, the difference from the current list is calculated in
+ * a background thread, and only the resulting inserts, removes, moves and changes are
+ * dispatched to the adapter, so that rows which have not changed are not rebound.
+ * All methods must be called on the UI thread.
+ * @param <T> the type of the items in the list
+ * @author Edmund Johnson
+ */
+public class ListDiffer<T> {
+
+    /**
+     * Determines whether two items represent the same entity, and whether they are displayed identically.
+     * @param <T> the type of the items
+     */
+    public interface ItemComparator<T> {
+        /**
+         * Returns whether two items represent the same entity, e.g. because they have the same id.
+         * @param oldItem the item in the old list
+         * @param newItem the item in the new list
+         * @return true if the items represent the same entity, false otherwise
+         */
+        boolean areItemsTheSame(T oldItem, T newItem);
+
+        /**
+         * Returns whether two items representing the same entity would be displayed identically.
+         * @param oldItem the item in the old list
+         * @param newItem the item in the new list
+         * @return true if the items have the same contents, false otherwise
+         */
+        boolean areContentsTheSame(T oldItem, T newItem);
+    }
+
+    private final RecyclerView.Adapter<?> mAdapter;
+    private final ItemComparator<T> mComparator;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** The list currently displayed by the adapter. */
+    private List<T> mList = Collections.emptyList();
+
+    /** Incremented for each submitted list, so that out-of-date diffs can be discarded. */
+    private int mGeneration = 0;
+
+    /**
+     * Constructor.
+     * @param adapter the adapter which displays the list
+     * @param comparator the comparator for items in the list
+     */
+    public ListDiffer(RecyclerView.Adapter<?> adapter, ItemComparator<T> comparator) {
+        mAdapter = adapter;
+        mComparator = comparator;
+    }
+
+    /**
+     * Returns the list currently displayed by the adapter.
+     * @return the displayed list, which must not be modified
+     */
+    public List<T> getList() {
+        return mList;
+    }
+
+    /**
+     * Submits a new list to be displayed.
+     * The difference from the current list is calculated in a background thread, then
+     * dispatched to the adapter, unless a newer list has been submitted in the meantime.
+     * @param newList the new list
+     */
+    public void submitList(List<T> newList) {
+        final int generation = ++mGeneration;
+        final List<T> oldList = mList;
+        final List<T> updatedList = (newList == null)
+                ? Collections.<T>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(newList));
+
+        if (oldList.isEmpty() || updatedList.isEmpty()) {
+            // There is nothing to compare, so there is no point in calculating a diff
+            mList = updatedList;
+            mAdapter.notifyDataSetChanged();
+            return;
+        }
+
+        TaskScheduler.getInstance().getUiWorkExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                    @Override
+                    public int getOldListSize() {
+                        return oldList.size();
+                    }
+
+                    @Override
+                    public int getNewListSize() {
+                        return updatedList.size();
+                    }
+
+                    @Override
+                    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                        return mComparator.areItemsTheSame(oldList.get(oldPosition), updatedList.get(newPosition));
+                    }
+
+                    @Override
+                    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                        return mComparator.areContentsTheSame(oldList.get(oldPosition), updatedList.get(newPosition));
+                    }
+                });
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            mList = updatedList;
+                            diffResult.dispatchUpdatesTo(mAdapter);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Replaces the list immediately, without calculating a diff, e.g. when restoring state.
+     * @param newList the new list
+     */
+    public void setList(List<T> newList) {
+        ++mGeneration;
+        mList = (newList == null)
+                ? Collections.<T>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(newList));
+        mAdapter.notifyDataSetChanged();
+    }
+
+}
@@ -0,0 +1,123 @@
+package uk.jumpingmouse.spotify.util;
+
+/**
+ * A set of longs held in a single open-addressed array, rather than as boxed Longs in
+ * a HashSet, so that a set of a few hundred entries costs a few kilobytes and no
+ * allocation per entry.
+ * Not thread-safe.
+ * @author Edmund Johnson
+ */
+public class LongHashSet {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    /** The value marking an empty slot; the set holds it separately. */
+    private static final long EMPTY = 0L;
+
+    private long[] mSlots;
+    private int mSize = 0;
+    private boolean mContainsEmpty = false;
+
+    /**
+     * Constructor.
+     */
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     * @param expectedSize the number of entries expected, so that the set need not grow
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        mSlots = new long[capacity];
+    }
+
+    /**
+     * Adds a value to the set.
+     * @param value the value
+     * @return true if the value was added, false if it was already in the set
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (mContainsEmpty) {
+                return false;
+            }
+            mContainsEmpty = true;
+            mSize++;
+            return true;
+        }
+        int index = indexOf(mSlots, value);
+        if (mSlots[index] == value) {
+            return false;
+        }
+        mSlots[index] = value;
+        mSize++;
+        // Keep the load factor at or below one half
+        if (mSize * 2 > mSlots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the set contains a value.
+     * @param value the value
+     * @return whether the set contains the value
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return mContainsEmpty;
+        }
+        return mSlots[indexOf(mSlots, value)] == value;
+    }
+
+    /**
+     * Returns the number of values in the set.
+     * @return the number of values in the set
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the index of the slot which holds a value, or of the empty slot at which
+     * it would be added.
+     * @param slots the slots, whose length is a power of two
+     * @param value the value, which is not the empty value
+     * @return the index of the slot
+     */
+    private static int indexOf(long[] slots, long value) {
+        int mask = slots.length - 1;
+        int index = mix(value) & mask;
+        while (slots[index] != EMPTY && slots[index] != value) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Doubles the number of slots, rehashing the values.
+     */
+    private void grow() {
+        long[] slots = new long[mSlots.length * 2];
+        for (long value : mSlots) {
+            if (value != EMPTY) {
+                slots[indexOf(slots, value)] = value;
+            }
+        }
+        mSlots = slots;
+    }
+
+    /**
+     * Spreads the bits of a value, so that values which differ only in their high bits
+     * do not collide.
+     * @param value the value
+     * @return the hash of the value
+     */
+    private static int mix(long value) {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+}
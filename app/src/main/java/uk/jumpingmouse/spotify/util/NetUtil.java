@@ -1,8 +1,16 @@
 package uk.jumpingmouse.spotify.util;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.preference.PreferenceManager;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+
+import uk.jumpingmouse.spotify.R;
 
 /**
  * Class containing internet-related utility methods.
@@ -10,6 +18,9 @@ import android.net.NetworkInfo;
  */
 public class NetUtil {
 
+    /** The message of the IOException with which OkHttp fails a call which has been cancelled. */
+    private static final String CANCELED_MESSAGE = "Canceled";
+
     /** Private constructor to prevent instantiation. */
     private NetUtil() {
     }
@@ -24,4 +35,41 @@ public class NetUtil {
         return activeNetworkInfo != null && activeNetworkInfo.isConnected();
     }
 
+    /**
+     * Returns whether data usage is to be reduced, i.e. whether the user has chosen to save
+     * data on metered networks, such as mobile data, and the active network is metered.
+     * @return true if data usage is to be reduced, false otherwise
+     */
+    public static boolean isSavingData(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        boolean saveDataWhenMetered = prefs.getBoolean(context.getString(R.string.pref_save_data_key),
+                context.getResources().getBoolean(R.bool.pref_save_data_default));
+        if (!saveDataWhenMetered) {
+            return false;
+        }
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return connectivityManager.isActiveNetworkMetered();
+    }
+
+    /**
+     * Returns whether a request failed because it was cancelled, i.e. its call was cancelled
+     * or its thread interrupted, rather than because of the network or the server.
+     * The thread's interrupt status cannot be relied upon, as Okio clears it when it
+     * throws an InterruptedIOException.
+     * @param error the error with which the request failed, which may be a RetrofitError
+     *              wrapping the underlying exception
+     * @return true if the request was cancelled, false otherwise
+     */
+    public static boolean isCancellation(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException)) {
+                return true;
+            }
+            if (cause instanceof IOException && CANCELED_MESSAGE.equals(cause.getMessage())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 }
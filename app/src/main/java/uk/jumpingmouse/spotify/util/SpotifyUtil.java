@@ -12,12 +12,6 @@ import kaaes.spotify.webapi.android.models.Track;
  */
 public class SpotifyUtil {
 
-    private static final int SMALL_IMAGE_SIZE_MIN = 180;
-    private static final int SMALL_IMAGE_SIZE_MAX = 220;
-    private static final int LARGE_IMAGE_SIZE_MIN = 600;
-    private static final int LARGE_IMAGE_SIZE_MAX = 1000;
-
-
     /** Private constructor to prevent instantiation. */
     private SpotifyUtil() {
     }
@@ -59,72 +53,82 @@ public class SpotifyUtil {
     }
 
     /**
-     * Returns a URL for a small image for a Spotify album.
-     * @param album the Spotify album
-     * @return a URL for a small image for the Spotify album.
-     */
-    public static String getImageUrlSmallForAlbum(AlbumSimple album) {
-        if (album == null) {
-            return null;
-        }
-        return SpotifyUtil.getImageUrlSmall(album.images);
-    }
-
-    /**
-     * Returns a URL for a small image for a Spotify album.
+     * Returns the URL of the image of a Spotify album best suited to a target size.
      * @param album the Spotify album
-     * @return a URL for a small image for the Spotify album.
+     * @param targetSizePx the size in pixels at which the image is to be displayed
+     * @param saveData whether to save data by choosing an image no larger than the target size
+     * @return the URL of the image best suited to the target size, or null if the album
+     *         has no images
+     * @see #getImageUrl(List, int, boolean)
      */
-    public static String getImageUrlLargeForAlbum(AlbumSimple album) {
+    public static String getImageUrlForAlbum(AlbumSimple album, int targetSizePx, boolean saveData) {
         if (album == null) {
             return null;
         }
-        return SpotifyUtil.getImageUrlLarge(album.images);
-    }
-
-    /**
-     * Returns a URL for a small image from a list of image objects.
-     * @param imageList the list of images
-     * @return The URL for a small image from the list is returned if found,
-     *         otherwise the URL for any image is returned.
-     *         If no images are found, null is returned.
-     */
-    public static String getImageUrlSmall(List<Image> imageList) {
-        return getImageUrl(imageList, SMALL_IMAGE_SIZE_MIN, SMALL_IMAGE_SIZE_MAX);
+        return SpotifyUtil.getImageUrl(album.images, targetSizePx, saveData);
     }
 
     /**
-     * Returns a URL for a large image from a list of image objects.
+     * Returns the URL of the image best suited to a target size from a list of image objects.
+     * Normally this is the smallest image whose width and height are both at least the target
+     * size, so that the image is not scaled up, but no more pixels than necessary are fetched;
+     * if there is no such image, the largest image is chosen.
+     * When saving data, this is the largest image whose width and height are both no more than
+     * the target size, as it will be scaled up; if there is no such image, the smallest image
+     * is chosen.
+     * Images of unknown size are only chosen if no image has a known size.
      * @param imageList the list of images
-     * @return The URL for a large image from the list is returned if found,
-     *         otherwise the URL for any image is returned.
+     * @param targetSizePx the size in pixels at which the image is to be displayed
+     * @param saveData whether to save data by choosing an image no larger than the target size
+     * @return the URL of the image best suited to the target size.
      *         If no images are found, null is returned.
      */
-    private static String getImageUrlLarge(List<Image> imageList) {
-        return getImageUrl(imageList, LARGE_IMAGE_SIZE_MIN, LARGE_IMAGE_SIZE_MAX);
+    public static String getImageUrl(List<Image> imageList, int targetSizePx, boolean saveData) {
+        if (imageList == null || imageList.isEmpty()) {
+            return null;
+        }
+        Image bestImage = null;
+        int bestSize = 0;
+        Image fallbackImage = null;
+        int fallbackSize = 0;
+        for (Image image : imageList) {
+            int size = getSize(image);
+            if (size <= 0) {
+                continue;
+            }
+            if (saveData ? size <= targetSizePx : size >= targetSizePx) {
+                // The image is on the preferred side of the target size, so prefer the one nearest to it
+                if (bestImage == null || (saveData ? size > bestSize : size < bestSize)) {
+                    bestImage = image;
+                    bestSize = size;
+                }
+            } else if (fallbackImage == null || (saveData ? size < fallbackSize : size > fallbackSize)) {
+                // The image is on the wrong side of the target size, so prefer the one nearest to it
+                fallbackImage = image;
+                fallbackSize = size;
+            }
+        }
+        if (bestImage != null) {
+            return bestImage.url;
+        }
+        if (fallbackImage != null) {
+            return fallbackImage.url;
+        }
+        // No image has a known size, so return the first image
+        return imageList.get(0).url;
     }
 
     /**
-     * Returns a URL for an image from a list of image objects.
-     * @param imageList the list of images
-     * @param sizeMin the minimum pixel size desired for the image height and width
-     * @param sizeMax the maximum pixel size desired for the image height and width
-     * @return The URL for the first image matching the size desired is returned if found,
-     *         otherwise the URL for the first image is returned.
-     *         If no images are found, null is returned.
+     * Returns the size of an image, i.e. the smaller of its width and height, as the image
+     * is scaled to fit within a view.
+     * @param image the image
+     * @return the size of the image in pixels, or 0 if this is not known
      */
-    private static String getImageUrl(List<Image> imageList, int sizeMin, int sizeMax) {
-        if (imageList != null && imageList.size() > 0) {
-            for (Image image : imageList) {
-                if (image.height >= sizeMin && image.height <= sizeMax
-                        && image.width >= sizeMin && image.width <= sizeMax) {
-                    return image.url;
-                }
-            }
-            // If no image matching the desired size was found, return the first image
-            return imageList.get(0).url;
+    private static int getSize(Image image) {
+        if (image == null || image.width == null || image.height == null) {
+            return 0;
         }
-        return null;
+        return Math.min(image.width, image.height);
     }
 
 }
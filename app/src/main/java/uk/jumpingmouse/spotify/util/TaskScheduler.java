@@ -0,0 +1,326 @@
+package uk.jumpingmouse.spotify.util;
+
+import android.os.AsyncTask;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.jumpingmouse.spotify.net.SpotifyServiceProvider;
+
+/**
+ * Schedules the app's background tasks.
+ * Network tasks and short pieces of UI-bound work, e.g. list diffing, run in separate
+ * bounded thread pools, so that neither can delay the other, as they would if both were
+ * run on AsyncTask's single serial executor.
+ * Network tasks are run in priority order, so that fetches for content which is visible
+ * are run ahead of prefetches.
+ * Tasks which coordinate network work, i.e. which wait for fetches that they submit to
+ * the network pool, run in a pool of their own, so that they cannot occupy the threads
+ * which their fetches need.
+ * Tasks are registered against an owner, e.g. a fragment, so that they can all be
+ * cancelled when the owner is destroyed.
+ * @author Edmund Johnson
+ */
+public class TaskScheduler {
+
+    /**
+     * The priority of a network task.
+     */
+    public enum Priority {
+        /** The task fetches content which the user is waiting to see. */
+        VISIBLE,
+        /** The task fetches content which the user may want to see soon. */
+        NORMAL,
+        /** The task fetches content speculatively. */
+        PREFETCH
+    }
+
+    private static final int NETWORK_POOL_SIZE = 4;
+    private static final int UI_WORK_POOL_SIZE = 2;
+    private static final int COORDINATOR_POOL_SIZE = 1;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static TaskScheduler sInstance;
+
+    private final ThreadPoolExecutor mNetworkExecutor;
+    private final ThreadPoolExecutor mUiWorkExecutor;
+    private final ThreadPoolExecutor mCoordinatorExecutor;
+
+    /** The tasks which have been executed, by owner. */
+    private final Map<Object, List<AsyncTask<?, ?, ?>>> mTasksByOwner = new WeakHashMap<>();
+
+    /** Sequence number used to run network tasks of equal priority in submission order. */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private final AtomicInteger mNetworkTaskCount = new AtomicInteger();
+    private final AtomicLong mTotalWaitMs = new AtomicLong();
+    private final AtomicLong mMaxWaitMs = new AtomicLong();
+
+    /**
+     * Returns the process-wide task scheduler, creating it if necessary.
+     * @return the task scheduler
+     */
+    public static synchronized TaskScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new TaskScheduler();
+        }
+        return sInstance;
+    }
+
+    private TaskScheduler() {
+        mNetworkExecutor = new ThreadPoolExecutor(NETWORK_POOL_SIZE, NETWORK_POOL_SIZE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new BackgroundThreadFactory("Network"));
+        mNetworkExecutor.allowCoreThreadTimeOut(true);
+
+        mUiWorkExecutor = new ThreadPoolExecutor(UI_WORK_POOL_SIZE, UI_WORK_POOL_SIZE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new BackgroundThreadFactory("UiWork"));
+        mUiWorkExecutor.allowCoreThreadTimeOut(true);
+
+        mCoordinatorExecutor = new ThreadPoolExecutor(COORDINATOR_POOL_SIZE, COORDINATOR_POOL_SIZE,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new BackgroundThreadFactory("Coordinator"));
+        mCoordinatorExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns an executor which runs tasks in the network pool at a supplied priority.
+     * @param priority the priority
+     * @return an executor for network tasks of the priority
+     */
+    public Executor getNetworkExecutor(final Priority priority) {
+        return new Executor() {
+            @Override
+            public void execute(@NonNull Runnable runnable) {
+                mNetworkExecutor.execute(new PrioritisedRunnable(runnable, priority, mSequence.getAndIncrement()));
+            }
+        };
+    }
+
+    /**
+     * Returns the executor for short pieces of UI-bound work, e.g. calculating the
+     * difference between two lists to be displayed, or resolving the URI of a preview
+     * to be played.
+     * @return the executor for UI-bound work
+     */
+    public Executor getUiWorkExecutor() {
+        return mUiWorkExecutor;
+    }
+
+    /**
+     * Executes an AsyncTask which performs network I/O.
+     * Must be called on the UI thread.
+     * @param owner the owner of the task, e.g. a fragment
+     * @param task the task
+     * @param priority the priority of the task
+     * @param params the parameters of the task
+     */
+    @SafeVarargs
+    public final <P> void executeNetworkTask(Object owner, AsyncTask<P, ?, ?> task, Priority priority, P... params) {
+        register(owner, task);
+        task.executeOnExecutor(getNetworkExecutor(priority), params);
+    }
+
+    /**
+     * Executes an AsyncTask which coordinates network work, i.e. which submits fetches to
+     * the network pool and waits for them, e.g. a crawl of related artists.
+     * The task does not itself occupy a network thread, so cannot starve its own fetches,
+     * or other network tasks, while it waits.
+     * Must be called on the UI thread.
+     * @param owner the owner of the task, e.g. a fragment
+     * @param task the task
+     * @param params the parameters of the task
+     */
+    @SafeVarargs
+    public final <P> void executeCoordinatingTask(Object owner, AsyncTask<P, ?, ?> task, P... params) {
+        register(owner, task);
+        task.executeOnExecutor(mCoordinatorExecutor, params);
+    }
+
+    /**
+     * Cancels all the tasks executed for an owner, e.g. when the owner is destroyed,
+     * together with any Spotify requests which they have tagged.
+     * @param owner the owner of the tasks
+     */
+    public void cancelTasks(Object owner) {
+        List<AsyncTask<?, ?, ?>> taskList = removeTasks(owner);
+        if (taskList != null) {
+            for (AsyncTask<?, ?, ?> task : taskList) {
+                task.cancel(true);
+                SpotifyServiceProvider.cancelRequests(task);
+            }
+        }
+    }
+
+    /**
+     * Detaches all the tasks executed for an owner, e.g. when the owner is destroyed by
+     * a configuration change and is about to be recreated.
+     * The tasks are cancelled without being interrupted, and their Spotify requests are
+     * left to complete, so that their results are discarded, but a fetch which the
+     * recreated owner shares with them is not cut short.
+     * @param owner the owner of the tasks
+     */
+    public void detachTasks(Object owner) {
+        List<AsyncTask<?, ?, ?>> taskList = removeTasks(owner);
+        if (taskList != null) {
+            for (AsyncTask<?, ?, ?> task : taskList) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Forgets all the tasks executed for an owner.
+     * @param owner the owner of the tasks
+     * @return the tasks, or null if none have been executed for the owner
+     */
+    private List<AsyncTask<?, ?, ?>> removeTasks(Object owner) {
+        synchronized (mTasksByOwner) {
+            return mTasksByOwner.remove(owner);
+        }
+    }
+
+    /**
+     * Records that a task has been executed for an owner, forgetting any of the owner's
+     * tasks which have finished.
+     * @param owner the owner of the task
+     * @param task the task
+     */
+    private void register(Object owner, AsyncTask<?, ?, ?> task) {
+        synchronized (mTasksByOwner) {
+            List<AsyncTask<?, ?, ?>> taskList = mTasksByOwner.get(owner);
+            if (taskList == null) {
+                taskList = new ArrayList<>();
+                mTasksByOwner.put(owner, taskList);
+            }
+            Iterator<AsyncTask<?, ?, ?>> iterator = taskList.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getStatus() == AsyncTask.Status.FINISHED) {
+                    iterator.remove();
+                }
+            }
+            taskList.add(task);
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // Metrics
+
+    /**
+     * Returns the number of network tasks waiting for a thread.
+     * @return the number of network tasks waiting for a thread
+     */
+    public int getNetworkQueueDepth() {
+        return mNetworkExecutor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of pieces of UI-bound work waiting for a thread.
+     * @return the number of pieces of UI-bound work waiting for a thread
+     */
+    public int getUiWorkQueueDepth() {
+        return mUiWorkExecutor.getQueue().size();
+    }
+
+    /**
+     * Returns the mean time network tasks have waited for a thread.
+     * @return the mean wait time in milliseconds
+     */
+    public long getMeanNetworkWaitMs() {
+        int taskCount = mNetworkTaskCount.get();
+        return taskCount == 0 ? 0 : mTotalWaitMs.get() / taskCount;
+    }
+
+    /**
+     * Returns the longest time a network task has waited for a thread.
+     * @return the maximum wait time in milliseconds
+     */
+    public long getMaxNetworkWaitMs() {
+        return mMaxWaitMs.get();
+    }
+
+    /**
+     * Records the time a network task waited for a thread.
+     * @param waitMs the wait time in milliseconds
+     */
+    private void recordWait(long waitMs) {
+        mNetworkTaskCount.incrementAndGet();
+        mTotalWaitMs.addAndGet(waitMs);
+        long maxWaitMs = mMaxWaitMs.get();
+        while (waitMs > maxWaitMs && !mMaxWaitMs.compareAndSet(maxWaitMs, waitMs)) {
+            maxWaitMs = mMaxWaitMs.get();
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    /**
+     * A runnable which is ordered by priority, then by submission order.
+     */
+    private class PrioritisedRunnable implements Runnable, Comparable<PrioritisedRunnable> {
+        private final Runnable mRunnable;
+        private final Priority mPriority;
+        private final long mSequence;
+        private final long mEnqueuedTime;
+
+        PrioritisedRunnable(Runnable runnable, Priority priority, long sequence) {
+            mRunnable = runnable;
+            mPriority = priority;
+            mSequence = sequence;
+            mEnqueuedTime = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void run() {
+            recordWait(SystemClock.elapsedRealtime() - mEnqueuedTime);
+            mRunnable.run();
+        }
+
+        @Override
+        public int compareTo(@NonNull PrioritisedRunnable other) {
+            int result = mPriority.compareTo(other.mPriority);
+            if (result == 0) {
+                result = mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A factory for named threads which run at background priority.
+     */
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final String mPoolName;
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        BackgroundThreadFactory(String poolName) {
+            mPoolName = poolName;
+        }
+
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, mPoolName + " #" + mThreadCount.incrementAndGet());
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package uk.jumpingmouse.spotify.util;
+
+import android.os.SystemClock;
+
+/**
+ * A token-bucket rate limiter, which allows bursts of up to a given number of permits,
+ * refilled at a steady rate, so that a burst of requests is spread out rather than
+ * being sent at once and rejected by the server.
+ * The bucket can also be paused, e.g. while the server has asked for no more requests.
+ * @author Edmund Johnson
+ */
+public class TokenBucket {
+
+    /** The maximum number of permits held, i.e. the largest burst allowed. */
+    private final double mCapacity;
+    /** The number of permits added per millisecond. */
+    private final double mPermitsPerMs;
+
+    private double mPermits;
+    private long mRefilledAt;
+    /** The time before which no permits are given, or 0 if the bucket is not paused. */
+    private long mPausedUntil = 0;
+
+    /**
+     * Constructor.
+     * The bucket starts full.
+     * @param capacity the maximum number of permits held, i.e. the largest burst allowed
+     * @param permitsPerSecond the number of permits added per second
+     */
+    public TokenBucket(int capacity, double permitsPerSecond) {
+        mCapacity = capacity;
+        mPermitsPerMs = permitsPerSecond / 1000;
+        mPermits = capacity;
+        mRefilledAt = now();
+    }
+
+    /**
+     * Takes a permit, waiting until one is available.
+     * This method must be run in a background thread.
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long waitMs;
+        while ((waitMs = tryAcquire()) > 0) {
+            Thread.sleep(waitMs);
+        }
+    }
+
+    /**
+     * Takes a permit if one is available.
+     * @return 0 if a permit was taken, otherwise the time in milliseconds until one
+     *         may be available
+     */
+    synchronized long tryAcquire() {
+        long now = now();
+        if (now < mPausedUntil) {
+            return mPausedUntil - now;
+        }
+        mPermits = Math.min(mCapacity, mPermits + (now - mRefilledAt) * mPermitsPerMs);
+        mRefilledAt = now;
+        if (mPermits >= 1) {
+            mPermits--;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - mPermits) / mPermitsPerMs));
+    }
+
+    /**
+     * Gives no permits for a period, e.g. the period for which the server has asked
+     * for no more requests. The bucket is emptied, so that requests resume gradually.
+     * @param durationMs the period in milliseconds
+     */
+    public synchronized void pause(long durationMs) {
+        long pausedUntil = now() + durationMs;
+        if (pausedUntil > mPausedUntil) {
+            mPausedUntil = pausedUntil;
+            mPermits = 0;
+            mRefilledAt = pausedUntil;
+        }
+    }
+
+    /**
+     * Returns the current time, from a clock which does not jump, e.g. when the user
+     * changes the time. Tests override this to control the passage of time.
+     * @return the current time in milliseconds
+     */
+    long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+}
@@ -0,0 +1,153 @@
+package uk.jumpingmouse.spotify.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link ArtistSearchCache}, run against a temporary directory and a fake clock.
+ * @author Edmund Johnson
+ */
+public class ArtistSearchCacheTest {
+
+    private static final int IMAGE_SIZE_PX = 160;
+    private static final long TIME_TO_LIVE_MS = TimeUnit.HOURS.toMillis(1);
+    /** The number of entries held by the memory tier. */
+    private static final int MEMORY_CACHE_MAX_ENTRIES = 32;
+
+    private static final List<AppArtist> ARTISTS = Arrays.asList(
+            new AppArtist("4Z8W4fKeB5YxbusRsdQVPb", "Radiohead", "https://i.scdn.co/image/radiohead160"),
+            new AppArtist("0noImagesArtist0000000", "Radio Without Images", null));
+
+    private File mDiskCacheDir;
+    private FakeClockArtistSearchCache mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mDiskCacheDir = File.createTempFile("artist_search", "");
+        assertTrue(mDiskCacheDir.delete());
+        mCache = new FakeClockArtistSearchCache(mDiskCacheDir);
+    }
+
+    @After
+    public void tearDown() {
+        mCache.clear();
+        mDiskCacheDir.delete();
+    }
+
+    @Test
+    public void putPageIsReturnedFromMemory() {
+        mCache.put("radio", 0, IMAGE_SIZE_PX, false, ARTISTS);
+
+        assertEquals(ARTISTS, mCache.get("radio", 0, IMAGE_SIZE_PX, false));
+        assertEquals(1, mCache.getMemoryHitCount());
+    }
+
+    @Test
+    public void searchesDifferingInCaseOrSpacingShareEntry() {
+        mCache.put("  Radio  Head ", 0, IMAGE_SIZE_PX, false, ARTISTS);
+
+        assertEquals(ARTISTS, mCache.get("radio head", 0, IMAGE_SIZE_PX, false));
+    }
+
+    @Test
+    public void pageIsNotReturnedForOtherOffsetImageSizeOrDataSaving() {
+        mCache.put("radio", 0, IMAGE_SIZE_PX, false, ARTISTS);
+
+        assertNull(mCache.get("radio", 20, IMAGE_SIZE_PX, false));
+        assertNull(mCache.get("radio", 0, IMAGE_SIZE_PX * 2, false));
+        assertNull(mCache.get("radio", 0, IMAGE_SIZE_PX, true));
+        assertEquals(3, mCache.getMissCount());
+    }
+
+    @Test
+    public void pageExpiresAfterTimeToLive() {
+        mCache.put("radio", 0, IMAGE_SIZE_PX, false, ARTISTS);
+
+        mCache.advance(TIME_TO_LIVE_MS);
+        assertEquals(ARTISTS, mCache.get("radio", 0, IMAGE_SIZE_PX, false));
+        mCache.advance(1);
+        assertNull(mCache.get("radio", 0, IMAGE_SIZE_PX, false));
+
+        // The expired entry was removed from both tiers
+        assertNull(new FakeClockArtistSearchCache(mDiskCacheDir).get("radio", 0, IMAGE_SIZE_PX, false));
+    }
+
+    @Test
+    public void leastRecentlyUsedPageIsEvictedFromMemoryToDisk() {
+        for (int offset = 0; offset < MEMORY_CACHE_MAX_ENTRIES; offset++) {
+            mCache.put("radio", offset, IMAGE_SIZE_PX, false, ARTISTS);
+        }
+        // Using the first page makes the second the least recently used
+        mCache.get("radio", 0, IMAGE_SIZE_PX, false);
+        mCache.put("radio", MEMORY_CACHE_MAX_ENTRIES, IMAGE_SIZE_PX, false, ARTISTS);
+        int memoryHitCount = mCache.getMemoryHitCount();
+
+        assertEquals(ARTISTS, mCache.get("radio", 0, IMAGE_SIZE_PX, false));
+        assertEquals(memoryHitCount + 1, mCache.getMemoryHitCount());
+        assertEquals(ARTISTS, mCache.get("radio", 1, IMAGE_SIZE_PX, false));
+        assertEquals(1, mCache.getDiskHitCount());
+        // The page read from disk is held in memory again
+        mCache.get("radio", 1, IMAGE_SIZE_PX, false);
+        assertEquals(1, mCache.getDiskHitCount());
+    }
+
+    @Test
+    public void diskTierSurvivesNewCache() {
+        mCache.put("radio", 0, IMAGE_SIZE_PX, false, ARTISTS);
+
+        FakeClockArtistSearchCache restartedCache = new FakeClockArtistSearchCache(mDiskCacheDir);
+
+        assertEquals(ARTISTS, restartedCache.get("radio", 0, IMAGE_SIZE_PX, false));
+        assertEquals(1, restartedCache.getDiskHitCount());
+        assertNull(restartedCache.get("radio", 0, IMAGE_SIZE_PX, true));
+    }
+
+    @Test
+    public void corruptDiskEntryIsTreatedAsMiss() throws IOException {
+        mCache.put("radio", 0, IMAGE_SIZE_PX, false, ARTISTS);
+        File[] files = mDiskCacheDir.listFiles();
+        assertEquals(1, files.length);
+        FileOutputStream out = new FileOutputStream(files[0]);
+        out.write(new byte[] {0, 0, 0, 3, 0});
+        out.close();
+
+        assertNull(new FakeClockArtistSearchCache(mDiskCacheDir).get("radio", 0, IMAGE_SIZE_PX, false));
+        assertEquals(0, mDiskCacheDir.listFiles().length);
+    }
+
+    //-------------------------------------------------------------------------------
+    // FakeClockArtistSearchCache
+
+    /**
+     * An artist search cache whose clock moves only when it is told to.
+     */
+    private static class FakeClockArtistSearchCache extends ArtistSearchCache {
+        private long mNow = TimeUnit.DAYS.toMillis(1);
+
+        FakeClockArtistSearchCache(File diskCacheDir) {
+            super(diskCacheDir);
+        }
+
+        @Override
+        long now() {
+            return mNow;
+        }
+
+        void advance(long ms) {
+            mNow += ms;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package uk.jumpingmouse.spotify.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link StringInterner}.
+ * @author Edmund Johnson
+ */
+public class StringInternerTest {
+
+    @Test
+    public void equalStringsShareOneInstance() {
+        String first = StringInterner.intern(copy("Radiohead"));
+        String second = StringInterner.intern(copy("Radiohead"));
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void differentStringsAreNotShared() {
+        String first = StringInterner.intern(copy("OK Computer"));
+        String second = StringInterner.intern(copy("Kid A"));
+
+        assertEquals("OK Computer", first);
+        assertEquals("Kid A", second);
+    }
+
+    @Test
+    public void nullIsInternedAsNull() {
+        assertNull(StringInterner.intern(null));
+    }
+
+    @Test
+    public void tracksShareTheirArtistAndAlbumStrings() {
+        AppTrack first = new AppTrack("id1", "Airbag", copy("OK Computer"), copy("https://i.scdn.co/image/s"),
+                copy("https://i.scdn.co/image/l"), null, 284000, 30000, copy("Radiohead"));
+        AppTrack second = new AppTrack("id2", "Let Down", copy("OK Computer"), copy("https://i.scdn.co/image/s"),
+                copy("https://i.scdn.co/image/l"), null, 299000, 30000, copy("Radiohead"));
+        AppArtist artist = new AppArtist("artistId", copy("Radiohead"), null);
+
+        assertSame(first.getAlbumName(), second.getAlbumName());
+        assertSame(first.getImageUrlSmall(), second.getImageUrlSmall());
+        assertSame(first.getImageUrlLarge(), second.getImageUrlLarge());
+        assertSame(first.getArtistName(), second.getArtistName());
+        assertSame(first.getArtistName(), artist.getName());
+    }
+
+    /**
+     * Returns a new instance of a string, as if it had been decoded from a response.
+     * @param string the string
+     * @return a new string equal to the string
+     */
+    private static String copy(String string) {
+        return new String(string);
+    }
+
+}
@@ -0,0 +1,141 @@
+package uk.jumpingmouse.spotify.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link TopTrackComparison}.
+ * @author Edmund Johnson
+ */
+public class TopTrackComparisonTest {
+
+    private static final List<String> GB_US = Arrays.asList("GB", "US");
+
+    @Test
+    public void trackPopularEverywhereRanksAboveTrackTopInOneCountry() {
+        Map<String, List<AppTrack>> tracksByCountry = new HashMap<>();
+        tracksByCountry.put("GB", tracks("x", "y"));
+        tracksByCountry.put("US", tracks("y", "z"));
+
+        TopTrackComparison comparison = new TopTrackComparison(GB_US, tracksByCountry);
+
+        // Unranked counts as 3: x = 1 + 3, y = 2 + 1, z = 3 + 2
+        assertEquals(Arrays.asList("y", "x", "z"), ids(comparison.getRankedTracks()));
+    }
+
+    @Test
+    public void tieIsBrokenByBestPosition() {
+        Map<String, List<AppTrack>> tracksByCountry = new HashMap<>();
+        tracksByCountry.put("GB", tracks("a", "b", "c", "d"));
+        tracksByCountry.put("US", tracks("d", "c"));
+
+        TopTrackComparison comparison = new TopTrackComparison(GB_US, tracksByCountry);
+
+        // Unranked counts as 5: c = 3 + 2 and d = 4 + 1 tie, and d has the better best position
+        assertEquals(Arrays.asList("d", "c", "a", "b"), ids(comparison.getRankedTracks()));
+    }
+
+    @Test
+    public void tieOnSumAndBestPositionIsBrokenByOrderFound() {
+        Map<String, List<AppTrack>> tracksByCountry = new HashMap<>();
+        tracksByCountry.put("GB", tracks("a", "b", "c"));
+        tracksByCountry.put("US", tracks("b", "a", "d"));
+
+        TopTrackComparison comparison = new TopTrackComparison(GB_US, tracksByCountry);
+
+        // a and b tie on 3 with best 1; c and d tie on 7 with best 3; GB's tracks are found first
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ids(comparison.getRankedTracks()));
+    }
+
+    @Test
+    public void trackMissingFromCountryCountsBelowLongestList() {
+        Map<String, List<AppTrack>> tracksByCountry = new HashMap<>();
+        tracksByCountry.put("GB", tracks("a"));
+        tracksByCountry.put("US", tracks("b", "c", "d", "a"));
+
+        TopTrackComparison comparison = new TopTrackComparison(GB_US, tracksByCountry);
+
+        // Unranked counts as 5 in both countries: a = 1 + 4, b = 5 + 1, c = 5 + 2, d = 5 + 3
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ids(comparison.getRankedTracks()));
+        assertEquals(TopTrackComparison.NOT_RANKED, comparison.getPosition("b", "GB"));
+    }
+
+    @Test
+    public void countryWithNoTracksRanksNothing() {
+        Map<String, List<AppTrack>> tracksByCountry = new HashMap<>();
+        tracksByCountry.put("GB", tracks("a", "b"));
+
+        TopTrackComparison comparison = new TopTrackComparison(GB_US, tracksByCountry);
+
+        assertEquals(Arrays.asList("a", "b"), ids(comparison.getRankedTracks()));
+        assertEquals(TopTrackComparison.NOT_RANKED, comparison.getPosition("a", "US"));
+        assertEquals(GB_US, comparison.getCountryCodes());
+    }
+
+    @Test
+    public void getPositionReturnsPositionInEachCountry() {
+        Map<String, List<AppTrack>> tracksByCountry = new HashMap<>();
+        tracksByCountry.put("GB", tracks("a", "b", "a"));
+        tracksByCountry.put("US", tracks("c", "a"));
+
+        TopTrackComparison comparison = new TopTrackComparison(GB_US, tracksByCountry);
+
+        // A track listed twice keeps its first position
+        assertEquals(1, comparison.getPosition("a", "GB"));
+        assertEquals(2, comparison.getPosition("a", "US"));
+        assertEquals(2, comparison.getPosition("b", "GB"));
+        assertEquals(1, comparison.getPosition("c", "US"));
+        assertEquals(3, comparison.getRankedTracks().size());
+    }
+
+    @Test
+    public void getPositionOfUnknownTrackOrCountryIsNotRanked() {
+        Map<String, List<AppTrack>> tracksByCountry = new HashMap<>();
+        tracksByCountry.put("GB", tracks("a"));
+        tracksByCountry.put("US", tracks("a"));
+
+        TopTrackComparison comparison = new TopTrackComparison(GB_US, tracksByCountry);
+
+        assertEquals(TopTrackComparison.NOT_RANKED, comparison.getPosition("z", "GB"));
+        assertEquals(TopTrackComparison.NOT_RANKED, comparison.getPosition("a", "FR"));
+    }
+
+    @Test
+    public void trackWithoutIdIsIgnored() {
+        Map<String, List<AppTrack>> tracksByCountry = new HashMap<>();
+        tracksByCountry.put("GB", Arrays.asList(track(null), track("a")));
+
+        TopTrackComparison comparison = new TopTrackComparison(GB_US, tracksByCountry);
+
+        assertEquals(Arrays.asList("a"), ids(comparison.getRankedTracks()));
+        assertEquals(2, comparison.getPosition("a", "GB"));
+    }
+
+    private static AppTrack track(String id) {
+        return new AppTrack(id, "Track " + id, "Album", null, null, null, 200000, 30000, "Artist");
+    }
+
+    private static List<AppTrack> tracks(String... ids) {
+        List<AppTrack> trackList = new ArrayList<>();
+        for (String id : ids) {
+            trackList.add(track(id));
+        }
+        return trackList;
+    }
+
+    private static List<String> ids(List<AppTrack> trackList) {
+        List<String> ids = new ArrayList<>();
+        for (AppTrack track : trackList) {
+            ids.add(track.getId());
+        }
+        return ids;
+    }
+
+}
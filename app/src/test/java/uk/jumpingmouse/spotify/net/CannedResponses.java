@@ -0,0 +1,74 @@
+package uk.jumpingmouse.spotify.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+
+import retrofit.client.Header;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+/**
+ * Creates responses from canned JSON, as they would be returned by the Spotify Web API.
+ * @author Edmund Johnson
+ */
+final class CannedResponses {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Private constructor to prevent instantiation. */
+    private CannedResponses() {
+    }
+
+    /**
+     * Returns a response whose body is read from a test resource.
+     * @param path the path of the resource, e.g. "/decoder/artists.json"
+     * @return the response
+     * @throws FileNotFoundException if there is no such resource
+     * @throws IOException if the resource could not be read
+     */
+    static Response fromResource(String path) throws IOException {
+        InputStream in = CannedResponses.class.getResourceAsStream(path);
+        if (in == null) {
+            throw new FileNotFoundException("No canned response " + path);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return create(out.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns a response with a given body.
+     * @param json the body of the response
+     * @return the response
+     */
+    static Response fromJson(String json) {
+        return create(json.getBytes(UTF_8));
+    }
+
+    /**
+     * Returns a response with no body.
+     * @return the response
+     */
+    static Response withoutBody() {
+        return new Response("https://api.spotify.com/v1", 204, "No Content",
+                Collections.<Header>emptyList(), null);
+    }
+
+    private static Response create(byte[] body) {
+        return new Response("https://api.spotify.com/v1", 200, "OK", Collections.<Header>emptyList(),
+                new TypedByteArray("application/json", body));
+    }
+
+}
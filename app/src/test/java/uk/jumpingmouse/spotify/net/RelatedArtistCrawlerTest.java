@@ -0,0 +1,182 @@
+package uk.jumpingmouse.spotify.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit.client.Response;
+import uk.jumpingmouse.spotify.data.AppArtist;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link RelatedArtistCrawler}, run against canned related artists responses.
+ * The canned graph is:
+ * A - B, C; B - C, D; C - A, E; D - F; E - none; F - G, whose response is missing.
+ * @author Edmund Johnson
+ */
+public class RelatedArtistCrawlerTest {
+
+    private static final int IMAGE_SIZE_PX = 160;
+
+    private ExecutorService mExecutor;
+    private CannedRelatedArtistSource mSource;
+    private RelatedArtistCrawler mCrawler;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(4);
+        mSource = new CannedRelatedArtistSource();
+        mCrawler = new RelatedArtistCrawler(mSource, mExecutor, 2);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void crawlFindsArtistsLevelByLevel() throws InterruptedException {
+        final List<String> levels = new ArrayList<>();
+        List<AppArtist> found = mCrawler.crawl(artist("artistA"), 2, 100, new RelatedArtistCrawler.Listener() {
+            @Override
+            public void onLevelExplored(int depth, List<AppArtist> artists) {
+                levels.add(depth + ":" + ids(artists));
+            }
+        });
+
+        // The root and artists already found are not found again
+        assertEquals("[artistB, artistC, artistD, artistE]", ids(found).toString());
+        assertEquals("[1:[artistB, artistC], 2:[artistD, artistE]]", levels.toString());
+    }
+
+    @Test
+    public void crawlDecodesArtistsFromResponses() throws InterruptedException {
+        List<AppArtist> found = mCrawler.crawl(artist("artistA"), 1, 100, null);
+
+        AppArtist artistB = found.get(0);
+        assertEquals("Artist B", artistB.getName());
+        assertEquals("https://i.scdn.co/image/b160", artistB.getImageUrlSmall());
+    }
+
+    @Test
+    public void crawlStopsAtMaxDepth() throws InterruptedException {
+        List<AppArtist> found = mCrawler.crawl(artist("artistA"), 1, 100, null);
+
+        assertEquals("[artistB, artistC]", ids(found).toString());
+        assertEquals(1, mSource.getRequestCount());
+    }
+
+    @Test
+    public void crawlStopsAtMaxArtists() throws InterruptedException {
+        List<AppArtist> found = mCrawler.crawl(artist("artistA"), 10, 3, null);
+
+        assertEquals("[artistB, artistC, artistD]", ids(found).toString());
+    }
+
+    @Test
+    public void crawlTreatsFailedFetchAsNoRelatedArtists() throws InterruptedException {
+        // The related artists of G cannot be fetched
+        List<AppArtist> found = mCrawler.crawl(artist("artistA"), 10, 100, null);
+
+        assertEquals("[artistB, artistC, artistD, artistE, artistF, artistG]", ids(found).toString());
+    }
+
+    @Test
+    public void crawlReadsRepeatedArtistsFromCache() throws InterruptedException {
+        mCrawler.crawl(artist("artistA"), 2, 100, null);
+        int fetchCount = mCrawler.getFetchCount();
+        int requestCount = mSource.getRequestCount();
+
+        mCrawler.crawl(artist("artistB"), 2, 100, null);
+
+        // The related artists of B and C were fetched by the first crawl, so only D's are fetched
+        assertEquals(fetchCount + 1, mCrawler.getFetchCount());
+        assertEquals(requestCount + 1, mSource.getRequestCount());
+        assertEquals(2, mCrawler.getCacheHitCount());
+    }
+
+    @Test
+    public void crawlBoundsFetchesInFlight() throws InterruptedException {
+        // The second and third levels each have two artists, whose fetches are made one at a time
+        RelatedArtistCrawler crawler = new RelatedArtistCrawler(mSource, mExecutor, 1);
+        mSource.setDelayMs(50);
+        crawler.crawl(artist("artistA"), 3, 100, null);
+
+        assertEquals(5, mSource.getRequestCount());
+        assertEquals(1, mSource.getMaxInFlight());
+    }
+
+    private static AppArtist artist(String artistId) {
+        return new AppArtist(artistId, artistId, null);
+    }
+
+    private static List<String> ids(List<AppArtist> artists) {
+        List<String> ids = new ArrayList<>();
+        for (AppArtist artist : artists) {
+            ids.add(artist.getId());
+        }
+        return ids;
+    }
+
+    //-------------------------------------------------------------------------------
+    // CannedRelatedArtistSource
+
+    /**
+     * A source of related artists which decodes canned responses, recording the number
+     * of requests made and in flight. The related artists of an artist with no canned
+     * response cannot be fetched.
+     */
+    private static class CannedRelatedArtistSource implements RelatedArtistCrawler.RelatedArtistSource {
+        private final AtomicInteger mRequestCount = new AtomicInteger();
+        private final AtomicInteger mInFlight = new AtomicInteger();
+        private final AtomicInteger mMaxInFlight = new AtomicInteger();
+        private volatile long mDelayMs = 0;
+
+        @Override
+        public List<AppArtist> getRelatedArtists(String artistId) throws IOException {
+            mRequestCount.incrementAndGet();
+            int inFlight = mInFlight.incrementAndGet();
+            try {
+                int maxInFlight;
+                while (inFlight > (maxInFlight = mMaxInFlight.get())
+                        && !mMaxInFlight.compareAndSet(maxInFlight, inFlight)) {
+                    // Retry until the maximum is updated
+                }
+                if (mDelayMs > 0) {
+                    try {
+                        Thread.sleep(mDelayMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return Collections.emptyList();
+                    }
+                }
+                Response response = CannedResponses.fromResource("/related-artists/" + artistId + ".json");
+                return SpotifyResponseDecoder.readRelatedArtists(response, IMAGE_SIZE_PX, false);
+            } finally {
+                mInFlight.decrementAndGet();
+            }
+        }
+
+        void setDelayMs(long delayMs) {
+            mDelayMs = delayMs;
+        }
+
+        int getRequestCount() {
+            return mRequestCount.get();
+        }
+
+        int getMaxInFlight() {
+            return mMaxInFlight.get();
+        }
+    }
+
+}
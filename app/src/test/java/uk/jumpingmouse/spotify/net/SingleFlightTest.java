@@ -0,0 +1,243 @@
+package uk.jumpingmouse.spotify.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SingleFlight}.
+ * @author Edmund Johnson
+ */
+public class SingleFlightTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private ExecutorService mExecutor;
+    private SingleFlight<String, String> mSingleFlight;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newCachedThreadPool();
+        mSingleFlight = new SingleFlight<>("test");
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void identicalConcurrentFetchesShareOneCall() throws Exception {
+        BlockingFetch fetch = new BlockingFetch("result");
+        List<Future<String>> results = new ArrayList<>();
+        results.add(execute("key", fetch));
+        fetch.awaitStarted();
+        results.add(execute("key", fetch));
+        results.add(execute("key", fetch));
+        awaitCollapsedCount(2);
+
+        fetch.release();
+
+        String first = results.get(0).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        for (Future<String> result : results) {
+            assertSame(first, result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertEquals(1, fetch.getCallCount());
+        assertEquals(3, mSingleFlight.getRequestCount());
+    }
+
+    @Test
+    public void fetchesWithDifferentKeysAreNotShared() throws Exception {
+        BlockingFetch fetch = new BlockingFetch("result");
+        Future<String> first = execute("key1", fetch);
+        fetch.awaitStarted();
+        Future<String> second = execute("key2", fetch);
+
+        fetch.release();
+
+        first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(2, fetch.getCallCount());
+        assertEquals(0, mSingleFlight.getCollapsedCount());
+    }
+
+    @Test
+    public void completedFetchIsNotReused() throws Exception {
+        BlockingFetch fetch = new BlockingFetch("result");
+        fetch.release();
+
+        mSingleFlight.execute("key", fetch);
+        mSingleFlight.execute("key", fetch);
+
+        assertEquals(2, fetch.getCallCount());
+    }
+
+    @Test
+    public void failureIsSharedWithWaitingThreads() throws Exception {
+        IOException failure = new IOException("HTTP 500");
+        BlockingFetch fetch = new BlockingFetch(failure);
+        Future<String> leader = execute("key", fetch);
+        fetch.awaitStarted();
+        Future<String> waiter = execute("key", fetch);
+        awaitCollapsedCount(1);
+
+        fetch.release();
+
+        assertSame(failure, getFailure(leader));
+        assertSame(failure, getFailure(waiter));
+        assertEquals(1, fetch.getCallCount());
+    }
+
+    @Test
+    public void cancelledFetchIsMadeAgainByWaitingThread() throws Exception {
+        // The first call is cancelled, as Okio reports it; the second succeeds
+        BlockingFetch fetch = new BlockingFetch(new InterruptedIOException("interrupted"), "result");
+        Future<String> leader = execute("key", fetch);
+        fetch.awaitStarted();
+        Future<String> waiter = execute("key", fetch);
+        awaitCollapsedCount(1);
+
+        fetch.release();
+
+        assertTrue(getFailure(leader) instanceof InterruptedIOException);
+        assertEquals("result", waiter.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, fetch.getCallCount());
+    }
+
+    @Test
+    public void callCancelledByOkHttpIsMadeAgainByWaitingThread() throws Exception {
+        // OkHttp reports a call cancelled before its response as "Canceled"
+        BlockingFetch fetch = new BlockingFetch(new IOException("Canceled"), "result");
+        Future<String> leader = execute("key", fetch);
+        fetch.awaitStarted();
+        Future<String> waiter = execute("key", fetch);
+        awaitCollapsedCount(1);
+
+        fetch.release();
+
+        getFailure(leader);
+        assertEquals("result", waiter.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, fetch.getCallCount());
+    }
+
+    @Test
+    public void fetchOfDetachedCallerIsSharedWithNewCaller() throws Exception {
+        // As when a fragment is recreated by a rotation: the first caller's task is
+        // cancelled without interrupting it, and the recreated task makes the same fetch
+        BlockingFetch fetch = new BlockingFetch("result");
+        Future<String> detached = execute("key", fetch);
+        fetch.awaitStarted();
+        detached.cancel(false);
+        Future<String> joined = execute("key", fetch);
+        awaitCollapsedCount(1);
+
+        fetch.release();
+
+        assertEquals("result", joined.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, fetch.getCallCount());
+        assertEquals(1, mSingleFlight.getCollapsedCount());
+    }
+
+    private Future<String> execute(final String key, final BlockingFetch fetch) {
+        return mExecutor.submit(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return mSingleFlight.execute(key, fetch);
+            }
+        });
+    }
+
+    private void awaitCollapsedCount(int collapsedCount) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (mSingleFlight.getCollapsedCount() < collapsedCount) {
+            if (System.nanoTime() > deadline) {
+                fail("Only " + mSingleFlight.getCollapsedCount() + " fetches were collapsed");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static Throwable getFailure(Future<String> result) throws Exception {
+        try {
+            result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        fail("The fetch did not fail");
+        return null;
+    }
+
+    //-------------------------------------------------------------------------------
+    // BlockingFetch
+
+    /**
+     * A fetch which blocks until it is released, then returns or throws its outcomes in
+     * turn, one per call, repeating the last.
+     */
+    private static class BlockingFetch implements SingleFlight.Fetch<String> {
+        private final Object[] mOutcomes;
+        private final AtomicInteger mCallCount = new AtomicInteger();
+        private final CountDownLatch mStarted = new CountDownLatch(1);
+        private final CountDownLatch mReleased = new CountDownLatch(1);
+
+        /**
+         * Constructor.
+         * @param outcomes the result or IOException of each call
+         */
+        BlockingFetch(Object... outcomes) {
+            mOutcomes = outcomes;
+        }
+
+        @Override
+        public String fetch() throws IOException {
+            int call = mCallCount.getAndIncrement();
+            mStarted.countDown();
+            try {
+                if (!mReleased.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IOException("Fetch was not released");
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while blocked");
+            }
+            Object outcome = mOutcomes[Math.min(call, mOutcomes.length - 1)];
+            if (outcome instanceof IOException) {
+                throw (IOException) outcome;
+            }
+            // A new instance, so that sharing the result can be told from equal results
+            return new String((String) outcome);
+        }
+
+        void awaitStarted() throws InterruptedException {
+            if (!mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                fail("The fetch did not start");
+            }
+        }
+
+        void release() {
+            mReleased.countDown();
+        }
+
+        int getCallCount() {
+            return mCallCount.get();
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package uk.jumpingmouse.spotify.net;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.jumpingmouse.spotify.data.AppArtist;
+import uk.jumpingmouse.spotify.data.AppTrack;
+import uk.jumpingmouse.spotify.data.ArtistDetails;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link SpotifyResponseDecoder}, run against canned responses.
+ * @author Edmund Johnson
+ */
+public class SpotifyResponseDecoderTest {
+
+    private static final int IMAGE_SIZE_SMALL_PX = 64;
+    private static final int IMAGE_SIZE_LARGE_PX = 300;
+    private static final String DEFAULT_ALBUM_NAME = "Unknown album";
+    private static final String DEFAULT_ARTIST_NAME = "Unknown artist";
+    private static final long PREVIEW_DURATION = 30000;
+
+    @Test
+    public void readArtistsSkipsNullArtists() throws IOException {
+        List<AppArtist> artists = SpotifyResponseDecoder.readArtists(
+                CannedResponses.fromResource("/decoder/search-artists.json"), 160, false);
+
+        assertEquals(2, artists.size());
+        AppArtist radiohead = artists.get(0);
+        assertEquals("4Z8W4fKeB5YxbusRsdQVPb", radiohead.getId());
+        assertEquals("Radiohead", radiohead.getName());
+        assertEquals("https://i.scdn.co/image/radiohead160", radiohead.getImageUrlSmall());
+        assertEquals("Radio Without Images", artists.get(1).getName());
+        assertNull(artists.get(1).getImageUrlSmall());
+    }
+
+    @Test
+    public void readArtistsChoosesImageForSize() throws IOException {
+        List<AppArtist> artists = SpotifyResponseDecoder.readArtists(
+                CannedResponses.fromResource("/decoder/search-artists.json"), 200, false);
+        List<AppArtist> savingDataArtists = SpotifyResponseDecoder.readArtists(
+                CannedResponses.fromResource("/decoder/search-artists.json"), 200, true);
+
+        // The smallest image no smaller than the target size, or when saving data the
+        // largest image no larger than it
+        assertEquals("https://i.scdn.co/image/radiohead320", artists.get(0).getImageUrlSmall());
+        assertEquals("https://i.scdn.co/image/radiohead160", savingDataArtists.get(0).getImageUrlSmall());
+    }
+
+    @Test
+    public void readTracksKeepsFieldsUsedByApp() throws IOException {
+        List<AppTrack> tracks = readTracks("/decoder/top-tracks.json");
+
+        assertEquals(2, tracks.size());
+        assertEquals(new AppTrack("6LgJvl0Xdtc73RJ1mmpotq", "Airbag", "OK Computer",
+                "https://i.scdn.co/image/okc64", "https://i.scdn.co/image/okc300",
+                "https://p.scdn.co/mp3-preview/airbag", 284000, PREVIEW_DURATION, "Radiohead"),
+                tracks.get(0));
+    }
+
+    @Test
+    public void readTracksUsesDefaultsForMissingFields() throws IOException {
+        List<AppTrack> tracks = readTracks("/decoder/top-tracks.json");
+
+        assertEquals(new AppTrack("2fuYa3Lx06QQJAm0MjztKr", "Let Down", DEFAULT_ALBUM_NAME,
+                null, null, null, 299000, PREVIEW_DURATION, DEFAULT_ARTIST_NAME), tracks.get(1));
+    }
+
+    @Test
+    public void readArtistDetailsSkipsArtistsNotFound() throws IOException {
+        List<ArtistDetails> detailsList = SpotifyResponseDecoder.readArtistDetails(
+                CannedResponses.fromResource("/decoder/artists.json"));
+
+        assertEquals(2, detailsList.size());
+        assertEquals(new ArtistDetails("4Z8W4fKeB5YxbusRsdQVPb",
+                Arrays.asList("alternative rock", "permanent wave"), 4000000, 80), detailsList.get(0));
+        ArtistDetails unknownFollowers = detailsList.get(1);
+        assertEquals("0unknownFollowers00000", unknownFollowers.getId());
+        assertEquals(0, unknownFollowers.getFollowers());
+        assertEquals(0, unknownFollowers.getPopularity());
+        assertEquals(0, unknownFollowers.getGenres().size());
+    }
+
+    @Test
+    public void readAlbumIdsSkipsNullIds() throws IOException {
+        List<String> albumIds = SpotifyResponseDecoder.readAlbumIds(
+                CannedResponses.fromResource("/decoder/artist-albums.json"));
+
+        assertEquals(Arrays.asList("6dVIqQ8qmQ5GBnJ9shOYGE", "19RUXBFyM4PpmrLRdtqWbp"), albumIds);
+    }
+
+    @Test
+    public void readAlbumTracksReadsTracksInAlbumOrder() throws IOException {
+        List<AppTrack> tracks = SpotifyResponseDecoder.readAlbumTracks(
+                CannedResponses.fromResource("/decoder/albums.json"), IMAGE_SIZE_SMALL_PX,
+                IMAGE_SIZE_LARGE_PX, false, DEFAULT_ALBUM_NAME, DEFAULT_ARTIST_NAME, PREVIEW_DURATION);
+
+        assertEquals(3, tracks.size());
+        // The album's name and images follow its tracks in the response
+        assertEquals(new AppTrack("6LgJvl0Xdtc73RJ1mmpotq", "Airbag", "OK Computer",
+                "https://i.scdn.co/image/okc64", "https://i.scdn.co/image/okc640",
+                "https://p.scdn.co/mp3-preview/airbag", 284000, PREVIEW_DURATION, "Radiohead"),
+                tracks.get(0));
+        assertEquals("Paranoid Android", tracks.get(1).getTrackName());
+        assertEquals(new AppTrack("6GBN5zSr7vG3zm4aWkoUuV", "Everything In Its Right Place", "Kid A",
+                null, null, null, 250000, PREVIEW_DURATION, "Radiohead"), tracks.get(2));
+    }
+
+    @Test
+    public void readAlbumTracksSharesImageUrlsOfAlbum() throws IOException {
+        List<AppTrack> tracks = SpotifyResponseDecoder.readAlbumTracks(
+                CannedResponses.fromResource("/decoder/albums.json"), IMAGE_SIZE_SMALL_PX,
+                IMAGE_SIZE_LARGE_PX, false, DEFAULT_ALBUM_NAME, DEFAULT_ARTIST_NAME, PREVIEW_DURATION);
+
+        assertSame(tracks.get(0).getImageUrlSmall(), tracks.get(1).getImageUrlSmall());
+        assertSame(tracks.get(0).getImageUrlLarge(), tracks.get(1).getImageUrlLarge());
+    }
+
+    @Test
+    public void responseWithoutBodyIsReadAsNull() throws IOException {
+        assertNull(SpotifyResponseDecoder.readArtists(CannedResponses.withoutBody(), 160, false));
+        assertNull(SpotifyResponseDecoder.readArtistDetails(CannedResponses.withoutBody()));
+        assertNull(SpotifyResponseDecoder.readAlbumIds(CannedResponses.withoutBody()));
+    }
+
+    @Test
+    public void responseWithoutExpectedFieldIsReadAsNull() throws IOException {
+        String json = "{\"error\": {\"status\": 404, \"message\": \"non existing id\"}}";
+
+        assertNull(SpotifyResponseDecoder.readArtists(CannedResponses.fromJson(json), 160, false));
+        assertNull(readTracksFromJson(json));
+        assertNull(SpotifyResponseDecoder.readRelatedArtists(CannedResponses.fromJson(json), 160, false));
+        assertNull(SpotifyResponseDecoder.readArtistDetails(CannedResponses.fromJson(json)));
+        assertNull(SpotifyResponseDecoder.readAlbumIds(CannedResponses.fromJson(json)));
+    }
+
+    @Test
+    public void responseWithUnexpectedStructureFails() {
+        assertReadFails("[]");
+        assertReadFails("{\"tracks\": [{\"id\": \"trackId\", \"duration_ms\": \"long\"}");
+        assertReadFails("{\"tracks\": [{\"id\": \"trackId\", \"name\": [");
+    }
+
+    private static List<AppTrack> readTracks(String path) throws IOException {
+        return SpotifyResponseDecoder.readTracks(CannedResponses.fromResource(path), IMAGE_SIZE_SMALL_PX,
+                IMAGE_SIZE_LARGE_PX, false, DEFAULT_ALBUM_NAME, DEFAULT_ARTIST_NAME, PREVIEW_DURATION);
+    }
+
+    private static List<AppTrack> readTracksFromJson(String json) throws IOException {
+        return SpotifyResponseDecoder.readTracks(CannedResponses.fromJson(json), IMAGE_SIZE_SMALL_PX,
+                IMAGE_SIZE_LARGE_PX, false, DEFAULT_ALBUM_NAME, DEFAULT_ARTIST_NAME, PREVIEW_DURATION);
+    }
+
+    private static void assertReadFails(String json) {
+        try {
+            readTracksFromJson(json);
+        } catch (IOException e) {
+            return;
+        }
+        fail("Reading " + json + " did not fail");
+    }
+
+}
@@ -0,0 +1,128 @@
+package uk.jumpingmouse.spotify.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CircuitBreaker}, run against a fake clock.
+ * @author Edmund Johnson
+ */
+public class CircuitBreakerTest {
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long OPEN_DURATION_MS = 30000;
+
+    private FakeClockCircuitBreaker mBreaker;
+
+    @Before
+    public void setUp() {
+        mBreaker = new FakeClockCircuitBreaker();
+    }
+
+    @Test
+    public void closedBreakerAllowsRequests() {
+        assertTrue(mBreaker.allowRequest());
+        mBreaker.onFailure();
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void breakerOpensAfterConsecutiveFailures() {
+        fail(FAILURE_THRESHOLD);
+
+        assertFalse(mBreaker.allowRequest());
+        mBreaker.advance(OPEN_DURATION_MS - 1);
+        assertFalse(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        fail(FAILURE_THRESHOLD - 1);
+        mBreaker.onSuccess();
+        fail(FAILURE_THRESHOLD - 1);
+
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void openBreakerAllowsOneTrialRequest() {
+        fail(FAILURE_THRESHOLD);
+        mBreaker.advance(OPEN_DURATION_MS);
+
+        assertTrue(mBreaker.allowRequest());
+        assertFalse(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void successfulTrialClosesBreaker() {
+        fail(FAILURE_THRESHOLD);
+        mBreaker.advance(OPEN_DURATION_MS);
+        mBreaker.allowRequest();
+
+        mBreaker.onSuccess();
+
+        assertTrue(mBreaker.allowRequest());
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void failedTrialReopensBreakerForAnotherPeriod() {
+        fail(FAILURE_THRESHOLD);
+        mBreaker.advance(OPEN_DURATION_MS);
+        mBreaker.allowRequest();
+
+        mBreaker.onFailure();
+
+        assertFalse(mBreaker.allowRequest());
+        mBreaker.advance(OPEN_DURATION_MS - 1);
+        assertFalse(mBreaker.allowRequest());
+        mBreaker.advance(1);
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void abandonedTrialAllowsAnotherTrial() {
+        fail(FAILURE_THRESHOLD);
+        mBreaker.advance(OPEN_DURATION_MS);
+        mBreaker.allowRequest();
+
+        mBreaker.onAbandoned();
+
+        assertTrue(mBreaker.allowRequest());
+        assertFalse(mBreaker.allowRequest());
+    }
+
+    private void fail(int failureCount) {
+        for (int i = 0; i < failureCount; i++) {
+            assertTrue(mBreaker.allowRequest());
+            mBreaker.onFailure();
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // FakeClockCircuitBreaker
+
+    /**
+     * A circuit breaker whose clock moves only when it is told to.
+     */
+    private static class FakeClockCircuitBreaker extends CircuitBreaker {
+        private long mNow = 0;
+
+        FakeClockCircuitBreaker() {
+            super(FAILURE_THRESHOLD, OPEN_DURATION_MS);
+        }
+
+        @Override
+        long now() {
+            return mNow;
+        }
+
+        void advance(long ms) {
+            mNow += ms;
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package uk.jumpingmouse.spotify.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LongHashSet}.
+ * @author Edmund Johnson
+ */
+public class LongHashSetTest {
+
+    @Test
+    public void addReportsWhetherValueIsNew() {
+        LongHashSet set = new LongHashSet();
+
+        assertTrue(set.add(42L));
+        assertFalse(set.add(42L));
+        assertTrue(set.contains(42L));
+        assertFalse(set.contains(43L));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void holdsZero() {
+        // Zero marks an empty slot, so is held separately
+        LongHashSet set = new LongHashSet();
+
+        assertFalse(set.contains(0L));
+        assertTrue(set.add(0L));
+        assertFalse(set.add(0L));
+        assertTrue(set.contains(0L));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void holdsValuesDifferingOnlyInHighBits() {
+        LongHashSet set = new LongHashSet(4);
+
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(set.add((long) i << 40));
+        }
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(set.contains((long) i << 40));
+        }
+        assertFalse(set.contains(101L << 40));
+        assertEquals(100, set.size());
+    }
+
+    @Test
+    public void growsBeyondExpectedSize() {
+        LongHashSet set = new LongHashSet(4);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 5000; i++) {
+            long value = random.nextLong();
+            assertEquals(expected.add(value), set.add(value));
+        }
+        for (long value : expected) {
+            assertTrue(set.contains(value));
+        }
+        assertEquals(expected.size(), set.size());
+    }
+
+    @Test
+    public void holdsNegativeValues() {
+        LongHashSet set = new LongHashSet();
+
+        assertTrue(set.add(-1L));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.contains(-1L));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertFalse(set.contains(Long.MAX_VALUE));
+    }
+
+}
@@ -0,0 +1,45 @@
+package uk.jumpingmouse.spotify.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link NetUtil}.
+ * @author Edmund Johnson
+ */
+public class NetUtilTest {
+
+    @Test
+    public void interruptedIoIsCancellation() {
+        assertTrue(NetUtil.isCancellation(new InterruptedIOException("interrupted")));
+    }
+
+    @Test
+    public void callCancelledByOkHttpIsCancellation() {
+        assertTrue(NetUtil.isCancellation(new IOException("Canceled")));
+    }
+
+    @Test
+    public void wrappedCancellationIsCancellation() {
+        assertTrue(NetUtil.isCancellation(new RuntimeException(new InterruptedIOException())));
+    }
+
+    @Test
+    public void timeoutIsNotCancellation() {
+        assertFalse(NetUtil.isCancellation(new SocketTimeoutException("timeout")));
+    }
+
+    @Test
+    public void otherFailuresAreNotCancellation() {
+        assertFalse(NetUtil.isCancellation(new IOException("HTTP 500")));
+        assertFalse(NetUtil.isCancellation(new RuntimeException()));
+        assertFalse(NetUtil.isCancellation(null));
+    }
+
+}
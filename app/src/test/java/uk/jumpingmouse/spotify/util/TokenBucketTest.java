@@ -0,0 +1,130 @@
+package uk.jumpingmouse.spotify.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TokenBucket}, run against a fake clock.
+ * @author Edmund Johnson
+ */
+public class TokenBucketTest {
+
+    private static final int CAPACITY = 3;
+    /** The permits added per second, i.e. one every 200 milliseconds. */
+    private static final double PERMITS_PER_SECOND = 5;
+    private static final long REFILL_MS = 200;
+
+    @Test
+    public void fullBucketAllowsBurstOfCapacity() {
+        FakeClockTokenBucket bucket = new FakeClockTokenBucket();
+
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(0, bucket.tryAcquire());
+        }
+        assertEquals(REFILL_MS, bucket.tryAcquire());
+    }
+
+    @Test
+    public void emptyBucketRefillsAtRate() {
+        FakeClockTokenBucket bucket = new FakeClockTokenBucket();
+        drain(bucket);
+
+        bucket.advance(REFILL_MS / 2);
+        assertEquals(REFILL_MS / 2, bucket.tryAcquire());
+        bucket.advance(REFILL_MS / 2);
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(REFILL_MS, bucket.tryAcquire());
+    }
+
+    @Test
+    public void refillIsCappedAtCapacity() {
+        FakeClockTokenBucket bucket = new FakeClockTokenBucket();
+        drain(bucket);
+
+        bucket.advance(REFILL_MS * CAPACITY * 10);
+
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(0, bucket.tryAcquire());
+        }
+        assertEquals(REFILL_MS, bucket.tryAcquire());
+    }
+
+    @Test
+    public void pausedBucketGivesNoPermitsThenResumesEmpty() {
+        FakeClockTokenBucket bucket = new FakeClockTokenBucket();
+
+        bucket.pause(1000);
+
+        assertEquals(1000, bucket.tryAcquire());
+        bucket.advance(1000);
+        // The bucket was emptied, so requests resume gradually
+        assertEquals(REFILL_MS, bucket.tryAcquire());
+        bucket.advance(REFILL_MS);
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    public void shorterPauseDoesNotEndLongerPause() {
+        FakeClockTokenBucket bucket = new FakeClockTokenBucket();
+
+        bucket.pause(1000);
+        bucket.pause(100);
+
+        assertEquals(1000, bucket.tryAcquire());
+    }
+
+    @Test
+    public void acquireWaitsUntilPermitIsAvailable() throws InterruptedException {
+        FakeClockTokenBucket bucket = new FakeClockTokenBucket();
+        drain(bucket);
+        // Each reading of the clock moves it on, so that the wait ends
+        bucket.setTickMs(REFILL_MS / 4);
+
+        bucket.acquire();
+
+        assertTrue(bucket.getNow() >= REFILL_MS);
+    }
+
+    private static void drain(TokenBucket bucket) {
+        for (int i = 0; i < CAPACITY; i++) {
+            bucket.tryAcquire();
+        }
+    }
+
+    //-------------------------------------------------------------------------------
+    // FakeClockTokenBucket
+
+    /**
+     * A token bucket whose clock moves only when it is told to, and optionally by a
+     * fixed amount each time it is read.
+     */
+    private static class FakeClockTokenBucket extends TokenBucket {
+        private long mNow;
+        private long mTickMs;
+
+        FakeClockTokenBucket() {
+            super(CAPACITY, PERMITS_PER_SECOND);
+        }
+
+        @Override
+        synchronized long now() {
+            mNow += mTickMs;
+            return mNow;
+        }
+
+        synchronized void advance(long ms) {
+            mNow += ms;
+        }
+
+        synchronized void setTickMs(long tickMs) {
+            mTickMs = tickMs;
+        }
+
+        synchronized long getNow() {
+            return mNow;
+        }
+    }
+
+}